@@ -0,0 +1,36 @@
+import java.io.StringReader;
+
+import bench.Backend;
+
+
+/*
+ * The scanner backends for bench.ScannerBench. Each drains a TokenCursor
+ * without asking for text(), so what is measured is the scan itself:
+ * tokens, errors and the symbol table, no Token or lexeme String unless
+ * the backend builds one on its own.
+ */
+public final class Backends
+{
+    private Backends()
+    {
+    }
+
+    // "manual", "manual1" or "jflex"
+    public static Backend of(String name)
+    {
+        switch (name)
+        {
+            case "manual":  return src -> drain(new ManualScanner(src));
+            case "manual1": return src -> drain(new ManualScanner1(src));
+            case "jflex":   return src -> drain(new Yylex(new StringReader(src)));
+            default:        throw new IllegalArgumentException("unknown backend " + name);
+        }
+    }
+
+    private static int drain(TokenCursor c)
+    {
+        int n = 1;
+        while (c.advance() != TokenType.EOF) n++;
+        return n;
+    }
+}
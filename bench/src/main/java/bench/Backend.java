@@ -0,0 +1,13 @@
+package bench;
+
+
+/*
+ * One scanner as the benchmarks see it. The scanners are in the default
+ * package, which a named package cannot import, so Backends (default
+ * package, next to them) implements this and is looked up by name once.
+ */
+public interface Backend
+{
+    // scans all of src to EOF, returns the tokens, EOF included
+    int scan(String src);
+}
@@ -0,0 +1,242 @@
+package bench;
+
+import java.util.Random;
+
+
+/*
+ * Synthetic .lang sources for the benchmarks, one per profile and size.
+ * The same profile, size and seed always give the same text, so runs and
+ * backends see identical input. Each profile repeats statements of one
+ * kind between "start" and "finish" until the size is reached:
+ *
+ *   IDENT     declarations and assignments of long identifiers
+ *   OPERATOR  dense arithmetic, relational, logical and compound operators
+ *   STRING    output of string and char literals, with escapes
+ *   COMMENT   ## lines and #| |# blocks around a little code
+ *   ERROR     bad chars, bad identifiers, malformed and unclosed literals
+ *   PROGRAM   whole programs from CorpusGen: blocks, functions, every literal
+ */
+public final class Inputs
+{
+    public enum Profile { IDENT, OPERATOR, STRING, COMMENT, ERROR, PROGRAM }
+
+    // chars per source
+    public enum Size
+    {
+        SMALL  (4 << 10),
+        MEDIUM (1 << 20),
+        LARGE  (64 << 20);
+
+        final int chars;
+
+        Size(int chars)
+        {
+            this.chars = chars;
+        }
+
+        public int chars() { return chars; }
+    }
+
+    private static final String LOWER = "abcdefghijklmnopqrstuvwxyz0123456789_";
+    private static final String[] OPS = { "+", "-", "*", "/", "%", "**" };
+    private static final String[] REL = { "==", "!=", "<", ">", "<=", ">=" };
+    private static final String[] ASG = { "=", "+=", "-=", "*=", "/=" };
+    private static final String[] ESC = { "\\n", "\\t", "\\\"", "\\\\", "\\r" };
+    private static final String[] BAD = { "@", "$", "~", "`", "^", "?" };
+
+    private Inputs()
+    {
+    }
+
+    public static String generate(Profile p, Size size, long seed)
+    {
+        return generate(p, size.chars, seed);
+    }
+
+    // about chars long, never more than one statement over
+    public static String generate(Profile p, int chars, long seed)
+    {
+        if (p == Profile.PROGRAM) return program(chars, seed);
+        Random        r  = new Random(seed * 31 + p.ordinal());
+        StringBuilder sb = new StringBuilder(chars + 256);
+        sb.append("start\n");
+        while (sb.length() < chars - 7)
+        {
+            switch (p)
+            {
+                case IDENT:    ident(sb, r);    break;
+                case OPERATOR: operator(sb, r); break;
+                case STRING:   string(sb, r);   break;
+                case COMMENT:  comment(sb, r);  break;
+                case ERROR:    error(sb, r);    break;
+            }
+        }
+        sb.append("finish\n");
+        return sb.toString();
+    }
+
+    // CorpusGen is in the default package with the scanners, so it is looked up by name
+    private static String program(int chars, long seed)
+    {
+        try
+        {
+            Object gen = Class.forName("CorpusGen").getConstructor(long.class).newInstance(seed);
+            return (String) gen.getClass().getMethod("generate", int.class).invoke(gen, chars);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("CorpusGen is not on the class path", e);
+        }
+    }
+
+    private static void ident(StringBuilder sb, Random r)
+    {
+        if (r.nextInt(4) == 0)
+        {
+            sb.append("declare ");
+            name(sb, r, 4 + r.nextInt(20));
+            sb.append(";\n");
+            return;
+        }
+        name(sb, r, 4 + r.nextInt(20));
+        sb.append(" = ");
+        name(sb, r, 4 + r.nextInt(20));
+        for (int k = r.nextInt(3); k > 0; k--)
+        {
+            sb.append(' ').append(OPS[r.nextInt(2)]).append(' ');
+            name(sb, r, 4 + r.nextInt(20));
+        }
+        sb.append(";\n");
+    }
+
+    private static void operator(StringBuilder sb, Random r)
+    {
+        switch (r.nextInt(3))
+        {
+            case 0:
+                name(sb, r, 1);
+                sb.append(ASG[r.nextInt(ASG.length)]);
+                name(sb, r, 1);
+                for (int k = 2 + r.nextInt(6); k > 0; k--)
+                {
+                    sb.append(OPS[r.nextInt(OPS.length)]);
+                    if (r.nextBoolean()) name(sb, r, 1);
+                    else                 sb.append(r.nextInt(100));
+                }
+                sb.append(";\n");
+                break;
+            case 1:
+                sb.append("condition (");
+                name(sb, r, 1);
+                sb.append(REL[r.nextInt(REL.length)]);
+                name(sb, r, 1);
+                sb.append(r.nextBoolean() ? "&&!" : "||");
+                name(sb, r, 1);
+                sb.append(") { ");
+                name(sb, r, 1);
+                sb.append(r.nextBoolean() ? "++" : "--");
+                sb.append("; }\n");
+                break;
+            default:
+                sb.append("A[");
+                sb.append(r.nextInt(10));
+                sb.append("]=(B+C)*(D-E)/F%G**H;\n");
+                break;
+        }
+    }
+
+    private static void string(StringBuilder sb, Random r)
+    {
+        if (r.nextInt(4) == 0)
+        {
+            sb.append("output '");
+            if (r.nextBoolean()) sb.append((char) ('a' + r.nextInt(26)));
+            else                 sb.append(ESC[r.nextInt(ESC.length)]);
+            sb.append("';\n");
+            return;
+        }
+        sb.append("output \"");
+        for (int k = 8 + r.nextInt(60); k > 0; k--)
+        {
+            if (r.nextInt(12) == 0)
+            {
+                sb.append(ESC[r.nextInt(ESC.length)]);
+                continue;
+            }
+            char c = (char) (' ' + r.nextInt(95));     // printable ASCII
+            sb.append((c == '"' || c == '\\') ? ' ' : c);
+        }
+        sb.append("\";\n");
+    }
+
+    private static void comment(StringBuilder sb, Random r)
+    {
+        switch (r.nextInt(3))
+        {
+            case 0:
+                sb.append("## ");
+                words(sb, r, 4 + r.nextInt(12));
+                sb.append('\n');
+                break;
+            case 1:
+                sb.append("#|\n");
+                for (int k = 1 + r.nextInt(6); k > 0; k--)
+                {
+                    sb.append("   ");
+                    words(sb, r, 3 + r.nextInt(10));
+                    sb.append('\n');
+                }
+                sb.append("|#\n");
+                break;
+            default:
+                name(sb, r, 6);
+                sb.append(" = 1;  ## ");
+                words(sb, r, 3 + r.nextInt(6));
+                sb.append('\n');
+                break;
+        }
+    }
+
+    private static void error(StringBuilder sb, Random r)
+    {
+        switch (r.nextInt(6))
+        {
+            case 0:     // bad chars
+                for (int k = 1 + r.nextInt(4); k > 0; k--) sb.append(BAD[r.nextInt(BAD.length)]);
+                sb.append('\n');
+                break;
+            case 1:     // identifier starting lowercase or with uppercase inside
+                sb.append(r.nextBoolean() ? "count" : "CoUnt").append(r.nextInt(100)).append(" = 1;\n");
+                break;
+            case 2:     // too long
+                name(sb, r, 32 + r.nextInt(8));
+                sb.append(";\n");
+                break;
+            case 3:     // float with too many digits, or no exponent digits
+                sb.append("X = ").append(r.nextBoolean() ? "1.1234567" : "2.5e").append(";\n");
+                break;
+            case 4:     // unclosed string, bad escape
+                sb.append(r.nextBoolean() ? "output \"never closed\n" : "output \"bad \\q escape\";\n");
+                break;
+            default:    // char literal too long, or empty
+                sb.append(r.nextBoolean() ? "C = 'ab';\n" : "C = '';\n");
+                break;
+        }
+    }
+
+    // identifier of n chars: uppercase, then lowercase, digits and _
+    private static void name(StringBuilder sb, Random r, int n)
+    {
+        sb.append((char) ('A' + r.nextInt(26)));
+        for (int k = 1; k < n; k++) sb.append(LOWER.charAt(r.nextInt(LOWER.length())));
+    }
+
+    private static void words(StringBuilder sb, Random r, int n)
+    {
+        for (int k = 0; k < n; k++)
+        {
+            if (k > 0) sb.append(' ');
+            for (int c = 2 + r.nextInt(7); c > 0; c--) sb.append((char) ('a' + r.nextInt(26)));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/*
+ * Runs ScannerBench with the gc profiler and prints one row per backend,
+ * profile and size, per token rather than per op:
+ *
+ *   java -cp target/benchmarks.jar bench.Report [jmh options, e.g. -p size=SMALL -f 1]
+ *
+ *   tokens/s, MB/s    from the Counts aux counters
+ *   ns/token          1e9 / tokens/s
+ *   B/token           gc.alloc.rate.norm / tokens per op
+ */
+public final class Report
+{
+    private Report()
+    {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        Options opts = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ScannerBench.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        List<RunResult> runs = new ArrayList<>(new Runner(opts).run());
+        runs.sort(Comparator.<RunResult, String>comparing(r -> param(r, "profile"))
+                .thenComparing(r -> Inputs.Size.valueOf(param(r, "size")))
+                .thenComparing(r -> param(r, "backend")));
+
+        System.out.printf("%n%-9s %-7s %-8s %14s %10s %10s %10s%n",
+                "profile", "size", "backend", "tokens/s", "MB/s", "ns/token", "B/token");
+        for (RunResult r : runs)
+        {
+            double ops    = r.getPrimaryResult().getScore();
+            double tokens = secondary(r, "tokens");
+            double mb     = secondary(r, "megabytes");
+            double alloc  = secondary(r, "gc.alloc.rate.norm");
+            double perOp  = tokens / ops;
+            System.out.printf("%-9s %-7s %-8s %14.0f %10.1f %10.2f %10.2f%n",
+                    param(r, "profile"), param(r, "size"), param(r, "backend"),
+                    tokens, mb, 1e9 / tokens, alloc / perOp);
+        }
+    }
+
+    private static String param(RunResult r, String name)
+    {
+        return r.getParams().getParam(name);
+    }
+
+    private static double secondary(RunResult r, String name)
+    {
+        Result<?> s = r.getSecondaryResults().get(name);
+        return (s == null) ? Double.NaN : s.getScore();
+    }
+}
@@ -0,0 +1,83 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * Scan throughput of ManualScanner, ManualScanner1 and Yylex, for every
+ * input profile and size in Inputs. One op is one whole source scanned to
+ * EOF; next to ops/s JMH reports the "tokens" and "megabytes" counters as
+ * tokens/s and MB/s. With -prof gc, gc.alloc.rate.norm is bytes per op;
+ * Report divides it, and the time, by the tokens per op.
+ *
+ *   java -jar target/benchmarks.jar ScannerBench -p profile=ERROR -p size=MEDIUM -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class ScannerBench
+{
+    @Param({ "manual", "manual1", "jflex" })
+    public String backend;
+
+    @Param({ "IDENT", "OPERATOR", "STRING", "COMMENT", "ERROR", "PROGRAM" })
+    public Inputs.Profile profile;
+
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    public Inputs.Size size;
+
+    @Param("42")
+    public long seed;
+
+    private Backend scanner;
+    private String  src;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException
+    {
+        scanner = (Backend) Class.forName("Backends").getMethod("of", String.class).invoke(null, backend);
+        src     = Inputs.generate(profile, size, seed);
+    }
+
+    // per-op counts JMH turns into rates
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counts
+    {
+        public long   tokens;
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            tokens    = 0;
+            megabytes = 0;
+        }
+    }
+
+    @Benchmark
+    public int scan(Counts counts)
+    {
+        int n = scanner.scan(src);
+        counts.tokens    += n;
+        counts.megabytes += src.length() / 1e6;   // the inputs are ASCII, chars are bytes
+        return n;
+    }
+}
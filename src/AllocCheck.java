@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/*
+ * Checks that walking a TokenCursor allocates nothing per token.
+ *
+ *   java AllocCheck [file...]
+ *
+ * Each input (a generated program and a run of nested { } blocks if none)
+ * is drained through every cursor: ManualScanner and Yylex with and without
+ * their symbol table, ManualScanner1, TableScanner and TokReader. A few
+ * rounds warm the JIT up, then the input and the input twice over are each
+ * walked once more; what the second copy costs the thread, which leaves out
+ * buffers a fresh cursor grows once, must stay under MAX_PER_TOKEN a token
+ * of it. The symbol table is counted only on the blocks input: its entries
+ * and use lists grow with the names in the source, the scope stack does not.
+ * Lexical errors are kept by the ErrorHandler, so an input with errors pays
+ * for their records and fails here.
+ */
+public class AllocCheck
+{
+    public static final double MAX_PER_TOKEN = 0.05;
+
+    private static final int ROUNDS = 5;
+
+    // a fresh cursor over src
+    private interface Backend
+    {
+        TokenCursor open(String src) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        List<String> srcs  = new ArrayList<>();
+        for (String a : args)
+        {
+            names.add(a);
+            srcs.add(new String(Files.readAllBytes(Paths.get(a))));
+        }
+        if (srcs.isEmpty())
+        {
+            names.add("program");
+            srcs.add(new CorpusGen(1).generate(1 << 20));
+            StringBuilder sb = new StringBuilder("start\n{\n");
+            for (int i = 0; i < 100_000; i++) sb.append("    { }\n");
+            names.add("blocks");
+            srcs.add(sb.append("}\n").toString());
+        }
+
+        Path one = Files.createTempFile("alloc", ".tok");
+        Path two = Files.createTempFile("alloc", ".tok");
+        int  bad = 0;
+        try
+        {
+            for (int k = 0; k < srcs.size(); k++)
+            {
+                String  src  = srcs.get(k);
+                boolean syms = names.get(k).equals("blocks");
+                TokWriter.write(one, src);
+                TokWriter.write(two, src + "\n" + src);
+                System.out.printf("%s: %d chars%n", names.get(k), src.length());
+                bad += check("ManualScanner",  s -> new ManualScanner(s).track(false), src);
+                bad += check("Yylex",          s -> new Yylex(new StringReader(s)).track(false), src);
+                bad += check("ManualScanner1", ManualScanner1::new, src);
+                bad += check("TableScanner",   TableScanner::new, src);
+                bad += check("TokReader",      s -> new TokReader((s == src) ? one : two), src);
+                if (syms)
+                {
+                    bad += check("ManualScanner+syms", ManualScanner::new, src);
+                    bad += check("Yylex+syms",         s -> new Yylex(new StringReader(s)), src);
+                }
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(one);
+            Files.deleteIfExists(two);
+        }
+        if (bad > 0) System.exit(1);
+        System.out.println("alloc ok");
+    }
+
+    // 0 if the second copy of src stays under the ceiling, else 1
+    private static int check(String name, Backend b, String src) throws IOException
+    {
+        String twice = src + "\n" + src;
+        for (int r = 0; r < ROUNDS; r++)
+        {
+            walk(b.open(src));
+            walk(b.open(twice));
+        }
+        long[] one = walk(b.open(src));
+        long[] two = walk(b.open(twice));
+        long   tokens = two[0] - one[0];
+        long   bytes  = two[1] - one[1];
+        double per    = (double) bytes / Math.max(1, tokens);
+        System.out.printf("  %-20s %8d tokens %10d bytes %8.4f bytes/token%n", name, tokens, bytes, per);
+        if (per <= MAX_PER_TOKEN) return 0;
+        System.err.printf("%s allocates %.4f bytes a token, over %.2f%n", name, per, MAX_PER_TOKEN);
+        return 1;
+    }
+
+    // tokens in the stream and bytes allocated walking it
+    private static long[] walk(TokenCursor c)
+    {
+        long tokens = 0;
+        long before = allocated();
+        while (c.advance() != TokenType.EOF) tokens++;
+        long bytes = allocated() - before - overhead();
+        return new long[] { tokens, bytes };
+    }
+
+    // what a call to allocated() itself allocates
+    private static long overhead()
+    {
+        long a = allocated();
+        return allocated() - a;
+    }
+
+    // bytes this thread has allocated so far
+    private static long allocated()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
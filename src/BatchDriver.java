@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/*
+ * Scans many .lang files at once on a work-stealing pool.
+ *
+ *   java BatchDriver [-j threads] [-o report.txt [-tee]] [-f box|jsonl|csv|bin] [-s manual|jflex]
+ *                    [-q] [-g] [-c cachedir [-cmax MB]] [-emax n [-estop]] [-efold] <file|dir|glob>...
+ *
+ * Directories are walked for *.lang, globs ("tests/*.lang", "src/**.lang")
+ * are matched from their first fixed directory. Every file gets its own
+ * scanner, ErrorHandler and SymbolTable and its report is rendered into its
+ * own ReportWriter part, so workers share nothing. Reports are written in
+ * input order by the writer thread while later files are still scanning;
+ * -o sends them to a file, with -tee to stdout as well, and -q skips them
+ * and only counts. -f picks the ScanEncoder, the box tables by default; the
+ * others are written straight off the scanner, and a file that cannot be
+ * read or scanned is reported on stderr so they stay parseable. A failed
+ * file does not stop the others; the exit status is 1 if any failed. A
+ * throughput summary goes to stderr at the end.
+ * With -c, ManualScanner results come from a ScanCache when the file has
+ * not changed since it was last scanned. With -g the workers also record
+ * every file's root-scope names into one SharedSymbolTable, printed after
+ * the reports; a name belongs to the first file in input order using it.
+ * -emax keeps at most n errors per file and counts the rest, with -estop
+ * a file's scan ends at its n-th error. -efold coalesces error floods, see
+ * ErrorHandler.coalesce().
+ */
+public class BatchDriver
+{
+
+    // what one worker hands back
+    private static class Result
+    {
+        String path;
+        long   chars;
+        int    tokens;
+        int    errors;
+        boolean failed;
+    }
+
+    private final boolean jflex;
+    private final boolean quiet;
+    private final ScanCache cache;     // null when not caching
+    private final SharedSymbolTable globals;   // null unless collecting
+
+    private int     errMax = Integer.MAX_VALUE;
+    private boolean errStop;
+    private boolean errFold;
+    private String  format = "box";
+
+    public BatchDriver(boolean jflex, boolean quiet, ScanCache cache)
+    {
+        this(jflex, quiet, cache, null);
+    }
+
+    public BatchDriver(boolean jflex, boolean quiet, ScanCache cache, SharedSymbolTable globals)
+    {
+        this.jflex   = jflex;
+        this.quiet   = quiet;
+        this.cache   = cache;
+        this.globals = globals;
+    }
+
+    // keeps at most max errors per file, the rest are counted or, if stop, end the scan
+    public BatchDriver errorLimit(int max, boolean stop)
+    {
+        this.errMax  = max;
+        this.errStop = stop;
+        return this;
+    }
+
+    // folds runs of bad chars and repeated errors, see ErrorHandler.coalesce()
+    public BatchDriver coalesceErrors(boolean on)
+    {
+        this.errFold = on;
+        return this;
+    }
+
+    // report format, a ScanEncoder name
+    public BatchDriver format(String name)
+    {
+        ScanEncoder.of(name);
+        this.format = name;
+        return this;
+    }
+
+    // expands files, directories and glob patterns, in argument order without duplicates
+    public static List<Path> expand(List<String> args) throws IOException
+    {
+        Set<Path> out = new LinkedHashSet<>();
+        for (String arg : args)
+        {
+            int glob = firstGlobChar(arg);
+            if (glob < 0)
+            {
+                Path p = Paths.get(arg);
+                if (Files.isDirectory(p))
+                {
+                    out.addAll(walk(p, FileSystems.getDefault().getPathMatcher("glob:**.lang")));
+                }
+                else
+                {
+                    out.add(p);
+                }
+                continue;
+            }
+            int    cut  = arg.lastIndexOf('/', glob);
+            Path   base = Paths.get(cut < 0 ? "." : arg.substring(0, Math.max(cut, 1)));
+            String pat  = (cut < 0) ? "./" + arg : arg;
+            out.addAll(walk(base, FileSystems.getDefault().getPathMatcher("glob:" + pat)));
+        }
+        return new ArrayList<>(out);
+    }
+
+    private static int firstGlobChar(String s)
+    {
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return i;
+        }
+        return -1;
+    }
+
+    private static List<Path> walk(Path base, PathMatcher m) throws IOException
+    {
+        if (!Files.isDirectory(base)) return new ArrayList<>();
+        try (Stream<Path> s = Files.walk(base))
+        {
+            return s.filter(p -> Files.isRegularFile(p) && m.matches(p))
+                    .map(Path::normalize)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // scans one file into its own report part and closes it, never throws
+    private Result scan(Path path, int fileNo, ReportWriter.Part part)
+    {
+        Result r = new Result();
+        r.path = path.toString();
+
+        PrintStream out = part.out();
+        boolean     box = format.equals("box");
+        if (!quiet && box) out.println("\n--- Running " + r.path + " ---");
+
+        try
+        {
+            String source = new String(Files.readAllBytes(path));
+            r.chars = source.length();
+
+            TokenCursor  cursor = null;
+            TokenBuffer  tokens = null;
+            SymbolTable  syms;
+            ErrorHandler errs;
+            if (cache != null && !jflex && !errStop && !errFold)
+            {
+                // the cache keeps whole scans, a limit is applied to the copy
+                ScanCache.Result c = cache.scan(source);
+                tokens = c.tokens();
+                syms   = c.syms();
+                errs   = c.errs();
+                if (errMax < errs.count())
+                {
+                    errs = new ErrorHandler().limit(errMax, false);
+                    errs.addAll(c.errs());
+                }
+            }
+            else if (jflex)
+            {
+                Yylex y = new Yylex(new StringReader(source));
+                cursor = y;
+                syms   = y.syms();
+                errs   = y.errs().limit(errMax, errStop).coalesce(errFold);
+            }
+            else
+            {
+                ManualScanner m = new ManualScanner(source);
+                cursor = m;
+                syms   = m.syms();
+                errs   = m.errs().limit(errMax, errStop).coalesce(errFold);
+            }
+
+            if (quiet && tokens == null)
+            {
+                int n = 1;
+                while (cursor.advance() != TokenType.EOF) n++;
+                r.tokens = n;
+            }
+            else if (quiet)
+            {
+                r.tokens = tokens.size();
+            }
+            else
+            {
+                ScanEncoder enc = ScanEncoder.of(format);
+                r.tokens = (tokens != null)
+                        ? enc.encode(out, r.path, source.length(), tokens, syms, errs)
+                        : enc.encode(out, r.path, source, cursor, syms, errs);
+            }
+            r.errors = errs.count();
+            if (globals != null) globals.addAll(syms, r.path, fileNo);
+        }
+        catch (IOException e)
+        {
+            r.failed = true;
+            PrintStream to = box ? out : System.err;
+            to.println("Error: Could not read file: " + r.path);
+            to.println(e.getMessage());
+        }
+        catch (UncheckedIOException e)
+        {
+            r.failed = true;
+            (box ? out : System.err).println("Scanner I/O error: " + e.getCause().getMessage());
+        }
+        catch (RuntimeException | Error e)
+        {
+            // a scanner that gives up on one file (Yylex throws on input it cannot match) fails only that file
+            r.failed = true;
+            (box ? out : System.err).println("Error: Scanner failed on " + r.path + ": " + e);
+        }
+        finally
+        {
+            try
+            {
+                part.close();
+            }
+            catch (IOException e)
+            {
+                r.failed = true;
+            }
+        }
+        return r;
+    }
+
+    // scans all files on the pool, writes reports to every sink in input order;
+    // returns how many files could not be read or scanned
+    public int run(List<Path> files, ForkJoinPool pool, OutputStream... sinks) throws IOException
+    {
+        long t0 = System.nanoTime();
+
+        ReportWriter w = new ReportWriter();
+        for (OutputStream s : sinks) w.to(s);
+        if (!quiet)
+        {
+            ReportWriter.Part part = w.part();
+            ScanEncoder.of(format).header(part.out());
+            part.close();
+        }
+
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++)
+        {
+            Path              p    = files.get(i);
+            int               n    = i;
+            ReportWriter.Part part = w.part();
+            tasks.add(pool.submit(() -> scan(p, n, part)));
+        }
+
+        long chars = 0, tokens = 0, errors = 0;
+        int  failed = 0;
+        for (ForkJoinTask<Result> t : tasks)
+        {
+            Result r = t.join();
+            chars  += r.chars;
+            tokens += r.tokens;
+            errors += r.errors;
+            if (r.failed) failed++;
+        }
+        if (globals != null)
+        {
+            // every file has added its names once all are joined
+            ReportWriter.Part part = w.part();
+            ScanEncoder.of(format).globals(part.out(), globals);
+            part.close();
+        }
+        w.close();
+
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.err.printf("%d files (%d failed), %d tokens, %d errors in %.3f s%n",
+                files.size(), failed, tokens, errors, secs);
+        System.err.printf("%.1f files/s  %.1f MB/s  %.1f Mtok/s  (%d threads)%n",
+                files.size() / secs, chars / secs / 1e6, tokens / secs / 1e6, pool.getParallelism());
+        if (cache != null) System.err.println(cache.stats());
+        return failed;
+    }
+
+    public static void main(String[] args)
+    {
+        int     threads = Runtime.getRuntime().availableProcessors();
+        String  outFile = null;
+        String  scanner = "manual";
+        boolean quiet   = false;
+        boolean global  = false;
+        String  cacheDir = null;
+        long    cacheMax = 256;
+        int     errMax   = Integer.MAX_VALUE;
+        boolean errStop  = false;
+        boolean errFold  = false;
+        boolean tee      = false;
+        String  format   = "box";
+        List<String> inputs = new ArrayList<>();
+
+        boolean usage   = false;
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                switch (args[i])
+                {
+                    case "-j": threads = Integer.parseInt(args[++i]);      break;
+                    case "-o": outFile = args[++i];                          break;
+                    case "-tee": tee   = true;                               break;
+                    case "-f": format  = args[++i];                          break;
+                    case "-s": scanner = args[++i];                          break;
+                    case "-q": quiet   = true;                               break;
+                    case "-g": global  = true;                               break;
+                    case "-c": cacheDir = args[++i];                         break;
+                    case "-cmax": cacheMax = Long.parseLong(args[++i]);      break;
+                    case "-emax": errMax   = Integer.parseInt(args[++i]);    break;
+                    case "-estop": errStop = true;                           break;
+                    case "-efold": errFold = true;                           break;
+                    default:   inputs.add(args[i]);                          break;
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+        {
+            usage = true;
+        }
+        if (usage || inputs.isEmpty() || threads < 1 || cacheMax < 0 || errMax < 0
+                || !(scanner.equals("manual") || scanner.equals("jflex")))
+        {
+            System.err.println("Usage: java BatchDriver [-j threads] [-o report.txt [-tee]] [-f box|jsonl|csv|bin] [-s manual|jflex] [-q] [-g] [-c cachedir [-cmax MB]] [-emax n [-estop]] [-efold] <file|dir|glob>...");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool   = new ForkJoinPool(threads);
+        int          failed = 0;
+        try
+        {
+            List<Path>  files  = expand(inputs);
+            ScanCache   cache  = (cacheDir == null) ? null : new ScanCache(Paths.get(cacheDir), cacheMax << 20);
+            BatchDriver driver = new BatchDriver(scanner.equals("jflex"), quiet, cache, global ? new SharedSymbolTable() : null)
+                    .errorLimit(errMax, errStop)
+                    .coalesceErrors(errFold)
+                    .format(format);
+            if (outFile == null)
+            {
+                failed = driver.run(files, pool, System.out);
+            }
+            else
+            {
+                try (OutputStream sink = Files.newOutputStream(Paths.get(outFile)))
+                {
+                    if (tee) failed = driver.run(files, pool, sink, System.out);
+                    else     failed = driver.run(files, pool, sink);
+                }
+                System.err.println("Results written to " + outFile);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        if (failed > 0) System.exit(1);
+    }
+}
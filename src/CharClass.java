@@ -0,0 +1,74 @@
+/*
+ * Character classification shared by the scanners.
+ * ASCII chars are answered from a precomputed bitmask table, anything
+ * above 127 goes through the general java.lang.Character methods so the
+ * results match Character.isDigit/isLetter/... exactly.
+ */
+public final class CharClass 
+{
+    public static final int DIGIT   = 1;     // 0-9
+    public static final int UPPER   = 2;     // A-Z
+    public static final int LOWER   = 4;     // a-z
+    public static final int LETTER  = UPPER | LOWER;
+    public static final int ID_TAIL = 8;     // a-z 0-9 _   (identifier body)
+    public static final int SPACE   = 16;    // ' ' \t \r   (newline is separate)
+
+    private static final byte[] ASCII = new byte[128];
+
+    static 
+    {
+        for (int c = 0; c < 128; c++) 
+        {
+            int m = 0;
+            if (c >= '0' && c <= '9') m |= DIGIT | ID_TAIL;
+            if (c >= 'A' && c <= 'Z') m |= UPPER;
+            if (c >= 'a' && c <= 'z') m |= LOWER | ID_TAIL;
+            if (c == '_')             m |= ID_TAIL;
+            if (c == ' ' || c == '\t' || c == '\r') m |= SPACE;
+            ASCII[c] = (byte) m;
+        }
+    }
+
+    private CharClass() { }
+
+    // raw bitmask, 0 for anything outside ASCII
+    public static int mask(char c) 
+    {
+        return (c < 128) ? ASCII[c] : 0;
+    }
+
+    public static boolean isDigit(char c) 
+    {
+        if (c < 128) return (ASCII[c] & DIGIT) != 0;
+        return Character.isDigit(c);
+    }
+
+    public static boolean isLetter(char c) 
+    {
+        if (c < 128) return (ASCII[c] & LETTER) != 0;
+        return Character.isLetter(c);
+    }
+
+    public static boolean isLetterOrDigit(char c) 
+    {
+        if (c < 128) return (ASCII[c] & (LETTER | DIGIT)) != 0;
+        return Character.isLetterOrDigit(c);
+    }
+
+    public static boolean isUpperCase(char c) 
+    {
+        if (c < 128) return (ASCII[c] & UPPER) != 0;
+        return Character.isUpperCase(c);
+    }
+
+    // [a-z0-9_], ASCII only by the grammar
+    public static boolean isIdTail(char c) 
+    {
+        return c < 128 && (ASCII[c] & ID_TAIL) != 0;
+    }
+
+    public static boolean isSpace(char c) 
+    {
+        return c < 128 && (ASCII[c] & SPACE) != 0;
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/*
+ * Refillable ring buffer over a Reader, used by the scanners in streaming mode.
+ * Offsets are int positions in the input since the last rebase; offset(i)
+ * gives the position in the whole input. Only the window [mark, filled)
+ * is kept, so memory stays flat no matter how big the input is.
+ * The buffer only grows when a single lexeme is longer than the whole ring.
+ * As a CharSequence it is indexed by offset and length() is the number of
+ * chars read since the last rebase.
+ *
+ * Past 2^31 chars an int offset would wrap, so once the window is beyond
+ * rebaseAt the scanner calls rebase() between tokens: every offset moves
+ * back by a whole number of rings, each char keeps its slot, and the
+ * scanner takes the same amount off the offsets it holds.
+ */
+public class CharStream implements CharSequence
+{
+    public static final int DEFAULT_SIZE = 1 << 16;
+    public static final int REBASE_AT    = 1 << 30;   // leaves 2^30 chars for one token after a rebase
+
+    private final Reader in;
+    private char[]  buf;
+    private int     mask;
+    private int     filled;   // offset one past the last char read
+    private int     mark;     // oldest offset still needed
+    private long    base;     // chars taken off the offsets by rebase()
+    private final int rebaseAt;
+    private boolean eof;
+
+    public CharStream(Reader in)
+    {
+        this(in, DEFAULT_SIZE);
+    }
+
+    public CharStream(Reader in, int size)
+    {
+        this(in, size, REBASE_AT);
+    }
+
+    // rebaseAt below REBASE_AT makes rebases frequent, for checking them
+    CharStream(Reader in, int size, int rebaseAt)
+    {
+        int cap = 16;
+        while (cap < size) cap <<= 1;
+        this.in     = in;
+        this.buf    = new char[cap];
+        this.mask   = cap - 1;
+        this.filled = 0;
+        this.mark   = 0;
+        this.rebaseAt = rebaseAt;
+        this.eof    = false;
+    }
+
+    public CharStream(ReadableByteChannel ch, Charset cs)
+    {
+        this(Channels.newReader(ch, cs.newDecoder(), -1));
+    }
+
+    // true if idx is part of the input, reads ahead as needed
+    public boolean has(int idx)
+    {
+        while (idx >= filled)
+        {
+            if (eof || !fill()) return false;
+        }
+        return true;
+    }
+
+    // char at offset, caller must have checked has(idx)
+    public char charAt(int idx)
+    {
+        return buf[idx & mask];
+    }
+
+    // chars before idx may be dropped on the next refill
+    public void mark(int idx)
+    {
+        mark = idx;
+    }
+
+    // marks idx and, once the window is past rebaseAt, moves all offsets back;
+    // returns how far they moved, which the caller takes off its own offsets
+    public int rebase(int idx)
+    {
+        mark = idx;
+        if (mark < rebaseAt) return 0;
+        int shift = mark & ~mask;           // whole rings, so idx & mask stays put
+        mark   -= shift;
+        filled -= shift;
+        base   += shift;
+        return shift;
+    }
+
+    // position of offset idx in the whole input
+    public long offset(int idx)
+    {
+        return base + idx;
+    }
+
+    // backing array, offset idx lives at array()[idx & (capacity() - 1)]
+    public char[] array()
+    {
+        return buf;
+    }
+
+    // chars readable from idx without wrapping around the ring, 0 at end of input
+    public int run(int idx)
+    {
+        if (!has(idx)) return 0;
+        return Math.min(filled, (idx | mask) + 1) - idx;
+    }
+
+    // copies [from, to) out of the window
+    public String slice(int from, int to)
+    {
+        char[] out = new char[to - from];
+        for (int i = from; i < to; i++)
+        {
+            out[i - from] = buf[i & mask];
+        }
+        return new String(out);
+    }
+
+    // chars read so far
+    public int filled()
+    {
+        return filled;
+    }
+
+    @Override
+    public int length()
+    {
+        return filled;
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to)
+    {
+        return slice(from, to);
+    }
+
+    @Override
+    public String toString()
+    {
+        return slice(mark, filled);
+    }
+
+    public int capacity()
+    {
+        return buf.length;
+    }
+
+    private boolean fill()
+    {
+        if (filled - mark >= buf.length)
+        {
+            grow();
+        }
+
+        int start = filled & mask;
+        int room  = buf.length - (filled - mark);
+        int n     = Math.min(room, buf.length - start);
+        int r;
+        try
+        {
+            r = in.read(buf, start, n);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        if (r < 0)
+        {
+            eof = true;
+            return false;
+        }
+        filled += r;
+        return true;
+    }
+
+    // lexeme longer than the ring, double it keeping offsets
+    private void grow()
+    {
+        char[] bigger = new char[buf.length << 1];
+        int    m      = bigger.length - 1;
+        for (int i = mark; i < filled; i++)
+        {
+            bigger[i & m] = buf[i & mask];
+        }
+        buf  = bigger;
+        mask = m;
+    }
+
+    // java CharStream [-big] [file...]   streaming self-check
+    //
+    // Each file (a generated program if none) is streamed through a 64 char ring
+    // that rebases every 256 chars, by ManualScanner and ManualScanner1, and
+    // must give the tokens, lines, columns, whole-input offsets and errors of a
+    // String scan. -big also streams 2.4G chars, past 2^31, and checks the end.
+    public static void main(String[] args)
+    {
+        boolean      big  = false;
+        List<String> srcs = new ArrayList<>();
+        try
+        {
+            for (String a : args)
+            {
+                if (a.equals("-big")) big = true;
+                else                  srcs.add(new String(Files.readAllBytes(Paths.get(a))));
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (srcs.isEmpty()) srcs.add(new CorpusGen(1).errors(0.05).generate(256 << 10));
+
+        int bad = 0;
+        for (String src : srcs)
+        {
+            CharStream a = new CharStream(new StringReader(src), 64, 256);
+            CharStream b = new CharStream(new StringReader(src), 64, 256);
+            ManualScanner  m = new ManualScanner(src),  ma = new ManualScanner(a);
+            ManualScanner1 o = new ManualScanner1(src), ob = new ManualScanner1(b);
+            bad += check("ManualScanner",  m, ma, a, m.errs(), ma.errs());
+            bad += check("ManualScanner1", o, ob, b, null, null);
+        }
+        if (big) bad += big();
+        if (bad > 0)
+        {
+            System.err.println("Streaming scan differs from String scan");
+            System.exit(1);
+        }
+        System.out.println("streaming ok");
+    }
+
+    // tokens (and errors, if given) of a String scan and a stream scan, 1 on the first difference
+    private static int check(String name, TokenCursor str, TokenCursor st, CharStream cs,
+                             ErrorHandler strErrs, ErrorHandler stErrs)
+    {
+        long n = 0;
+        TokenType t;
+        do
+        {
+            t = str.advance();
+            TokenType u = st.advance();
+            if (u != t || st.length() != str.length() || st.line() != str.line() || st.column() != str.column()
+                    || cs.offset(st.start()) != str.start() || (t != TokenType.EOF && !st.text().equals(str.text())))
+            {
+                System.err.printf("%s: token %d is %s at %d:%d, streamed %s at %d:%d%n",
+                        name, n, t, str.line(), str.column(), u, st.line(), st.column());
+                return 1;
+            }
+            n++;
+        } while (t != TokenType.EOF);
+        if (strErrs != null && stErrs.count() != strErrs.count())
+        {
+            System.err.printf("%s: %d errors, streamed %d%n", name, strErrs.count(), stErrs.count());
+            return 1;
+        }
+        return 0;
+    }
+
+    // 600,000 lines of 4096 chars through a default ring, well past the int range
+    private static int big()
+    {
+        String line = "12 + 3.5 * \"ab\";";        // no identifiers, their use lists would grow
+        StringBuilder sb = new StringBuilder(4096);
+        while (sb.length() + line.length() + 1 < 4096) sb.append(line).append(' ');
+        while (sb.length() < 4095) sb.append(' ');
+        sb.append('\n');
+        char[] text  = sb.toString().toCharArray();
+        long   lines = 600_000;
+        long   total = lines * text.length;
+        long   per   = 6 * (4095 / (line.length() + 1));
+
+        Reader in = new Reader()
+        {
+            private long at;
+
+            @Override
+            public int read(char[] cbuf, int off, int len)
+            {
+                if (at == total) return -1;
+                int k = (int) (at % text.length);
+                int n = (int) Math.min(Math.min(len, text.length - k), total - at);
+                System.arraycopy(text, k, cbuf, off, n);
+                at += n;
+                return n;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        CharStream    cs = new CharStream(in);
+        ManualScanner s  = new ManualScanner(cs);
+        long n = 0, lastStart = 0;
+        int  lastLine = 0;
+        while (s.advance() != TokenType.EOF)
+        {
+            n++;
+            lastStart = cs.offset(s.start());
+            lastLine  = s.line();
+        }
+        long want = total - text.length + (4095 / (line.length() + 1) - 1) * (line.length() + 1) + line.length() - 1;
+        System.out.printf("big: %d chars, %d tokens, last at line %d offset %d, %d errors%n",
+                total, n, lastLine, lastStart, s.errs().count());
+        if (n != lines * per || lastLine != lines || lastStart != want || s.errs().any()) return 1;
+        return 0;
+    }
+}
@@ -0,0 +1,914 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+
+/*
+ * Synthetic .lang programs for benchmarks and stress runs, 1 KB to many GB.
+ *
+ *   java CorpusGen [-size 64M] [-seed n] [-mix cond=4,comment=0,...] [-depth n]
+ *                  [-vocab n] [-errors rate] [-o out.lang | -dir outdir [-files n]]
+ *
+ * A program is "start { ... } finish" filled with statements as
+ * docs/Language_Grammar.txt has them: declarations, arrays and indexed
+ * assignments, compound assignments and ++/--, input and output, nested
+ * condition/else and loop blocks with break and continue, functions in the
+ * one line and the block form, calls, every literal form (signed ints,
+ * floats with and without exponent, strings and chars with each escape,
+ * booleans) and both comment styles. Names come from a bounded vocabulary
+ * picked with a skew, so the symbol table sees the reuse real code gives it.
+ *
+ * The mix is a weight per statement kind; a kind at 0 is never started.
+ * The same seed, size and options always give the same bytes. Output is
+ * ASCII, one byte per char, and leaves through a 64 KB buffer spilled
+ * between top level statements, so memory does not grow with the size;
+ * the size is met to within one top level statement. With -errors r about
+ * r of all statements are one lexical mistake instead, of every
+ * ErrorHandler code but NO_CLOSE_CMNT, which would swallow the rest
+ * (runs of bad chars come out as BAD_CHARS only when errors are coalesced).
+ *
+ *   java CorpusGen -size 10G -seed 3 -o big.lang
+ *   java CorpusGen -size 16K -errors 0.02 -dir corpus -files 5000
+ */
+public class CorpusGen
+{
+    // statement kinds and their default weights
+    public enum Kind
+    {
+        DECL    (6),    // declare X = e;  declare X;
+        ARRAY   (2),    // declare A[n];  A[e] = e;
+        ASSIGN  (8),    // X = e;  X += e;  X++;  F(e);
+        IO      (3),    // output e;  input X;
+        COND    (3),    // condition (c) { } else { }
+        LOOP    (2),    // loop (c) { }, break and continue inside
+        FUNC    (1),    // function F(A, B) : ...   top level only
+        COMMENT (2);    // ## line, #| block |#, trailing ##
+
+        final int weight;
+
+        Kind(int weight)
+        {
+            this.weight = weight;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    static final int CHUNK = 1 << 16;
+
+    private static final String   LOWER = "abcdefghijklmnopqrstuvwxyz";
+    private static final String[] BIN   = { "+", "-", "*", "/", "%", "**", "+", "-", "*", "<", ">", "==", "&&", "||" };
+    private static final String[] REL   = { "==", "!=", "<", ">", "<=", ">=" };
+    private static final String[] ASG   = { "=", "=", "=", "+=", "-=", "*=", "/=" };
+    private static final String[] STR_ESC = { "\\n", "\\t", "\\r", "\\\"", "\\\\" };
+    private static final String[] CHR_ESC = { "\\n", "\\t", "\\r", "\\'", "\\\\" };
+    private static final String[] BAD   = { "@", "$", "~", "`", "^", "?" };
+    private static final String[] WORDS =
+    {
+        "count", "total", "value", "index", "next", "sum", "result", "temp", "flag", "max",
+        "min", "item", "list", "size", "step", "left", "right", "node", "key", "rate",
+        "the", "of", "and", "to", "is", "if", "not", "for", "loop", "check",
+        "update", "reset", "skip", "keep", "done", "first", "last", "each", "new", "old"
+    };
+
+    // options
+    private long   seed;
+    private final int[] weights = new int[KINDS.length];
+    private int    maxDepth = 4;
+    private int    vocab    = 1024;
+    private double errors;
+
+    // per run
+    private SplittableRandom r;
+    private int[]    cum;
+    private int      total;
+    private byte[]   buf;
+    private int      len;
+    private long     spilled;
+    private long     lines;
+    private String[] names;
+    private int      nNames;
+    private String[] arrays;
+    private int      nArrays;
+    private String[] funcs;
+    private int[]    arity;
+    private int      nFuncs;
+
+    public CorpusGen(long seed)
+    {
+        this.seed = seed;
+        for (Kind k : KINDS) weights[k.ordinal()] = k.weight;
+    }
+
+    public CorpusGen seed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    public CorpusGen weight(Kind k, int w)
+    {
+        if (w < 0) throw new IllegalArgumentException("negative weight for " + k);
+        weights[k.ordinal()] = w;
+        return this;
+    }
+
+    // "cond=4,comment=0,...", kinds by lowercase name, the rest keep their weight
+    public CorpusGen mix(String spec)
+    {
+        for (String part : spec.split(","))
+        {
+            int eq = part.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("bad mix entry " + part);
+            Kind k;
+            try
+            {
+                k = Kind.valueOf(part.substring(0, eq).trim().toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("unknown statement kind " + part.substring(0, eq));
+            }
+            weight(k, Integer.parseInt(part.substring(eq + 1).trim()));
+        }
+        return this;
+    }
+
+    // deepest block nesting below the program body
+    public CorpusGen depth(int d)
+    {
+        if (d < 0) throw new IllegalArgumentException("negative depth");
+        maxDepth = d;
+        return this;
+    }
+
+    // distinct variable names live at once
+    public CorpusGen vocabulary(int n)
+    {
+        if (n < 1) throw new IllegalArgumentException("vocabulary must be at least 1");
+        vocab = n;
+        return this;
+    }
+
+    // share of statements replaced by a lexical error, 0 for a clean program
+    public CorpusGen errors(double rate)
+    {
+        if (rate < 0 || rate > 1) throw new IllegalArgumentException("error rate must be in [0, 1]");
+        errors = rate;
+        return this;
+    }
+
+    // lines in the last program written
+    public long lines()
+    {
+        return lines;
+    }
+
+    // one program of about bytes bytes, in memory; for small sizes
+    public String generate(int bytes)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes + 1024);
+        try
+        {
+            write(out, bytes);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);     // a ByteArrayOutputStream does not throw
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    // streams one program of about bytes bytes to out, returns the bytes written; out is not closed
+    public long write(OutputStream out, long bytes) throws IOException
+    {
+        reset();
+        put("## generated by CorpusGen, seed ");
+        num(seed);
+        nl();
+        put("start");
+        nl();
+        put('{');
+        nl();
+        long tail = 9;      // "}\nfinish\n"
+        if (weights[Kind.DECL.ordinal()] > 0)
+        {
+            // programs open with their declarations
+            for (int k = 4 + r.nextInt(9); k > 0 && size() < bytes - tail; k--) decl(1);
+        }
+        while (size() < bytes - tail)
+        {
+            // near the end only flat statements, so a block does not overshoot
+            long room = bytes - tail - size();
+            statement(1, room < 1024 ? 1 : maxDepth + 1, false, false);
+            if (len >= CHUNK) spill(out);
+        }
+        put('}');
+        nl();
+        put("finish");
+        nl();
+        spill(out);
+        out.flush();
+        return spilled;
+    }
+
+    private void reset()
+    {
+        r       = new SplittableRandom(seed);
+        cum     = new int[KINDS.length];
+        total   = 0;
+        for (int i = 0; i < KINDS.length; i++)
+        {
+            total += weights[i];
+            cum[i] = total;
+        }
+        if (total == 0) throw new IllegalArgumentException("all statement weights are 0");
+        buf     = new byte[CHUNK + 4096];
+        len     = 0;
+        spilled = 0;
+        lines   = 0;
+        names   = new String[vocab];
+        nNames  = 0;
+        arrays  = new String[64];
+        nArrays = 0;
+        funcs   = new String[64];
+        arity   = new int[64];
+        nFuncs  = 0;
+    }
+
+    // ---- statements ----
+
+    // one statement at depth d, blocks only while d < limit
+    private void statement(int d, int limit, boolean inLoop, boolean inFunc)
+    {
+        if (errors > 0 && r.nextDouble() < errors)
+        {
+            indent(d);
+            error();
+            return;
+        }
+        if (inLoop && r.nextInt(14) == 0)
+        {
+            indent(d);
+            put(r.nextInt(3) == 0 ? "continue;" : "break;");
+            nl();
+            return;
+        }
+        if (inFunc && r.nextInt(14) == 0)
+        {
+            ret(d);
+            return;
+        }
+
+        Kind k = pick();
+        boolean nest = d < limit;
+        if (!nest && (k == Kind.COND || k == Kind.LOOP)) k = Kind.ASSIGN;
+        if (k == Kind.FUNC && (d != 1 || !nest)) k = Kind.ASSIGN;
+        if (weights[k.ordinal()] == 0) k = simplest();
+
+        switch (k)
+        {
+            case DECL:    decl(d);                        break;
+            case ARRAY:   array(d);                       break;
+            case ASSIGN:  assign(d);                      break;
+            case IO:      io(d);                          break;
+            case COND:    cond(d, limit, inLoop, inFunc); break;
+            case LOOP:    loop(d, limit, inFunc);         break;
+            case FUNC:    func(d, limit);                 break;
+            default:      comment(d);                     break;
+        }
+    }
+
+    // weighted pick among the kinds
+    private Kind pick()
+    {
+        int x = r.nextInt(total);
+        int i = 0;
+        while (cum[i] <= x) i++;
+        return KINDS[i];
+    }
+
+    // a flat kind that is allowed, for when a block kind cannot be used
+    private Kind simplest()
+    {
+        for (Kind k : new Kind[] { Kind.ASSIGN, Kind.DECL, Kind.IO, Kind.ARRAY, Kind.COMMENT })
+        {
+            if (weights[k.ordinal()] > 0) return k;
+        }
+        return Kind.ASSIGN;     // only blocks asked for: their bodies still need something
+    }
+
+    private void decl(int d)
+    {
+        indent(d);
+        put("declare ");
+        put(newName());
+        if (r.nextInt(5) != 0)
+        {
+            put(" = ");
+            if (r.nextBoolean()) literal();
+            else                 expr(2);
+        }
+        put(';');
+        nl();
+    }
+
+    private void array(int d)
+    {
+        indent(d);
+        if (nArrays == 0 || r.nextInt(4) == 0)
+        {
+            String a = ident(r);
+            if (nArrays < arrays.length) arrays[nArrays++] = a;
+            else                         arrays[r.nextInt(arrays.length)] = a;
+            put("declare ");
+            put(a);
+            put('[');
+            num(1 + r.nextInt(r.nextBoolean() ? 16 : 4096));
+            put("];");
+            nl();
+            return;
+        }
+        put(arrays[r.nextInt(nArrays)]);
+        put('[');
+        index();
+        put("] = ");
+        expr(2);
+        put(';');
+        nl();
+    }
+
+    private void assign(int d)
+    {
+        indent(d);
+        int c = r.nextInt(10);
+        if (c == 0)
+        {
+            put(name());
+            put(r.nextBoolean() ? "++;" : "--;");
+        }
+        else if (c == 1 && nFuncs > 0)
+        {
+            call(1);
+            put(';');
+        }
+        else
+        {
+            put(name());
+            put(' ');
+            put(ASG[r.nextInt(ASG.length)]);
+            put(' ');
+            expr(2);
+            put(';');
+        }
+        nl();
+    }
+
+    private void io(int d)
+    {
+        indent(d);
+        if (r.nextInt(4) == 0)
+        {
+            put("input ");
+            put(name());
+        }
+        else
+        {
+            put("output ");
+            if (r.nextBoolean()) string();
+            else                 expr(1);
+        }
+        put(';');
+        nl();
+    }
+
+    private void cond(int d, int limit, boolean inLoop, boolean inFunc)
+    {
+        indent(d);
+        put("condition (");
+        condition();
+        put(')');
+        nl();
+        block(d, limit, inLoop, inFunc);
+        if (r.nextInt(3) == 0)
+        {
+            indent(d);
+            put("else");
+            nl();
+            block(d, limit, inLoop, inFunc);
+        }
+    }
+
+    private void loop(int d, int limit, boolean inFunc)
+    {
+        indent(d);
+        put("loop (");
+        condition();
+        put(')');
+        nl();
+        block(d, limit, true, inFunc);
+    }
+
+    private void func(int d, int limit)
+    {
+        String f = ident(r);
+        int    n = r.nextInt(4);
+        if (nFuncs < funcs.length)
+        {
+            funcs[nFuncs]   = f;
+            arity[nFuncs++] = n;
+        }
+        indent(d);
+        put("function ");
+        put(f);
+        put('(');
+        for (int k = 0; k < n; k++)
+        {
+            if (k > 0) put(", ");
+            put(name());
+        }
+        put(") :");
+        if (r.nextInt(3) == 0)
+        {
+            put(" return ");
+            expr(2);
+            put(';');
+            nl();
+            return;
+        }
+        nl();
+        indent(d);
+        put('{');
+        nl();
+        for (int k = 1 + r.nextInt(5); k > 0; k--) statement(d + 1, limit, false, true);
+        ret(d + 1);
+        indent(d);
+        put('}');
+        nl();
+    }
+
+    private void ret(int d)
+    {
+        indent(d);
+        put("return ");
+        expr(2);
+        put(';');
+        nl();
+    }
+
+    // { 1 to 4 statements }
+    private void block(int d, int limit, boolean inLoop, boolean inFunc)
+    {
+        indent(d);
+        put('{');
+        nl();
+        for (int k = 1 + r.nextInt(4); k > 0; k--) statement(d + 1, limit, inLoop, inFunc);
+        indent(d);
+        put('}');
+        nl();
+    }
+
+    private void comment(int d)
+    {
+        int c = r.nextInt(4);
+        if (c == 0)
+        {
+            // a block, sometimes commented out code
+            indent(d);
+            put("#|");
+            nl();
+            for (int k = 1 + r.nextInt(5); k > 0; k--)
+            {
+                indent(d + 1);
+                if (r.nextInt(3) == 0)
+                {
+                    put(name());
+                    put(" = ");
+                    put(name());
+                    put(" + 1;");
+                }
+                else
+                {
+                    words(3 + r.nextInt(10));
+                }
+                nl();
+            }
+            indent(d);
+            put("|#");
+            nl();
+            return;
+        }
+        if (c == 1)
+        {
+            // trailing, after a statement
+            indent(d);
+            put(name());
+            put(" = ");
+            literal();
+            put(";  ## ");
+            words(2 + r.nextInt(6));
+            nl();
+            return;
+        }
+        indent(d);
+        put("## ");
+        words(3 + r.nextInt(12));
+        nl();
+    }
+
+    // one statement with one lexical mistake in it
+    private void error()
+    {
+        switch (r.nextInt(12))
+        {
+            case 0:     // BAD_CHAR
+                put(name());
+                put(" = 1 ");
+                put(BAD[r.nextInt(BAD.length)]);
+                put(" 2;");
+                break;
+            case 1:     // BAD_CHARS
+                for (int k = 2 + r.nextInt(4); k > 0; k--) put(BAD[r.nextInt(BAD.length)]);
+                break;
+            case 2:     // BAD_ID_START
+                put(WORDS[r.nextInt(20)]);
+                num(r.nextInt(100));
+                put(" = 1;");
+                break;
+            case 3:     // BAD_ID_CHAR
+                put("CoUnt");
+                num(r.nextInt(100));
+                put(" = 1;");
+                break;
+            case 4:     // LONG_ID
+                put((char) ('A' + r.nextInt(26)));
+                for (int k = 31 + r.nextInt(10); k > 0; k--) put(LOWER.charAt(r.nextInt(LOWER.length())));
+                put(" = 1;");
+                break;
+            case 5:     // FLOAT_DIGITS
+                put(name());
+                put(" = 1.1234567;");
+                break;
+            case 6:     // FLOAT_EXPONENT
+                put(name());
+                put(" = 2.5e;");
+                break;
+            case 7:     // EMPTY_CHAR
+                put(name());
+                put(" = '';");
+                break;
+            case 8:     // LONG_CHAR
+                put(name());
+                put(" = 'ab';");
+                break;
+            case 9:     // BAD_ESCAPE
+                put("output \"bad \\q escape\";");
+                break;
+            case 10:    // NO_CLOSE_STR
+                put("output \"never closed");
+                break;
+            default:    // NO_CLOSE_CHR
+                put(name());
+                put(" = 'x");
+                break;
+        }
+        nl();
+    }
+
+    // ---- expressions ----
+
+    // operands joined by binary operators, parentheses at most d deep
+    private void expr(int d)
+    {
+        operand(d);
+        for (int k = r.nextInt(3); k > 0; k--)
+        {
+            put(' ');
+            put(BIN[r.nextInt(BIN.length)]);
+            put(' ');
+            operand(d);
+        }
+    }
+
+    private void operand(int d)
+    {
+        int c = r.nextInt(16);
+        if      (d > 0 && c == 0)                        { put('('); expr(d - 1); put(')'); }
+        else if (d > 0 && c == 1)                        { put("!("); expr(d - 1); put(')'); }
+        else if (d > 0 && c == 2 && nFuncs > 0)          call(d - 1);
+        else if (c == 3 && nArrays > 0)                  { put(arrays[r.nextInt(nArrays)]); put('['); index(); put(']'); }
+        else if (c < 10)                                 put(name());
+        else                                             literal();
+    }
+
+    // R < 10 && !Done, and the like
+    private void condition()
+    {
+        operand(1);
+        put(' ');
+        put(REL[r.nextInt(REL.length)]);
+        put(' ');
+        operand(1);
+        if (r.nextInt(3) == 0)
+        {
+            put(r.nextBoolean() ? " && " : " || ");
+            if (r.nextBoolean()) put('!');
+            put(name());
+        }
+    }
+
+    private void call(int d)
+    {
+        int f = r.nextInt(nFuncs);
+        put(funcs[f]);
+        put('(');
+        for (int k = 0; k < arity[f]; k++)
+        {
+            if (k > 0) put(", ");
+            if (d > 0) expr(d);
+            else       operand(0);
+        }
+        put(')');
+    }
+
+    private void index()
+    {
+        if (r.nextBoolean()) num(r.nextInt(16));
+        else                 put(name());
+    }
+
+    private void literal()
+    {
+        switch (r.nextInt(10))
+        {
+            case 0: case 1: case 2: case 3:
+                integer();
+                break;
+            case 4: case 5:
+                floating();
+                break;
+            case 6: case 7:
+                string();
+                break;
+            case 8:
+                character();
+                break;
+            default:
+                put(r.nextBoolean() ? "true" : "false");
+                break;
+        }
+    }
+
+    private void integer()
+    {
+        sign();
+        num(r.nextInt(3) != 0 ? r.nextInt(100) : r.nextInt(Integer.MAX_VALUE));
+    }
+
+    // 1 to 6 decimals, sometimes an exponent
+    private void floating()
+    {
+        sign();
+        num(r.nextInt(1000));
+        put('.');
+        for (int k = 1 + r.nextInt(6); k > 0; k--) put((char) ('0' + r.nextInt(10)));
+        if (r.nextInt(4) == 0)
+        {
+            put(r.nextBoolean() ? 'e' : 'E');
+            int s = r.nextInt(3);
+            if (s == 1) put('+');
+            if (s == 2) put('-');
+            num(r.nextInt(40));
+        }
+    }
+
+    private void sign()
+    {
+        int s = r.nextInt(6);
+        if (s == 0) put('+');
+        if (s == 1) put('-');
+    }
+
+    // words, printable ASCII and escapes
+    private void string()
+    {
+        put('"');
+        for (int k = 0, n = r.nextInt(12); k < n; k++)
+        {
+            int c = r.nextInt(10);
+            if (k > 0) put(' ');
+            if (c == 0)
+            {
+                put(STR_ESC[r.nextInt(STR_ESC.length)]);
+            }
+            else if (c == 1)
+            {
+                char ch = (char) ('!' + r.nextInt(94));
+                put((ch == '"' || ch == '\\') ? '.' : ch);
+            }
+            else
+            {
+                put(WORDS[r.nextInt(WORDS.length)]);
+            }
+        }
+        put('"');
+    }
+
+    private void character()
+    {
+        put('\'');
+        if (r.nextInt(4) == 0)
+        {
+            put(CHR_ESC[r.nextInt(CHR_ESC.length)]);
+        }
+        else
+        {
+            char ch = (char) (' ' + r.nextInt(95));
+            put((ch == '\'' || ch == '\\') ? 'q' : ch);
+        }
+        put('\'');
+    }
+
+    private void words(int n)
+    {
+        for (int k = 0; k < n; k++)
+        {
+            if (k > 0) put(' ');
+            put(WORDS[r.nextInt(WORDS.length)]);
+        }
+    }
+
+    // ---- names ----
+
+    // an existing name, the first ones much more often
+    private String name()
+    {
+        if (nNames == 0) return newName();
+        double u = r.nextDouble();
+        return names[(int) (nNames * u * u)];
+    }
+
+    // a name to declare, new until the vocabulary is full, then one replaced
+    private String newName()
+    {
+        String s = ident(r);
+        if (nNames < names.length) names[nNames++] = s;
+        else                       names[r.nextInt(names.length)] = s;
+        return s;
+    }
+
+    // Count, Total_sum, Node2, at most 31 chars
+    private static String ident(SplittableRandom r)
+    {
+        StringBuilder sb = new StringBuilder(24);
+        String w = WORDS[r.nextInt(20)];
+        sb.append(Character.toUpperCase(w.charAt(0))).append(w, 1, w.length());
+        if (r.nextInt(3) == 0) sb.append('_').append(WORDS[r.nextInt(20)]);
+        if (r.nextInt(3) == 0) sb.append(r.nextInt(1000));
+        for (int k = r.nextInt(3); k > 0; k--) sb.append(LOWER.charAt(r.nextInt(LOWER.length())));
+        return sb.toString();
+    }
+
+    // ---- output ----
+
+    private long size()
+    {
+        return spilled + len;
+    }
+
+    private void indent(int d)
+    {
+        for (int k = 4 * d; k > 0; k--) put(' ');
+    }
+
+    private void nl()
+    {
+        put('\n');
+        lines++;
+    }
+
+    private void put(char c)
+    {
+        if (len == buf.length) buf = Arrays.copyOf(buf, len << 1);   // only for an outsized statement
+        buf[len++] = (byte) c;
+    }
+
+    private void put(String s)
+    {
+        int n = s.length();
+        if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(len << 1, len + n));
+        for (int k = 0; k < n; k++) buf[len++] = (byte) s.charAt(k);
+    }
+
+    private void num(long v)
+    {
+        put(Long.toString(v));
+    }
+
+    private void spill(OutputStream out) throws IOException
+    {
+        out.write(buf, 0, len);
+        spilled += len;
+        len = 0;
+        if (buf.length > CHUNK + 4096) buf = new byte[CHUNK + 4096];
+    }
+
+    // 64M, 10G, 512K, or plain bytes
+    static long parseSize(String s)
+    {
+        char u     = Character.toUpperCase(s.charAt(s.length() - 1));
+        int  shift = (u == 'K') ? 10 : (u == 'M') ? 20 : (u == 'G') ? 30 : 0;
+        String n   = (shift == 0) ? s : s.substring(0, s.length() - 1);
+        return Long.parseLong(n) << shift;
+    }
+
+    public static void main(String[] args)
+    {
+        long    size   = 1 << 20;
+        long    seed   = 1;
+        String  mix    = null;
+        int     depth  = 4;
+        int     vocab  = 1024;
+        double  errors = 0;
+        String  outFile = null;
+        String  dir     = null;
+        int     files   = 100;
+
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                switch (args[i])
+                {
+                    case "-size":   size   = parseSize(args[++i]);           break;
+                    case "-seed":   seed   = Long.parseLong(args[++i]);      break;
+                    case "-mix":    mix    = args[++i];                      break;
+                    case "-depth":  depth  = Integer.parseInt(args[++i]);    break;
+                    case "-vocab":  vocab  = Integer.parseInt(args[++i]);    break;
+                    case "-errors": errors = Double.parseDouble(args[++i]);  break;
+                    case "-o":      outFile = args[++i];                     break;
+                    case "-dir":    dir     = args[++i];                     break;
+                    case "-files":  files   = Integer.parseInt(args[++i]);   break;
+                    default:        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+
+            CorpusGen gen = new CorpusGen(seed).depth(depth).vocabulary(vocab).errors(errors);
+            if (mix != null) gen.mix(mix);
+
+            long t0 = System.nanoTime();
+            long bytes = 0, lines = 0;
+            if (dir != null)
+            {
+                // one program per file, file i from seed + i
+                Path d = Paths.get(dir);
+                Files.createDirectories(d);
+                for (int i = 0; i < files; i++)
+                {
+                    try (OutputStream out = Files.newOutputStream(d.resolve(String.format("gen_%05d.lang", i))))
+                    {
+                        bytes += gen.seed(seed + i).write(out, size);
+                    }
+                    lines += gen.lines();
+                }
+            }
+            else if (outFile != null)
+            {
+                try (OutputStream out = Files.newOutputStream(Paths.get(outFile)))
+                {
+                    bytes = gen.write(out, size);
+                }
+                lines = gen.lines();
+            }
+            else
+            {
+                bytes = gen.write(System.out, size);
+                lines = gen.lines();
+            }
+
+            double secs = (System.nanoTime() - t0) / 1e9;
+            System.err.printf("%d bytes, %d lines in %.3f s  (%.1f MB/s)%n", bytes, lines, secs, bytes / secs / 1e6);
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            System.err.println("Usage: java CorpusGen [-size 64M] [-seed n] [-mix kind=w,...] [-depth n] [-vocab n] [-errors rate] [-o out.lang | -dir outdir [-files n]]");
+            System.exit(1);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
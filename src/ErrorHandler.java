@@ -1,121 +1,409 @@
-import java.util.ArrayList;
+import java.io.PrintStream;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
 
+/*
+ * Lexical errors as packed records, no object per error: a one byte Code
+ * and four ints for offset/length/line/column, like TokenBuffer. The
+ * lexeme is sliced out of the source and the heading and message come from
+ * the Code, so nothing is formatted until show() or list() asks for it.
+ * Lexemes that are not slices of the source (a streaming scanner, a
+ * scanner that collects literals itself) are kept on the side.
+ *
+ * limit() caps how many errors are kept. Past it errors are only counted,
+ * or, if the handler stops, the scanner ends the token stream as well.
+ *
+ * With coalesce() a scanner folds floods of errors: a run of invalid chars
+ * becomes one BAD_CHARS error (and one ERROR token), and an error that
+ * repeats the one right before it, same code and lexeme with only blanks
+ * between their tokens, is counted into that one as a run with a last
+ * position instead of being added. Output then grows with the number of
+ * distinct problems, not with the input.
+ */
 public class ErrorHandler 
 {
 
-    public static class Err 
+    // what went wrong, with the heading and message show() prints
+    public enum Code 
     {
-        private String type;
-        private int    ln;
-        private int    col;
-        private String lex;
-        private String msg;
+        BAD_CHAR       ("Invalid Character",   "Character is not part of the language alphabet."),
+        BAD_CHARS      ("Invalid Characters",  "Characters are not part of the language alphabet."),
+        BAD_ID_START   ("Invalid Identifier",  "Identifiers must start with an uppercase letter [A-Z]."),
+        BAD_ID_CHAR    ("Invalid Identifier",  "Identifiers may only contain lowercase letters, digits, and underscores after the first character."),
+        LONG_ID        ("Identifier Too Long", "Identifier exceeds maximum length of 31 characters."),
+        FLOAT_DIGITS   ("Malformed Literal",   "Float literal exceeds maximum of 6 decimal digits."),
+        FLOAT_EXPONENT ("Malformed Literal",   "Exponent part of float is incomplete."),
+        EMPTY_CHAR     ("Malformed Literal",   "Empty character literal."),
+        LONG_CHAR      ("Malformed Literal",   "Character literal contains more than one character."),
+        BAD_ESCAPE     ("Invalid Escape",      "Unrecognized escape sequence."),
+        NO_CLOSE_STR   ("Unclosed String",     "String literal was never terminated."),
+        NO_CLOSE_CHR   ("Unclosed Char",       "Character literal was never terminated."),
+        NO_CLOSE_CMNT  ("Unclosed Comment",    "Multi-line comment was never terminated with |#.");
+
+        private final String type;
+        private final String msg;
 
-        public Err(String type, int ln, int col, String lex, String msg) 
+        Code(String type, String msg) 
         {
             this.type = type;
+            this.msg  = msg;
+        }
+
+        public String type() { return type; }
+        public String msg()  { return msg;  }
+    }
+
+    private static final Code[] CODES = Code.values();
+
+    private static final int SHOW_CHARS = 40;   // longest BAD_CHARS lexeme toString() prints whole
+
+    // one error, materialized by list()
+    public static class Err 
+    {
+        private final Code   code;
+        private final int    off;
+        private final int    len;
+        private final int    ln;
+        private final int    col;
+        private final String lex;
+        private final int[]  run;      // null, or repeats, end offset, line and col of the last
+
+        Err(Code code, int off, int len, int ln, int col, String lex, int[] run) 
+        {
+            this.code = code;
+            this.off  = off;
+            this.len  = len;
             this.ln   = ln;
             this.col  = col;
             this.lex  = lex;
-            this.msg  = msg;
+            this.run  = run;
         }
 
+        public Code   code() { return code;       }
+        public int    off()  { return off;        }
+        public int    len()  { return len;        }
+        public int    ln()   { return ln;         }
+        public int    col()  { return col;        }
+        public String lex()  { return lex;        }
+        public String type() { return code.type(); }
+        public String msg()  { return code.msg();  }
+
+        // times this error occurred in a row, and where its last occurrence is
+        public int repeats() { return (run == null) ? 1 : run[0]; }
+        public int end()     { return (run == null) ? off + len : run[1]; }
+        public int lastLn()  { return (run == null) ? ln  : run[2]; }
+        public int lastCol() { return (run == null) ? col : run[3]; }
+
         @Override
         public String toString() 
         {
-            return "Error: [" + type + "] at Line " + ln + ", Col " + col
-                    + ": Lexeme \"" + lex + "\" - " + msg;
+            String shown = (code == Code.BAD_CHARS && lex.length() > SHOW_CHARS) ? lex.substring(0, SHOW_CHARS) + "..." : lex;
+            String s = "Error: [" + code.type() + "] at Line " + ln + ", Col " + col + ": Lexeme \"" + shown + "\"";
+            if (code == Code.BAD_CHARS) s += " (" + len + " chars)";
+            s += " - " + code.msg();
+            if (run != null) s += " (" + run[0] + " times, last at Line " + run[2] + ", Col " + run[3] + ")";
+            return s;
         }
     }
 
-    private List<Err> errs;
+    private final CharSequence src;     // lexemes are slices of this, may be null
+
+    private byte[] codes;
+    private int[]  starts;
+    private int[]  lens;
+    private int[]  lines;
+    private int[]  cols;
+    private int    size;                // kept
+    private int    seen;                // kept and not kept
+
+    private Map<Integer, String> texts; // lexemes that are not source slices
+    private Map<Integer, int[]>  runs;  // coalesced repeats, see Err.run
+
+    private int     max = Integer.MAX_VALUE;
+    private boolean stop;
+    private boolean coalesce;
 
     public ErrorHandler() 
     {
-        errs = new ArrayList<>();
+        this(null);
+    }
+
+    public ErrorHandler(CharSequence src) 
+    {
+        this.src    = src;
+        this.codes  = new byte[8];
+        this.starts = new int[8];
+        this.lens   = new int[8];
+        this.lines  = new int[8];
+        this.cols   = new int[8];
+    }
+
+    // keeps at most max errors; past that the rest are counted, and if stop the scan ends
+    public ErrorHandler limit(int max, boolean stop) 
+    {
+        this.max  = Math.max(0, max);
+        this.stop = stop;
+        return this;
+    }
+
+    public int     max()   { return max;  }
+    public boolean stops() { return stop; }
+
+    // lets the scanner fold runs of bad chars and repeated errors
+    public ErrorHandler coalesce(boolean on) 
+    {
+        this.coalesce = on;
+        return this;
+    }
+
+    public boolean coalesces() { return coalesce; }
+
+    // false once the next error would only be counted
+    public boolean keeps() 
+    {
+        return size < max;
+    }
+
+    // true once the scanner should stop: at the limit, or the first error if it is 0
+    public boolean stopped() 
+    {
+        return stop && seen > 0 && seen >= max;
+    }
+
+    // records an error on src[off, off + len)
+    public void add(Code code, int off, int len, int ln, int col) 
+    {
+        add(code, off, len, ln, col, null);
+    }
+
+    // records an error whose lexeme is not a slice of src, lex may be null past the limit
+    public void add(Code code, int off, int len, int ln, int col, String lex) 
+    {
+        seen++;
+        if (size >= max) return;
+        if (size == codes.length)
+        {
+            int n  = size << 1;
+            codes  = Arrays.copyOf(codes, n);
+            starts = Arrays.copyOf(starts, n);
+            lens   = Arrays.copyOf(lens, n);
+            lines  = Arrays.copyOf(lines, n);
+            cols   = Arrays.copyOf(cols, n);
+        }
+        codes[size]  = (byte) code.ordinal();
+        starts[size] = off;
+        lens[size]   = len;
+        lines[size]  = ln;
+        cols[size]   = col;
+        if (lex != null)
+        {
+            if (texts == null) texts = new HashMap<>();
+            texts.put(size, lex);
+        }
+        size++;
     }
 
-    public void badChar(int ln, int col, String lex) 
+    // coalescing: folds an error at [off, off + len) into the last kept one if it has
+    // the same code and lexeme, text[at, at + len), true if it did
+    public boolean repeat(Code code, CharSequence text, int at, int off, int len, int ln, int col) 
     {
-        errs.add(new Err("Invalid Character", ln, col, lex,
-                "Character is not part of the language alphabet."));
+        int i = size - 1;
+        if (!coalesce || i < 0 || seen > size || codes[i] != code.ordinal() || !sameLex(i, text, at, len)) return false;
+        if (runs == null) runs = new HashMap<>();
+        int[] run = runs.computeIfAbsent(i, k -> new int[] { 1, 0, 0, 0 });
+        run[0]++;
+        run[1] = off + len;
+        run[2] = ln;
+        run[3] = col;
+        return true;
     }
 
-    public void badLit(int ln, int col, String lex, String detail) 
+    private boolean sameLex(int i, CharSequence text, int off, int len) 
     {
-        errs.add(new Err("Malformed Literal", ln, col, lex, detail));
+        if (code(i) == Code.NO_CLOSE_CMNT) return true;
+        String t = text(i);
+        CharSequence a = (t != null) ? t : src;
+        int          at = (t != null) ? 0 : starts[i];
+        int          n  = (t != null) ? t.length() : lens[i];
+        if (n != len || a == null) return false;
+        for (int k = 0; k < n; k++)
+        {
+            if (a.charAt(at + k) != text.charAt(off + k)) return false;
+        }
+        return true;
     }
-    public void noCloseStr(int ln, int col, String lex) 
+
+    // repeats, end offset, line and col of the last repeat of the i-th kept error, null if it has none
+    int[] run(int i) 
     {
-        errs.add(new Err("Unclosed String", ln, col, lex,
-                "String literal was never terminated."));
+        return (runs == null) ? null : runs.get(check(i));
     }
 
-    public void noCloseChr(int ln, int col, String lex) 
+    void setRun(int i, int[] run) 
     {
-        errs.add(new Err("Unclosed Char", ln, col, lex,
-                "Character literal was never terminated."));
+        if (runs == null) runs = new HashMap<>();
+        runs.put(check(i), run);
     }
 
-    public void noCloseCmnt(int ln, int col, String lex) 
+    // counts n errors that were not kept
+    void counted(int n) 
     {
-        errs.add(new Err("Unclosed Comment", ln, col, lex,
-                "Multi-line comment was never terminated with |#."));
+        seen += n;
     }
-    public void longId(int ln, int col, String lex) 
+
+    // appends other's errors after ours, in their order, up to our limit
+    public void addAll(ErrorHandler other) 
     {
-        errs.add(new Err("Identifier Too Long", ln, col, lex,
-                "Identifier exceeds maximum length of 31 characters."));
+        addAll(other, false);
     }
 
-    public void badEsc(int ln, int col, String lex) 
+    // joins: other's first error directly follows our last one and may repeat it
+    public void addAll(ErrorHandler other, boolean joins) 
     {
-        errs.add(new Err("Invalid Escape", ln, col, lex,
-                "Unrecognized escape sequence."));
+        int i = 0;
+        if (joins && other.size > 0)
+        {
+            String t = other.text(0);
+            boolean same = (t != null)
+                    ? repeat(other.code(0), t, 0, other.starts[0], other.lens[0], other.lines[0], other.cols[0])
+                    : repeat(other.code(0), other.src, other.starts[0], other.starts[0], other.lens[0], other.lines[0], other.cols[0]);
+            if (same)
+            {
+                int[] more = other.run(0);
+                if (more != null)
+                {
+                    int[] run = runs.get(size - 1);
+                    run[0] += more[0] - 1;
+                    System.arraycopy(more, 1, run, 1, 3);
+                }
+                i = 1;
+            }
+        }
+        for (; i < other.size && keeps(); i++)
+        {
+            String lex = (other.src == src) ? other.text(i) : other.lex(i);
+            add(CODES[other.codes[i]], other.starts[i], other.lens[i], other.lines[i], other.cols[i], lex);
+            int[] run = other.run(i);
+            if (run != null) setRun(size - 1, run.clone());
+        }
+        seen += other.seen - i;     // the rest were not kept, a folded one is no new error
+    }
+
+    // lexeme of the i-th kept error
+    public String lex(int i) 
+    {
+        if (codes[check(i)] == Code.NO_CLOSE_CMNT.ordinal()) return "#|...";
+        String t = text(i);
+        if (t != null) return t;
+        return src.subSequence(starts[i], starts[i] + lens[i]).toString();
+    }
+
+    // lexeme of the i-th kept error as the returned chars [at[0], at[1]), without a copy
+    public CharSequence lexeme(int i, int[] at) 
+    {
+        String t = (codes[check(i)] == Code.NO_CLOSE_CMNT.ordinal()) ? "#|..." : text(i);
+        if (t != null)
+        {
+            at[0] = 0;
+            at[1] = t.length();
+            return t;
+        }
+        at[0] = starts[i];
+        at[1] = starts[i] + lens[i];
+        return src;
     }
 
-    public void log(String type, int ln, int col, String lex, String msg) 
+    private String text(int i) 
     {
-        errs.add(new Err(type, ln, col, lex, msg));
+        return (texts == null) ? null : texts.get(i);
     }
 
+    public Code code(int i) { return CODES[codes[check(i)]]; }
+    public int  off(int i)  { return starts[check(i)]; }
+    public int  len(int i)  { return lens[check(i)];   }
+    public int  ln(int i)   { return lines[check(i)];  }
+    public int  col(int i)  { return cols[check(i)];   }
+
     public boolean any() 
     {
-        return !errs.isEmpty();
+        return seen > 0;
     }
 
+    // all errors, also those past the limit
     public int count() 
     {
-        return errs.size();
+        return seen;
     }
 
+    // errors kept, at most the limit
+    public int kept() 
+    {
+        return size;
+    }
+
+    // read-only List view of the kept errors, Errs are materialized per get()
     public List<Err> list() 
     {
-        return errs;
+        return new View();
+    }
+
+    private class View extends AbstractList<Err> implements RandomAccess
+    {
+        @Override
+        public Err get(int i) 
+        {
+            check(i);
+            return new Err(CODES[codes[i]], starts[i], lens[i], lines[i], cols[i], lex(i), run(i));
+        }
+
+        @Override
+        public int size() 
+        {
+            return size;
+        }
+    }
+
+    private int check(int i) 
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("error " + i + " of " + size);
+        return i;
     }
 
     public void show() 
     {
-        if (errs.isEmpty()) 
+        show(System.out, System.err);
+    }
+
+    // no-error line goes to out, the error table to err
+    public void show(PrintStream out, PrintStream err) 
+    {
+        if (seen == 0)
         {
-            System.out.println("\n[ErrorHandler] No lexical errors detected.");
+            out.println("\n[ErrorHandler] No lexical errors detected.");
             return;
         }
 
-        System.err.println("\n||============================================================||");
-        System.err.println("||                     LEXICAL ERRORS                         ||");
-        System.err.println("||============================================================||");
+        err.println("\n||============================================================||");
+        err.println("||                     LEXICAL ERRORS                         ||");
+        err.println("||============================================================||");
 
 
-        for (Err e : errs) 
+        for (Err e : list())
         {
-            System.err.println("||  " + e);
+            err.println("||  " + e);
         }
 
-        System.err.println("||============================================================||");
-        System.err.printf("||  Total errors: %-45d ||%n", errs.size());
-        System.err.println("||============================================================||");
+        err.println("||============================================================||");
+        err.printf("||  Total errors: %-45d ||%n", seen);
+        if (seen > size)
+        {
+            err.printf("||  Not listed:   %-45s ||%n", (seen - size) + (stopped() ? ", scan stopped" : ""));
+        }
+        err.println("||============================================================||");
     }
 }
@@ -0,0 +1,61 @@
+/*
+ * Keyword and boolean lookup straight over source chars, no String is built.
+ * Dispatches on length and first char, then compares the remaining chars of
+ * the single candidate.
+ */
+public final class Keywords 
+{
+    public static final int MIN_LEN = 4;
+    public static final int MAX_LEN = 9;
+
+    private Keywords() { }
+
+    // keyword/bool type of src[off, off+len), null if it is not one
+    public static TokenType match(CharSequence src, int off, int len) 
+    {
+        if (len < MIN_LEN || len > MAX_LEN) return null;
+
+        char c = src.charAt(off);
+        switch (len) 
+        {
+            case 4:
+                if (c == 'l') return rest(src, off, "loop",      TokenType.LOOP);
+                if (c == 'e') return rest(src, off, "else",      TokenType.ELSE);
+                if (c == 't') return rest(src, off, "true",      TokenType.BOOLEAN);
+                return null;
+            case 5:
+                if (c == 's') return rest(src, off, "start",     TokenType.START);
+                if (c == 'i') return rest(src, off, "input",     TokenType.INPUT);
+                if (c == 'b') return rest(src, off, "break",     TokenType.BREAK);
+                if (c == 'f') return rest(src, off, "false",     TokenType.BOOLEAN);
+                return null;
+            case 6:
+                if (c == 'f') return rest(src, off, "finish",    TokenType.FINISH);
+                if (c == 'o') return rest(src, off, "output",    TokenType.OUTPUT);
+                if (c == 'r') return rest(src, off, "return",    TokenType.RETURN);
+                return null;
+            case 7:
+                if (c == 'd') return rest(src, off, "declare",   TokenType.DECLARE);
+                return null;
+            case 8:
+                if (c == 'f') return rest(src, off, "function",  TokenType.FUNCTION);
+                if (c == 'c') return rest(src, off, "continue",  TokenType.CONTINUE);
+                return null;
+            case 9:
+                if (c == 'c') return rest(src, off, "condition", TokenType.CONDITION);
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    // first char already matched, compare the others
+    private static TokenType rest(CharSequence src, int off, String w, TokenType t) 
+    {
+        for (int i = 1; i < w.length(); i++) 
+        {
+            if (src.charAt(off + i) != w.charAt(i)) return null;
+        }
+        return t;
+    }
+}
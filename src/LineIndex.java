@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/*
+ * Start offset of every line of a text, found in one pass over it.
+ * For a String the pass is String.indexOf('\n'), which the JIT turns into
+ * a SIMD loop. line(offset) and column(offset) are a binary search, so
+ * tokens can keep only their offset and get positions when asked.
+ *
+ * Lines are counted the way ManualScanner counts them: every '\n' starts
+ * a line except one a backslash escapes inside a string, which the string
+ * token swallows. Only a newline right after a backslash can be one of
+ * those, so only a text that has one is scanned, once, to drop the
+ * newlines that fall inside tokens.
+ *
+ * No driver builds one: it is only used through new TokenBuffer(src, index),
+ * which then keeps offsets alone and asks the index for lines and columns.
+ */
+public class LineIndex
+{
+    private int[] starts;    // starts[n - 1] is the offset of line n
+    private int   count;
+    private final int length;
+
+    public LineIndex(String src)
+    {
+        this.length = src.length();
+        this.starts = new int[64];
+        this.count  = 1;
+        for (int i = src.indexOf('\n'); i >= 0; i = src.indexOf('\n', i + 1))
+        {
+            push(i + 1);
+        }
+        if (src.indexOf("\\\n") >= 0) dropEscaped(src);
+    }
+
+    public LineIndex(CharSequence src)
+    {
+        this.length = src.length();
+        this.starts = new int[64];
+        this.count  = 1;
+        boolean escaped = false;
+        for (int i = 0; i < length; i++)
+        {
+            if (src.charAt(i) != '\n') continue;
+            push(i + 1);
+            if (i > 0 && src.charAt(i - 1) == '\\') escaped = true;
+        }
+        if (escaped) dropEscaped(src);
+    }
+
+    // removes the line starts that are inside a token, as ManualScanner does not count them;
+    // a token starts at the start of its line, as the lines kept so far place it, plus its column
+    private void dropEscaped(CharSequence src)
+    {
+        ManualScanner s = (src instanceof String) ? new ManualScanner((String) src) : new ManualScanner(reader(src));
+        s.track(false);
+        int k    = 1;       // next line start to look at
+        int kept = 1;
+        while (s.advance() != TokenType.EOF)
+        {
+            while (kept < s.line()) starts[kept++] = starts[k++];      // lines before the token all count
+            int from = starts[s.line() - 1] + s.column() - 1;
+            int to   = from + s.length();
+            for (; k < count && starts[k] <= to; k++)
+            {
+                if (starts[k] <= from) starts[kept++] = starts[k];      // the '\n' is at starts[k] - 1
+            }
+        }
+        for (; k < count; k++) starts[kept++] = starts[k];
+        count = kept;
+    }
+
+    // reads src through once, so a sequence is scanned as it is and not as its toString()
+    private static Reader reader(CharSequence src)
+    {
+        return new Reader()
+        {
+            private int at;
+
+            @Override
+            public int read(char[] cbuf, int off, int len)
+            {
+                if (at == src.length()) return -1;
+                int n = Math.min(len, src.length() - at);
+                for (int i = 0; i < n; i++) cbuf[off + i] = src.charAt(at++);
+                return n;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    private void push(int start)
+    {
+        if (count == starts.length) starts = Arrays.copyOf(starts, count << 1);
+        starts[count++] = start;
+    }
+
+    // number of lines, an empty text has one
+    public int lines()
+    {
+        return count;
+    }
+
+    // offset of the first char of line n (1-based)
+    public int lineStart(int n)
+    {
+        if (n < 1 || n > count) throw new IndexOutOfBoundsException("line " + n + " of " + count);
+        return starts[n - 1];
+    }
+
+    // offset just past line n, its '\n' included
+    public int lineEnd(int n)
+    {
+        return (n < count) ? lineStart(n + 1) : length;
+    }
+
+    // 1-based line of offset
+    public int line(int offset)
+    {
+        if (offset < 0 || offset > length) throw new IndexOutOfBoundsException("offset " + offset + " of " + length);
+        int lo = 0, hi = count - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= offset) lo = mid;
+            else                       hi = mid - 1;
+        }
+        return lo + 1;
+    }
+
+    // 1-based column of offset
+    public int column(int offset)
+    {
+        return offset - starts[line(offset) - 1] + 1;
+    }
+
+    // java LineIndex [file...]   every token's line and column from the index must be
+    // the scanner's, for the files or, if none, built-in inputs with escaped newlines
+    public static void main(String[] args)
+    {
+        List<String> srcs = new ArrayList<>();
+        try
+        {
+            for (String a : args) srcs.add(new String(Files.readAllBytes(Paths.get(a))));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (srcs.isEmpty())
+        {
+            srcs.add("start {\n  output << \"ab\\\ncd\";\n  declare Xy = 1;\n}\n");
+            srcs.add("## a \\\n#| b \\\n c |# \"d\\\ne\\\n\" 'x\\\n' #|\nf\n");
+            srcs.add(new CorpusGen(1).errors(0.05).generate(64 << 10));
+        }
+
+        int bad = 0;
+        for (int n = 0; n < srcs.size(); n++)
+        {
+            String        src = srcs.get(n);
+            LineIndex     a   = new LineIndex(src);
+            LineIndex     b   = new LineIndex((CharSequence) new StringBuilder(src));
+            CharStream    cs  = new CharStream(new StringReader(src), src.length() + 1);
+            cs.has(src.length());
+            cs.mark(src.indexOf('\n') + 1);        // its toString() now leaves out line 1
+            LineIndex     c   = new LineIndex(cs);
+            ManualScanner s   = new ManualScanner(src);
+            TokenType t;
+            do
+            {
+                t = s.advance();
+                int at = s.start();
+                if (a.line(at) != s.line() || a.column(at) != s.column()
+                        || b.line(at) != s.line() || b.column(at) != s.column()
+                        || c.line(at) != s.line() || c.column(at) != s.column())
+                {
+                    System.err.printf("input %d: %s at %d:%d, index says %d:%d%n",
+                            n + 1, t, s.line(), s.column(), a.line(at), a.column(at));
+                    bad++;
+                    break;
+                }
+            } while (t != TokenType.EOF);
+        }
+        if (bad > 0)
+        {
+            System.err.println("LineIndex differs from ManualScanner");
+            System.exit(1);
+        }
+        System.out.println("lines ok");
+    }
+}
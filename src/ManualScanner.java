@@ -1,101 +1,199 @@
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
-public class ManualScanner 
+public class ManualScanner implements TokenCursor
 {
 
     private String file_name;     
+    private CharStream stream;    // streaming mode, null when scanning a String
     private int    pos;          
+    private int    end;           // string mode: scan stops here
     private int    line;         
-    private int    column;        
+    private int    lineStart;     // offset of the current line, column = pos - lineStart + 1
 
     private ErrorHandler  errors;
     private SymbolTable   symbols;
 
-    private static final Map<String, TokenType> KEYWORDS = new HashMap<>();
+    // region mode: input goes on past end, see openLine()
+    private boolean more;
+    private int     openLine;
+    private int     openCol;
+    private int     openAt;
 
-    static 
-    {
-        KEYWORDS.put("start",    TokenType.START);
-        KEYWORDS.put("finish",   TokenType.FINISH);
-        KEYWORDS.put("loop",     TokenType.LOOP);
-        KEYWORDS.put("condition",TokenType.CONDITION);
-        KEYWORDS.put("declare",  TokenType.DECLARE);
-        KEYWORDS.put("output",   TokenType.OUTPUT);
-        KEYWORDS.put("input",    TokenType.INPUT);
-        KEYWORDS.put("function", TokenType.FUNCTION);
-        KEYWORDS.put("return",   TokenType.RETURN);
-        KEYWORDS.put("break",    TokenType.BREAK);
-        KEYWORDS.put("continue", TokenType.CONTINUE);
-        KEYWORDS.put("else",     TokenType.ELSE);
-    }
+    // contiguous chars from pos for the bulk skipper, see window()
+    private static final Skipper SKIP = Skipper.INSTANCE;
 
+    // chars other than letters, digits and blanks that start a token
+    private static final String STARTS = "\"'+-*/%=!<>&|(){}[],;:";
+    private char[] win;           // ring array in streaming mode, null when scanning a String
+    private int    winOff;
+
+    // current token for the cursor API
+    private TokenType tokType;
+    private int       errTok = -1;   // start of the token that raised the last error
+    private int       tokStart;
+    private int       tokLine;
+    private int       tokCol;
 
     public ManualScanner(String fn) 
     {
         this.file_name    = fn;
         this.pos          = 0;
+        this.end          = fn.length();
         this.line         = 1;
-        this.column       = 1;
-        this.errors = new ErrorHandler();
+        this.lineStart    = 0;
+        this.errors = new ErrorHandler(fn);
         this.symbols  = new SymbolTable();
     }
 
+    // streaming mode: tokens come out while the reader is still being read
+    public ManualScanner(Reader in) 
+    {
+        this(new CharStream(in));
+    }
+
+    public ManualScanner(CharStream in) 
+    {
+        this("");
+        this.file_name = null;
+        this.stream    = in;
+    }
+
+    // region mode: scans src[from, to) as if it started at line/col,
+    // more means the input continues after to (a chunk of a bigger file)
+    public ManualScanner(String src, int from, int to, int line, int col, boolean more) 
+    {
+        this(src);
+        this.pos    = from;
+        this.end    = to;
+        this.line   = line;
+        this.lineStart = from - col + 1;
+        this.more   = more;
+    }
+
+    // true if idx is inside the input
+    private boolean avail(int idx) 
+    {
+        if (stream == null) return idx < end;
+        return stream.has(idx);
+    }
+
+    private char at(int idx) 
+    {
+        if (stream == null) return file_name.charAt(idx);
+        return stream.charAt(idx);
+    }
+
+    // lets the stream drop everything before pos
+    private void release() 
+    {
+        if (stream != null) stream.mark(pos);
+    }
+
+    // between tokens: follows the stream when it moves its offsets back
+    private void rebase() 
+    {
+        int d = stream.rebase(pos);
+        if (d == 0) return;
+        pos       -= d;
+        lineStart -= d;
+        errTok    = -1;        // only compared within one token
+    }
+
     // checks if at end of file
     private boolean done() 
     {
-        return pos >= file_name.length();
+        return !avail(pos);
     }
 
     private char peek() 
     {
         if (done()) return '\0';
-        return file_name.charAt(pos);
+        return at(pos);
     }
 
     // peeks one char ahead
     private char peek2() 
     {
-        if (pos + 1 >= file_name.length()) return '\0';
-        return file_name.charAt(pos + 1);
+        if (!avail(pos + 1)) return '\0';
+        return at(pos + 1);
     }
 
     // peeks at offset
     private char peekN(int offset) 
     {
         int idx = pos + offset;
-        if (idx >= file_name.length()) return '\0';
-        return file_name.charAt(idx);
+        if (!avail(idx)) return '\0';
+        return at(idx);
     }
 
     // rets the current char, advances pos
-    private char advance() 
+    private char consume() 
     {
-        char c = file_name.charAt(pos);
+        char c = at(pos);
         pos++;
-        column++;
         return c;
     }
 
+    // points win/winOff at pos, returns how many chars follow it contiguously
+    private int window() 
+    {
+        if (stream == null) 
+        {
+            winOff = pos;
+            return end - pos;
+        }
+        int n  = stream.run(pos);
+        win    = stream.array();
+        winOff = pos & (win.length - 1);
+        return n;
+    }
+
+    // moves pos to window index e, keeping line/column right
+    private void skipTo(int e) 
+    {
+        int n = (win == null) ? SKIP.breaks(file_name, winOff, e) : SKIP.breaks(win, winOff, e);
+        if (n > 0) 
+        {
+            int last  = (win == null) ? SKIP.lastBreak(file_name, winOff, e) : SKIP.lastBreak(win, winOff, e);
+            line     += n;
+            lineStart = pos + (last - winOff) + 1;
+        }
+        pos += e - winOff;
+    }
+
+    // skips a run of ' ' \t \r \n
+    private void blanks() 
+    {
+        while (true) 
+        {
+            release();
+            int n = window();
+            if (n == 0) return;
+            int e = (win == null) ? SKIP.blank(file_name, winOff, winOff + n) : SKIP.blank(win, winOff, winOff + n);
+            skipTo(e);
+            if (e < winOff + n) return;
+        }
+    }
+
     private boolean match(char expected) 
     {
         if (done()) return false;
-        if (file_name.charAt(pos) != expected) return false;
+        if (at(pos) != expected) return false;
         pos++;
-        column++;
         return true;
     }
 
+    // call right after consuming the '\n'
     private void newline() 
     {
         line++;
-        column = 1;
+        lineStart = pos;
     }
 
     // skips whitespace, comments
@@ -103,17 +201,20 @@ public class ManualScanner
     {
         while (!done()) 
         {
+            release();
             char c = peek();
 
             if (c == ' ' || c == '\t' || c == '\r') 
             {
-                advance();
+                consume();
+                if (CharClass.isSpace(peek()) || peek() == '\n') blanks();
                 continue;
             }
             if (c == '\n') 
             {
-                advance();
+                consume();
                 newline();
+                if (CharClass.isSpace(peek()) || peek() == '\n') blanks();
                 continue;
             }
 
@@ -138,11 +239,13 @@ public class ManualScanner
     // skips single line cmnt
     private void single() 
     {
-        advance(); //   first #
-        advance(); //   second #
+        consume(); //   first #
+        consume(); //   second #
         while (!done() && peek() != '\n') 
         {
-            advance();
+            release();
+            int n = window();
+            skipTo((win == null) ? SKIP.lineEnd(file_name, winOff, winOff + n) : SKIP.lineEnd(win, winOff, winOff + n));
         }
 
     }
@@ -150,48 +253,116 @@ public class ManualScanner
     // skip #| ... |# comment (non-nested)
     private void multi() 
     {
+        int startPos  = pos;
         int startLine = line;
-        int startCol  = column;
-        advance(); //   #
-        advance(); //   |
+        int startCol  = pos - lineStart + 1;
+        consume(); //   #
+        consume(); //   |
         boolean closed = false;
         while (!done()) 
         {
+            release();
+            int n = window();
+            skipTo((win == null) ? SKIP.blockEnd(file_name, winOff, winOff + n) : SKIP.blockEnd(win, winOff, winOff + n));
             if (peek() == '|' && peek2() == '#') 
             {
-                advance(); //   |
-                advance(); //   #
+                consume(); //   |
+                consume(); //   #
                 closed = true;
                 break;
             }
             if (peek() == '\n') 
             {
-                advance();
+                consume();
                 newline();
             } 
             else 
             {
-                advance();
+                consume();
             }
         }
-        if (!closed) 
+        if (!closed && more) 
         {
-            errors.noCloseCmnt(startLine, startCol, "#|...");
+            // may close in the next region, the caller decides
+            openLine = startLine;
+            openCol  = startCol;
+            openAt   = startPos;
+        }
+        else if (!closed) 
+        {
+            errors.add(ErrorHandler.Code.NO_CLOSE_CMNT, startPos, 2, startLine, startCol);
         }
     }
 
-    // rets next token using longest match
-    public Token next() 
+    // cursor: moves to the next token using longest match, allocates nothing
+    public TokenType advance() 
     {
-        skip();
+        boolean stopped = errors.stopped();
+        if (!stopped) skip();
+        if (stream != null) rebase();
+
+        tokStart = pos;
+        tokLine  = line;
+        tokCol   = pos - lineStart + 1;
 
-        if (done()) 
+        if (done() || stopped) 
         {
-            return new Token(TokenType.EOF, "EOF", line, column);
+            return tokType = TokenType.EOF;
         }
 
-        int tokenLine = line;
-        int tokenCol  = column;
+        release();
+        tokType = scan(tokLine, tokCol);
+        if (symbols != null) symbols.follow(tokType, tokLine);
+        return tokType;
+    }
+
+    public TokenType type()   { return tokType; }
+    public int       start()  { return tokStart; }
+    public int       length() { return pos - tokStart; }
+    public int       line()   { return tokLine; }
+    public int       column() { return tokCol; }
+
+    public String text() 
+    {
+        String fixed = tokType.text();
+        if (fixed != null) return fixed;
+        return lexeme();
+    }
+
+    // rets next token using longest match, the lexeme is built only if asked for
+    public Token next() 
+    {
+        TokenType t = advance();
+        if (stream != null) return new Token(t, text(), tokLine, tokCol);
+        return new Token(t, file_name, tokStart, pos - tokStart, tokLine, tokCol);
+    }
+
+    // source text of the token being scanned
+    private String lexeme() 
+    {
+        if (stream == null) return file_name.substring(tokStart, pos);
+        return stream.slice(tokStart, pos);
+    }
+
+    private CharSequence source() 
+    {
+        if (stream == null) return file_name;
+        return stream;
+    }
+
+    // records an error on the input at [off, off + len), a stream gets its lexeme copied;
+    // coalescing, an error repeating the last one of this or the token before is folded into it
+    private void error(ErrorHandler.Code code, int off, int len, int ln, int col) 
+    {
+        boolean follows = tokType == TokenType.ERROR || errTok == tokStart;
+        errTok = tokStart;
+        if (follows && errors.coalesces() && errors.repeat(code, source(), off, off, len, ln, col)) return;
+        if (stream == null || !errors.keeps()) errors.add(code, off, len, ln, col);
+        else                                   errors.add(code, off, len, ln, col, stream.slice(off, off + len));
+    }
+
+    private TokenType scan(int tokenLine, int tokenCol) 
+    {
         char c = peek();
 
         // string literal " ..." 
@@ -209,300 +380,319 @@ public class ManualScanner
         switch (c) 
         {
             case '+':
-                advance();
-                if (!done() && peek() == '+') { advance(); return new Token(TokenType.INCREMENT,   "++", tokenLine, tokenCol); }
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.PLUS_ASSIGN, "+=", tokenLine, tokenCol); }
+                consume();
+                if (!done() && peek() == '+') { consume(); return TokenType.INCREMENT;   }
+                if (!done() && peek() == '=') { consume(); return TokenType.PLUS_ASSIGN; }
                 // +digit = signed number
-                if (!done() && Character.isDigit(peek())) 
+                if (!done() && CharClass.isDigit(peek())) 
                 {
-                    return num(tokenLine, tokenCol, "+");
+                    return num(tokenLine, tokenCol);
                 }
-                return new Token(TokenType.PLUS, "+", tokenLine, tokenCol);
+                return TokenType.PLUS;
 
             case '-':
-                advance();
-                if (!done() && peek() == '-') { advance(); return new Token(TokenType.DECREMENT,    "--", tokenLine, tokenCol); }
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.MINUS_ASSIGN, "-=", tokenLine, tokenCol); }
+                consume();
+                if (!done() && peek() == '-') { consume(); return TokenType.DECREMENT;    }
+                if (!done() && peek() == '=') { consume(); return TokenType.MINUS_ASSIGN; }
                 // -digit = signed number
-                if (!done() && Character.isDigit(peek())) 
+                if (!done() && CharClass.isDigit(peek())) 
                 {
-                    return num(tokenLine, tokenCol, "-");
+                    return num(tokenLine, tokenCol);
                 }
-                return new Token(TokenType.MINUS, "-", tokenLine, tokenCol);
+                return TokenType.MINUS;
 
             case '*':
-                advance();
-                if (!done() && peek() == '*') { advance(); return new Token(TokenType.POWER,       "**", tokenLine, tokenCol); }
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.MULT_ASSIGN, "*=", tokenLine, tokenCol); }
-                return new Token(TokenType.MULTIPLY, "*", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '*') { consume(); return TokenType.POWER;       }
+                if (!done() && peek() == '=') { consume(); return TokenType.MULT_ASSIGN; }
+                return TokenType.MULTIPLY;
 
             case '/':
-                advance();
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.DIV_ASSIGN, "/=", tokenLine, tokenCol); }
-                return new Token(TokenType.DIVIDE, "/", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '=') { consume(); return TokenType.DIV_ASSIGN; }
+                return TokenType.DIVIDE;
 
             case '%':
-                advance();
-                return new Token(TokenType.MODULO, "%", tokenLine, tokenCol);
+                consume();
+                return TokenType.MODULO;
 
             case '=':
-                advance();
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.EQUAL,  "==", tokenLine, tokenCol); }
-                return new Token(TokenType.ASSIGN, "=", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '=') { consume(); return TokenType.EQUAL; }
+                return TokenType.ASSIGN;
 
             case '!':
-                advance();
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.NOT_EQUAL,   "!=", tokenLine, tokenCol); }
-                return new Token(TokenType.LOGICAL_NOT, "!", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '=') { consume(); return TokenType.NOT_EQUAL; }
+                return TokenType.LOGICAL_NOT;
 
             case '<':
-                advance();
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.LESS_EQUAL,    "<=", tokenLine, tokenCol); }
-                return new Token(TokenType.LESS_THAN, "<", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '=') { consume(); return TokenType.LESS_EQUAL; }
+                return TokenType.LESS_THAN;
 
             case '>':
-                advance();
-                if (!done() && peek() == '=') { advance(); return new Token(TokenType.GREATER_EQUAL, ">=", tokenLine, tokenCol); }
-                return new Token(TokenType.GREATER_THAN, ">", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '=') { consume(); return TokenType.GREATER_EQUAL; }
+                return TokenType.GREATER_THAN;
 
             case '&':
-                advance();
-                if (!done() && peek() == '&') { advance(); return new Token(TokenType.LOGICAL_AND, "&&", tokenLine, tokenCol); }
+                consume();
+                if (!done() && peek() == '&') { consume(); return TokenType.LOGICAL_AND; }
                 // invalid alone
-                errors.badChar(tokenLine, tokenCol, "&");
-                return new Token(TokenType.ERROR, "&", tokenLine, tokenCol);
+                error(ErrorHandler.Code.BAD_CHAR, tokStart, 1, tokenLine, tokenCol);
+                return TokenType.ERROR;
 
             case '|':
-                advance();
-                if (!done() && peek() == '|') { advance(); return new Token(TokenType.LOGICAL_OR, "||", tokenLine, tokenCol); }
-                errors.badChar(tokenLine, tokenCol, "|");
-                return new Token(TokenType.ERROR, "|", tokenLine, tokenCol);
-
-            case '(': advance(); return new Token(TokenType.LPAREN,    "(", tokenLine, tokenCol);
-            case ')': advance(); return new Token(TokenType.RPAREN,    ")", tokenLine, tokenCol);
-            case '{': advance(); return new Token(TokenType.LBRACE,    "{", tokenLine, tokenCol);
-            case '}': advance(); return new Token(TokenType.RBRACE,    "}", tokenLine, tokenCol);
-            case '[': advance(); return new Token(TokenType.LBRACKET,  "[", tokenLine, tokenCol);
-            case ']': advance(); return new Token(TokenType.RBRACKET,  "]", tokenLine, tokenCol);
-            case ',': advance(); return new Token(TokenType.COMMA,     ",", tokenLine, tokenCol);
-            case ';': advance(); return new Token(TokenType.SEMICOLON, ";", tokenLine, tokenCol);
-            case ':': advance(); return new Token(TokenType.COLON,     ":", tokenLine, tokenCol);
+                consume();
+                if (!done() && peek() == '|') { consume(); return TokenType.LOGICAL_OR; }
+                error(ErrorHandler.Code.BAD_CHAR, tokStart, 1, tokenLine, tokenCol);
+                return TokenType.ERROR;
+
+            case '(': consume(); return TokenType.LPAREN;
+            case ')': consume(); return TokenType.RPAREN;
+            case '{': consume(); return TokenType.LBRACE;
+            case '}': consume(); return TokenType.RBRACE;
+            case '[': consume(); return TokenType.LBRACKET;
+            case ']': consume(); return TokenType.RBRACKET;
+            case ',': consume(); return TokenType.COMMA;
+            case ';': consume(); return TokenType.SEMICOLON;
+            case ':': consume(); return TokenType.COLON;
         }
 
-        if (Character.isDigit(c)) 
+        if (CharClass.isDigit(c)) 
         {
-            return num(tokenLine, tokenCol, "");
+            return num(tokenLine, tokenCol);
         }
 
-        if ((Character.isLetter(c)) || c == '_') 
+        if ((CharClass.isLetter(c)) || c == '_') 
         {
             return word(tokenLine, tokenCol);
         }
 
-        advance();
-        errors.badChar(tokenLine, tokenCol, String.valueOf(c));
-        return new Token(TokenType.ERROR, String.valueOf(c), tokenLine, tokenCol);
+        consume();
+        if (errors.coalesces())
+        {
+            // one token and one error for the whole run of bad chars
+            while (!done() && invalid(peek(), peek2())) consume();
+            if (pos - tokStart > 1)
+            {
+                error(ErrorHandler.Code.BAD_CHARS, tokStart, pos - tokStart, tokenLine, tokenCol);
+                return TokenType.ERROR;
+            }
+        }
+        error(ErrorHandler.Code.BAD_CHAR, tokStart, 1, tokenLine, tokenCol);
+        return TokenType.ERROR;
     }
 
-    // scans keyword/bool/identifier
-    private Token word(int tokenLine, int tokenCol) 
+    // true if scan() rejects c on its own, next is the char after it
+    private static boolean invalid(char c, char next) 
     {
-        StringBuilder sb = new StringBuilder();
-
-        while (!done() && (Character.isLetterOrDigit(peek()) || peek() == '_')) 
-        {
-            sb.append(advance());
-        }
+        if (c == '#') return next != '#' && next != '|';
+        if (c == '\n' || CharClass.isSpace(c) || CharClass.isLetterOrDigit(c) || c == '_') return false;
+        return STARTS.indexOf(c) < 0;
+    }
 
-        String word = sb.toString();
+    // scans keyword/bool/identifier in one pass over the chars
+    private TokenType word(int tokenLine, int tokenCol) 
+    {
+        char    first = consume();
+        boolean lower = (CharClass.mask(first) & CharClass.LOWER) != 0;   // only [a-z] so far, may be a keyword
+        boolean tail  = true;                           // chars after the first fit [a-z0-9_]
 
-        if (KEYWORDS.containsKey(word)) 
+        while (!done()) 
         {
-            return new Token(KEYWORDS.get(word), word, tokenLine, tokenCol);
+            char ch = peek();
+            int  m  = CharClass.mask(ch);
+            if ((m & CharClass.LOWER) != 0) 
+            {
+                consume();
+                continue;
+            }
+            if ((m & CharClass.ID_TAIL) != 0) 
+            {
+                lower = false;
+                consume();
+                continue;
+            }
+            if (!CharClass.isLetterOrDigit(ch)) break;
+            lower = false;
+            tail  = false;
+            consume();
         }
 
-        if (word.equals("true") || word.equals("false")) 
+        int len = pos - tokStart;
+
+        if (lower) 
         {
-            return new Token(TokenType.BOOLEAN, word, tokenLine, tokenCol);
+            TokenType kw = Keywords.match(source(), tokStart, len);
+            if (kw != null) 
+            {
+                return kw;
+            }
         }
 
-        if (!Character.isUpperCase(word.charAt(0))) 
+        if (!CharClass.isUpperCase(first)) 
         {
-            errors.log("Invalid Identifier", tokenLine, tokenCol, word, "Identifiers must start with an uppercase letter [A-Z].");
-            return new Token(TokenType.ERROR, word, tokenLine, tokenCol);
+            error(ErrorHandler.Code.BAD_ID_START, tokStart, len, tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
 
-        for (int i = 1; i < word.length(); i++) 
+        if (!tail) 
         {
-            char ch = word.charAt(i);
-            if (!(ch >= 'a' && ch <= 'z') && !(ch >= '0' && ch <= '9') && ch != '_') 
-            {
-                errors.log("Invalid Identifier", tokenLine, tokenCol, word,
-                        "Identifiers may only contain lowercase letters, digits, and underscores after the first character.");
-                return new Token(TokenType.ERROR, word, tokenLine, tokenCol);
-            }
+            error(ErrorHandler.Code.BAD_ID_CHAR, tokStart, len, tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
 
-        if (word.length() > 31) 
+        if (len > 31) 
         {
-            errors.longId(tokenLine, tokenCol, word);
-            return new Token(TokenType.ERROR, word, tokenLine, tokenCol);
+            error(ErrorHandler.Code.LONG_ID, tokStart, len, tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
 
-        symbols.add(word, "unknown", "global", tokenLine);
+        if (symbols != null) symbols.ident(source(), tokStart, len, "unknown", tokenLine, tokenCol);
 
-        return new Token(TokenType.IDENTIFIER, word, tokenLine, tokenCol);
+        return TokenType.IDENTIFIER;
     }
 
-    // scans int, float
-    private Token num(int tokenLine, int tokenCol, String prefix)   
+    // scans int, float (a leading sign is already consumed)
+    private TokenType num(int tokenLine, int tokenCol)   
     {
-        StringBuilder sb = new StringBuilder(prefix);
-
         // whole number part
-        while (!done() && Character.isDigit(peek())) 
+        while (!done() && CharClass.isDigit(peek())) 
         {
-            {
-                sb.append(advance());
-            }
+            consume();
 
             // digit after .
-            if (!done() && peek() == '.' && peek2() != '\0' && Character.isDigit(peek2()))  
+            if (!done() && peek() == '.' && peek2() != '\0' && CharClass.isDigit(peek2()))  
             {
-                sb.append(advance()); //   '.'
+                consume(); //   '.'
                 int decimals = 0;
-                while (!done() && Character.isDigit(peek())) 
+                while (!done() && CharClass.isDigit(peek())) 
                 {
-                    sb.append(advance());
+                    consume();
                     decimals++;
                 }
                 if (decimals > 6)       
                 {
-                    errors.badLit(tokenLine, tokenCol, sb.toString(),
-                            "Float literal exceeds maximum of 6 decimal digits.");
-                    return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+                    error(ErrorHandler.Code.FLOAT_DIGITS, tokStart, pos - tokStart, tokenLine, tokenCol);
+                    return TokenType.ERROR;
                 }
 
                 // exp [eE][+-]?[0-9]+
                 if (!done() && (peek() == 'e' || peek() == 'E')) 
                 {
-                    sb.append(advance()); //   e/E
+                    consume(); //   e/E
                     if (!done() && (peek() == '+' || peek() == '-')) 
                     {
-                        sb.append(advance());
+                        consume();
                     }
-                    if (done() || !Character.isDigit(peek())) 
+                    if (done() || !CharClass.isDigit(peek())) 
                     {
-                        errors.badLit(tokenLine, tokenCol, sb.toString(),
-                                "Exponent part of float is incomplete.");
-                        return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+                        error(ErrorHandler.Code.FLOAT_EXPONENT, tokStart, pos - tokStart, tokenLine, tokenCol);
+                        return TokenType.ERROR;
                     }
-                    while (!done() && Character.isDigit(peek())) 
+                    while (!done() && CharClass.isDigit(peek())) 
                     {
-                        sb.append(advance());
+                        consume();
                     }
                 }
-                return new Token(TokenType.FLOAT, sb.toString(), tokenLine, tokenCol);
+                return TokenType.FLOAT;
             }
         }
-        return new Token(TokenType.INTEGER, sb.toString(), tokenLine, tokenCol);
+        return TokenType.INTEGER;
     }
 
     // scans string  " ... "
-    private Token str(int tokenLine, int tokenCol) 
+    private TokenType str(int tokenLine, int tokenCol) 
     {
-        StringBuilder sb = new StringBuilder();
         boolean hasError = false;
-        advance(); //   opening "
-        sb.append('"');
+        consume(); //   opening "
 
         while (!done() && peek() != '"') 
         {
             if (peek() == '\n') 
             {
                 // newline inside string = unclosed string
-                errors.noCloseStr(tokenLine, tokenCol, sb.toString());
-                return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+                error(ErrorHandler.Code.NO_CLOSE_STR, tokStart, pos - tokStart, tokenLine, tokenCol);
+                return TokenType.ERROR;
             }
             if (peek() == '\\') 
             {
-                sb.append(advance()); //  backslash
+                consume(); //  backslash
                 if (done()) break;
                 char esc = peek();
                 switch (esc) 
                 {
                     case '"': case '\\': case 'n': case 't': case 'r':
-                        sb.append(advance());
+                        consume();
                         break;
                     default:
-                        errors.badEsc(tokenLine, tokenCol, "\\" + esc);
-                        sb.append(advance());
+                        error(ErrorHandler.Code.BAD_ESCAPE, pos - 1, 2, tokenLine, tokenCol);
+                        consume();
                         hasError = true;
                         break;
                 }
                 continue;
             }
-            sb.append(advance());
+            consume();
         }
 
         if (done() || !done() && peek() != '"')
         {
-            errors.noCloseStr(tokenLine, tokenCol, sb.toString());
-            return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+            error(ErrorHandler.Code.NO_CLOSE_STR, tokStart, pos - tokStart, tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
 
-        sb.append(advance()); //   closing "
+        consume(); //   closing "
         if (hasError)
         {
-            return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
-        return new Token(TokenType.STRING, sb.toString(), tokenLine, tokenCol);
+        return TokenType.STRING;
     }
 
     // scans char 
-    private Token chr(int tokenLine, int tokenCol) 
+    private TokenType chr(int tokenLine, int tokenCol) 
     {
-        StringBuilder sb = new StringBuilder();
-        advance(); //   opening '
-        sb.append('\'');
+        consume(); //   opening '
 
         if (done() || peek() == '\n') 
         {
-            errors.noCloseChr(tokenLine, tokenCol, sb.toString());
-            return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+            error(ErrorHandler.Code.NO_CLOSE_CHR, tokStart, pos - tokStart, tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
 
         if (peek() == '\\') 
         {
-            sb.append(advance()); //   backslash
+            consume(); //   backslash
             if (done() || peek() == '\n') 
             {
-                errors.noCloseChr(tokenLine, tokenCol, sb.toString());
-                return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+                error(ErrorHandler.Code.NO_CLOSE_CHR, tokStart, pos - tokStart, tokenLine, tokenCol);
+                return TokenType.ERROR;
             }
             char esc = peek();
             switch (esc)    
             {
                 case '\'': case '\\': case 'n': case 't': case 'r':
-                    sb.append(advance());
+                    consume();
                     break;
                 default:
-                    errors.badEsc(tokenLine, tokenCol, "\\" + esc);
-                    sb.append(advance());
+                    error(ErrorHandler.Code.BAD_ESCAPE, pos - 1, 2, tokenLine, tokenCol);
+                    consume();
                     break;
             }
         } 
         else if (peek() == '\'') 
         {
             // empty char literal ''
-            errors.badLit(tokenLine, tokenCol, "''",
-                    "Empty character literal.");
-            advance(); //   closing '
-            return new Token(TokenType.ERROR, "''", tokenLine, tokenCol);
+            error(ErrorHandler.Code.EMPTY_CHAR, tokStart, 2, tokenLine, tokenCol);
+            consume(); //   closing '
+            return TokenType.ERROR;
         } 
         else 
         {
-            sb.append(advance()); // the single character
+            consume(); // the single character
         }
 
         // expect closing quote
@@ -511,58 +701,86 @@ public class ManualScanner
             // error recovery:   until ' or EOL
             while (!done() && peek() != '\'' && peek() != '\n') 
             {
-                sb.append(advance());
+                consume();
             }
             if (!done() && peek() == '\'') 
             {
-                sb.append(advance());
-                errors.badLit(tokenLine, tokenCol, sb.toString(),
-                        "Character literal contains more than one character.");
-                return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+                consume();
+                error(ErrorHandler.Code.LONG_CHAR, tokStart, pos - tokStart, tokenLine, tokenCol);
+                return TokenType.ERROR;
             }
-            errors.noCloseChr(tokenLine, tokenCol, sb.toString());
-            return new Token(TokenType.ERROR, sb.toString(), tokenLine, tokenCol);
+            error(ErrorHandler.Code.NO_CLOSE_CHR, tokStart, pos - tokStart, tokenLine, tokenCol);
+            return TokenType.ERROR;
         }
 
-        sb.append(advance()); //   closing '
-        return new Token(TokenType.CHAR, sb.toString(), tokenLine, tokenCol);
+        consume(); //   closing '
+        return TokenType.CHAR;
     }
 
 
 
+    // region mode: where the #| comment still open at the end started, 0 if none
+    public int openLine() { return openLine; }
+    public int openCol()  { return openCol;  }
+    public int openAt()   { return openAt;   }
+
     // rets error handler
     public ErrorHandler errs() { return errors; }
-    // rets symbol table
+    // rets symbol table, null after track(false)
     public SymbolTable  syms()  { return symbols;  }
 
+    // false leaves out the symbol table, for callers that only want tokens;
+    // call before the first advance()
+    public ManualScanner track(boolean on) 
+    {
+        symbols = on ? new SymbolTable() : null;
+        return this;
+    }
+
+    // the table a scan of src builds, replayed from its tokens
+    public static SymbolTable symbols(CharSequence src, TokenBuffer b) 
+    {
+        SymbolTable t = new SymbolTable();
+        for (int i = 0; i < b.size(); i++)
+        {
+            TokenType type = b.type(i);
+            int       ln   = b.line(i);
+            if (type == TokenType.IDENTIFIER) t.ident(src, b.start(i), b.length(i), "unknown", ln, b.column(i));
+            t.follow(type, ln);
+        }
+        return t;
+    }
+
+    // scans all tokens into a packed buffer
+    public TokenBuffer buffer() 
+    {
+        TokenBuffer buf = (stream == null) ? new TokenBuffer(file_name) : new TokenBuffer(stream, true);
+        return buf.scan(this);
+    }
+
     // scans all tokens
     public List<Token> all() 
     {
-        List<Token> tokens = new ArrayList<>();
-        Token t;
-        do 
-        {
-            t = next();
-            tokens.add(t);
-        } while (t.type() != TokenType.EOF);
-        return tokens;
+        return buffer().asList();
     }
 
-    // entry point: java ManualScanner <file-path>
+    // entry point: java ManualScanner <file-path>   ("-" reads stdin)
     public static void main(String[] args) 
     {
 
         if (args.length < 1) 
         {
-            System.err.println("Usage: java ManualScanner <file_name-file>");
+            System.err.println("Usage: java ManualScanner <file_name-file | ->");
             System.exit(1);
         }
 
         String filePath = args[0];
-        String file_name;
+        Reader in;
         try 
         {
-            file_name = new String(Files.readAllBytes(Paths.get(filePath)));
+            in = filePath.equals("-")
+                    ? new InputStreamReader(System.in)
+                    : new InputStreamReader(Files.newInputStream(Paths.get(filePath)));
         } 
         catch (IOException e) 
         {
@@ -572,20 +790,24 @@ public class ManualScanner
             return;
         }
 
-        ManualScanner scanner = new ManualScanner(file_name);
-        List<Token> tokens = scanner.all();
+        // tokens are printed as they are scanned, input is never held whole
+        ManualScanner scanner = new ManualScanner(in);
 
-            
         System.out.println("||============================================================|| ");
         System.out.println("||                        TOKEN STREAM                        || ");
         System.out.println("||============================================================|| ");
 
-        for (Token tok : tokens) 
+        int count = 0;
+        Token tok;
+        do 
         {
+            tok = scanner.next();
             System.out.println("  " + tok);
-        }
+            count++;
+        } while (tok.type() != TokenType.EOF);
+
         System.out.println("||============================================================|| ");
-        System.out.printf("||  Total tokens: %-45d ║%n", tokens.size());
+        System.out.printf("||  Total tokens: %-45d ║%n", count);
         System.out.println("||============================================================|| ");
 
         scanner.syms().show();
@@ -1,35 +1,22 @@
-import java.util.ArrayList;
+import java.io.Reader;
 import java.util.List;
-import java.util.HashMap;
-import java.util.Map;
 
-public class ManualScanner1 
+public class ManualScanner1 implements TokenCursor
 {
     private String input;
+    private CharStream stream;    // streaming mode, null when scanning a String
     private int    pos;
     private int    line;
     private int    column;
+    private int    startPos;
     private int    startLine;
     private int    startCol;
     private boolean stringHasError;
-    
-    private static final Map<String, TokenType> KEYWORDS = new HashMap<>();
-    
-    static 
-    {
-        KEYWORDS.put("start",    TokenType.START);
-        KEYWORDS.put("finish",   TokenType.FINISH);
-        KEYWORDS.put("loop",     TokenType.LOOP);
-        KEYWORDS.put("condition",TokenType.CONDITION);
-        KEYWORDS.put("declare",  TokenType.DECLARE);
-        KEYWORDS.put("output",   TokenType.OUTPUT);
-        KEYWORDS.put("input",    TokenType.INPUT);
-        KEYWORDS.put("function", TokenType.FUNCTION);
-        KEYWORDS.put("return",   TokenType.RETURN);
-        KEYWORDS.put("break",    TokenType.BREAK);
-        KEYWORDS.put("continue", TokenType.CONTINUE);
-        KEYWORDS.put("else",     TokenType.ELSE);
-    }
+
+    // current token for the cursor API
+    private TokenType     tokType;
+    private String        errText;    // lexeme that is not a plain source slice
+    private StringBuilder cmtBuf = new StringBuilder();
 
     public ManualScanner1(String input) 
     {
@@ -39,43 +26,114 @@ public class ManualScanner1
         this.column = 1;
     }
 
+    // streaming mode over a reader
+    public ManualScanner1(Reader in) 
+    {
+        this(new CharStream(in));
+    }
+
+    public ManualScanner1(CharStream in) 
+    {
+        this((String) null);
+        this.stream = in;
+    }
+
+    // true if idx is inside the input
+    private boolean avail(int idx) 
+    {
+        if (stream == null) return idx < input.length();
+        return stream.has(idx);
+    }
+
+    private char at(int idx) 
+    {
+        if (stream == null) return input.charAt(idx);
+        return stream.charAt(idx);
+    }
+
+    // lets the stream drop everything before pos
+    private void release() 
+    {
+        if (stream != null) stream.mark(pos);
+    }
+
+    // scans all tokens into a packed buffer
+    public TokenBuffer buffer() 
+    {
+        TokenBuffer buf = (stream == null) ? new TokenBuffer(input) : new TokenBuffer(stream, true);
+        return buf.scan(this);
+    }
+
     public List<Token> all() 
     {
-        List<Token> tokens = new ArrayList<>();
-        Token t;
+        return buffer().asList();
+    }
+
+    // cursor: moves to the next token, skipped whitespace/comments are looped over
+    public TokenType advance() 
+    {
+        TokenType t;
         do 
         {
-            t = next();
-            if (t != null) 
-            { 
-                tokens.add(t);
-            }
-        } while (t == null || t.type() != TokenType.EOF);
-        return tokens;
+            t = step();
+        } while (t == null);
+        tokType = t;
+        return t;
+    }
+
+    public TokenType type()   { return tokType; }
+    public int       start()  { return startPos; }
+    public int       length() { return tokType == TokenType.EOF ? 0 : pos - startPos; }
+    public int       line()   { return startLine; }
+    public int       column() { return startCol; }
+
+    public boolean sliced() 
+    {
+        return tokType != TokenType.EOF && errText == null;
+    }
+
+    public String text() 
+    {
+        if (errText != null) return errText;
+        if (tokType.text() != null) return tokType.text();
+        if (stream == null) return input.substring(startPos, pos);
+        return stream.slice(startPos, pos);
     }
 
     public Token next() 
     {
-        if (pos >= input.length()) 
+        TokenType t = advance();
+        if (stream != null || errText != null) return new Token(t, text(), startLine, startCol);
+        return new Token(t, input, startPos, length(), startLine, startCol);
+    }
+
+    // runs the DFA from the current position, null when only trivia was consumed
+    private TokenType step() 
+    {
+        if (stream != null) pos -= stream.rebase(pos);
+        startPos  = pos;
+        startLine = line;
+        startCol  = column;
+        errText   = null;
+
+        if (!avail(pos)) 
         {
-            return new Token(TokenType.EOF, "EOF", line, column);
+            return TokenType.EOF;
         }
 
         int state = 0;
-        StringBuilder lexeme = new StringBuilder();
-        startLine = line;
-        startCol  = column;
+        release();
         
         while (true) 
         {
-            char c = (pos < input.length()) ? input.charAt(pos) : '\0';
+            char c = avail(pos) ? at(pos) : '\0';
 
             switch (state) 
             {
                 case 0:
-                    if (pos >= input.length()) 
+                    if (!avail(pos)) 
                     {
-                        return new Token(TokenType.EOF, "EOF", line, column);
+                        return TokenType.EOF;
                     }
 
                     if (c == ' ' || c == '\t' || c == '\r' || c == '\n') 
@@ -90,15 +148,13 @@ public class ManualScanner1
                         c == '[' || c == ']' || 
                         c == '{' || c == '}') 
                     {
-                        lexeme.append(c);
                         consume();
-                        return createToken(lexeme.toString());
+                        return createToken(c);
                     }
 
-                    if (Character.isLetter(c)) 
+                    if (CharClass.isLetter(c)) 
                     {
                         state = 5;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
@@ -107,7 +163,6 @@ public class ManualScanner1
                     {
                         state = 30; 
                         consume(); 
-                        lexeme.append('"');
                         stringHasError = false;
                         break;
                     }
@@ -116,22 +171,19 @@ public class ManualScanner1
                      {
                         state = 60; 
                         consume(); 
-                        lexeme.append('\'');
                         break;
                     }
 
                     if (c == '+' || c == '-') 
                     {
                         state = 7;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
                     
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 8;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
@@ -139,7 +191,6 @@ public class ManualScanner1
                     if (c == '*' || c == '/' || c == '%' || c == '=' || c == '!' || c == '<' || c == '>' || c == '&' || c == '|') 
                     {
                          state = 40; 
-                         lexeme.append(c);
                          consume();
                          break;
                     }
@@ -147,186 +198,171 @@ public class ManualScanner1
                     if (c == '#') 
                     {
                         state = 12;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
 
                     consume(); 
-                    return new Token(TokenType.ERROR, String.valueOf(c), startLine, startCol);
+                    return TokenType.ERROR;
 
                 case 5: 
-                if (Character.isLetterOrDigit(c) || c == '_') 
+                if (CharClass.isLetterOrDigit(c) || c == '_') 
                     {
                         state = 5;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    return checkKeywordOrId(lexeme.toString());
+                    return checkKeywordOrId();
 
                 case 6: 
                     state = 5;
                     break;
 
                 case 7: 
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 8;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    if (lexeme.toString().equals("+") && c == '+') 
+                    if (at(startPos) == '+' && c == '+') 
                     { 
-                        lexeme.append(c); consume(); return new Token(TokenType.INCREMENT, "++", startLine, startCol);
+                        consume(); return TokenType.INCREMENT;
                     }
-                     if (lexeme.toString().equals("+") && c == '=') 
+                     if (at(startPos) == '+' && c == '=') 
                      { 
-                        lexeme.append(c); consume(); return new Token(TokenType.PLUS_ASSIGN, "+=", startLine, startCol);
+                        consume(); return TokenType.PLUS_ASSIGN;
                     }
-                    if (lexeme.toString().equals("-") && c == '-') 
+                    if (at(startPos) == '-' && c == '-') 
                     { 
-                        lexeme.append(c); consume(); return new Token(TokenType.DECREMENT, "--", startLine, startCol);
+                        consume(); return TokenType.DECREMENT;
                     }
-                     if (lexeme.toString().equals("-") && c == '=') 
+                     if (at(startPos) == '-' && c == '=') 
                      { 
-                        lexeme.append(c); consume(); return new Token(TokenType.MINUS_ASSIGN, "-=", startLine, startCol);
+                        consume(); return TokenType.MINUS_ASSIGN;
                     }
-                    return createOperatorToken(lexeme.toString());
+                    return createOperatorToken(at(startPos));
 
                 case 8:
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 8; 
-                        lexeme.append(c);
                         consume();
                         break;
                     }
                     if (c == '.') 
                     {
-                        if (pos + 1 < input.length() && Character.isDigit(input.charAt(pos + 1))) 
+                        if (avail(pos + 1) && CharClass.isDigit(at(pos + 1))) 
                         {
                             state = 91; 
-                            lexeme.append(c);
                             consume(); 
                             break;
                         }
-                        return new Token(TokenType.INTEGER, lexeme.toString(), startLine, startCol);
+                        return TokenType.INTEGER;
                     }
-                    return new Token(TokenType.INTEGER, lexeme.toString(), startLine, startCol);
+                    return TokenType.INTEGER;
 
                 case 91: 
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 9;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                     return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                     return TokenType.ERROR;
 
                 case 9: 
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 9; 
-                        lexeme.append(c);
                         consume();
                         break;
                     }
                     if (c == 'e' || c == 'E') 
                     {
                         state = 10;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    return checkFloat(lexeme.toString());
+                    return checkFloat();
 
                 case 10: 
                     if (c == '+' || c == '-') 
                     {
                         state = 11;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 120; 
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                    return TokenType.ERROR;
 
                 case 11: 
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     {
                         state = 120; 
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                    return TokenType.ERROR;
 
                 case 120: 
-                    if (Character.isDigit(c)) 
+                    if (CharClass.isDigit(c)) 
                     { 
                         state = 120;
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    return checkFloat(lexeme.toString());
+                    return checkFloat();
 
                 case 12: 
-                    if (c == '|' && lexeme.length() == 1) 
+                    if (c == '|' && pos - startPos == 1) 
                     { 
                          state = 150; 
-                         lexeme.append(c);
                          consume();
+                         cmtBuf.setLength(0);
+                         cmtBuf.append("#|");
                          break;
                     }
-                    if (c == '#' && lexeme.length() == 1) 
+                    if (c == '#' && pos - startPos == 1) 
                     { 
                         state = 13; 
-                        lexeme.append(c);
                         consume();
                         break;
                     }
-                    return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                    return TokenType.ERROR;
 
                 case 13:
-                    if (c == '\n' || pos >= input.length()) 
+                    if (c == '\n' || !avail(pos)) 
                     { 
                         state = 0;
-                        lexeme.setLength(0);
                         if (c == '\n') consume(); 
                         return null; 
                     }
+                    release();
                     consume();
                     break;
 
                 case 150: 
-                    if (pos >= input.length()) 
+                    if (!avail(pos)) 
                     {
-                        return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                        // unclosed comment keeps the text it collected
+                        errText = cmtBuf.toString();
+                        return TokenType.ERROR;
                     }
+                    release();
                     if (c == '|') 
                     {
                          state = 151; 
-                         lexeme.append(c);
+                         cmtBuf.append(c);
                          consume();
                          break;
                     }
-                    if (c == '\n') 
-                    {
-                        lexeme.append(c);
-                        consume();
-                        break;
-                    }
-                    lexeme.append(c); 
+                    cmtBuf.append(c); 
                     consume();
                     break;
                 
@@ -335,7 +371,6 @@ public class ManualScanner1
                     { 
                         consume();
                         state = 0;
-                        lexeme.setLength(0);
                         return null;
                     }
                     if (c == '|') 
@@ -350,6 +385,7 @@ public class ManualScanner1
                 case 14: 
                     if (c == ' ' || c == '\t' || c == '\r' || c == '\n') 
                     {
+                        release();
                         state = 14;
                         consume();
                         break;
@@ -357,149 +393,144 @@ public class ManualScanner1
                     return null; 
                     
                 case 30: 
-                    if (pos >= input.length()) 
+                    if (!avail(pos)) 
                     {
-                         return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                         return TokenType.ERROR;
                     }
                     if (c == '\n') 
                     {
-                        return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                        return TokenType.ERROR;
                     }
                     if (c == '\\') 
                     {
                         state = 31; 
-                        lexeme.append(c);
                         consume();
                         break;
                     }
                     if (c == '"') 
                     {
-                        lexeme.append('"');
                         consume();
                         if (stringHasError) 
                         {
-                            return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                            return TokenType.ERROR;
                         }
-                        return new Token(TokenType.STRING, lexeme.toString(), startLine, startCol);
+                        return TokenType.STRING;
                     }
-                    lexeme.append(c);
                     consume();
                     break;
                 
                 case 31: 
-                    if (pos >= input.length()) return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                    if (!avail(pos)) return TokenType.ERROR;
                     if (c != '"' && c != '\\' && c != 'n' && c != 't' && c != 'r') 
                     {
                         stringHasError = true;
                     }
-                    lexeme.append(c);
                     consume();
                     state = 30; 
                     break;
 
                 case 60:
-                     if (pos >= input.length()) return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                     if (!avail(pos)) return TokenType.ERROR;
                      if (c == '\'') 
                      { 
-                         if (lexeme.length() == 1)
+                         if (pos - startPos == 1)
                          { 
-                             lexeme.append(c); consume();
-                             return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                             consume();
+                             return TokenType.ERROR;
                          } 
-                         lexeme.append(c); consume();
-                         return new Token(TokenType.CHAR, lexeme.toString(), startLine, startCol);
+                         consume();
+                         return TokenType.CHAR;
                      }
                      if (c == '\\') 
                      {
                          state = 61;
-                         lexeme.append(c); consume();
+                         consume();
                          break;
                      }
                      if (c == '\n')
                      {
-                         return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                         return TokenType.ERROR;
                      }
-                     lexeme.append(c); consume();
+                     consume();
                      state = 62;
                      break;
 
                  case 61:
-                     if (pos >= input.length()) return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
-                     lexeme.append(c); consume();
+                     if (!avail(pos)) return TokenType.ERROR;
+                     consume();
                      state = 62; 
                      break;
 
                  case 62: // expect closing '
                      if (c == '\'') 
                      {
-                         lexeme.append(c); consume();
-                         return new Token(TokenType.CHAR, lexeme.toString(), startLine, startCol);
+                         consume();
+                         return TokenType.CHAR;
                      }
                      // multi-char or unclosed char literal
-                     while (pos < input.length()) 
+                     while (avail(pos)) 
                      {
-                         char ch = input.charAt(pos);
+                         char ch = at(pos);
                          if (ch == '\'' || ch == '\n') break;
-                         lexeme.append(ch);
                          consume();
                      }
-                     if (pos < input.length() && input.charAt(pos) == '\'') 
+                     if (avail(pos) && at(pos) == '\'') 
                      {
-                         lexeme.append('\'');
                          consume();
                      }
-                     return new Token(TokenType.ERROR, lexeme.toString(), startLine, startCol);
+                     return TokenType.ERROR;
 
                  case 40:
-                    String current = lexeme.toString();
+                    char current = at(startPos);
                     
-                    if (current.equals("*")) 
+                    if (current == '*') 
                     {
-                         if (c == '*') { lexeme.append(c); consume(); return new Token(TokenType.POWER, "**", startLine, startCol); }
-                         if (c == '=') { lexeme.append(c); consume(); return new Token(TokenType.MULT_ASSIGN, "*=", startLine, startCol); }
+                         if (c == '*') { consume(); return TokenType.POWER; }
+                         if (c == '=') { consume(); return TokenType.MULT_ASSIGN; }
                     }
-                    if (current.equals("/")) 
+                    if (current == '/') 
                     {
-                         if (c == '=') { lexeme.append(c); consume(); return new Token(TokenType.DIV_ASSIGN, "/=", startLine, startCol); }
+                         if (c == '=') { consume(); return TokenType.DIV_ASSIGN; }
                     }
-                    if (current.equals("=")) 
+                    if (current == '=') 
                     {
-                         if (c == '=') { lexeme.append(c); consume(); return new Token(TokenType.EQUAL, "==", startLine, startCol); }
+                         if (c == '=') { consume(); return TokenType.EQUAL; }
                     }
-                    if (current.equals("!")) 
+                    if (current == '!') 
                     {
-                         if (c == '=') { lexeme.append(c); consume(); return new Token(TokenType.NOT_EQUAL, "!=", startLine, startCol); }
+                         if (c == '=') { consume(); return TokenType.NOT_EQUAL; }
                     }
-                    if (current.equals("<")) 
+                    if (current == '<') 
                     {
-                         if (c == '=') { lexeme.append(c); consume(); return new Token(TokenType.LESS_EQUAL, "<=", startLine, startCol); }
+                         if (c == '=') { consume(); return TokenType.LESS_EQUAL; }
                     }
-                    if (current.equals(">")) 
+                    if (current == '>') 
                     {
-                         if (c == '=') { lexeme.append(c); consume(); return new Token(TokenType.GREATER_EQUAL, ">=", startLine, startCol); }
+                         if (c == '=') { consume(); return TokenType.GREATER_EQUAL; }
                     }
-                    if (current.equals("&")) 
+                    if (current == '&') 
                     {
-                        if (c == '&') { lexeme.append(c); consume(); return new Token(TokenType.LOGICAL_AND, "&&", startLine, startCol); }
-                        return new Token(TokenType.ERROR, "&", startLine, startCol);
+                        if (c == '&') { consume(); return TokenType.LOGICAL_AND; }
+                        return TokenType.ERROR;
                     }
-                    if (current.equals("|")) 
+                    if (current == '|') 
                     {
-                        if (c == '|') { lexeme.append(c); consume(); return new Token(TokenType.LOGICAL_OR, "||", startLine, startCol); }
-                        return new Token(TokenType.ERROR, "|", startLine, startCol);
+                        if (c == '|') { consume(); return TokenType.LOGICAL_OR; }
+                        return TokenType.ERROR;
                     }
                     
                     return createOperatorToken(current);
 
                 default:
-                    return new Token(TokenType.ERROR, "Unknown State: " + state, startLine, startCol);
+                    errText = "Unknown State: " + state;
+                    return TokenType.ERROR;
             }
         }
     }
 
     private void consume() 
     {
-        char c = (pos < input.length()) ? input.charAt(pos) : '\0';
+        char c = avail(pos) ? at(pos) : '\0';
         pos++;
         column++;
         if (c == '\n') 
@@ -509,105 +540,96 @@ public class ManualScanner1
         }
     }
     
-    private Token checkKeywordOrId(String word) 
+    private TokenType checkKeywordOrId() 
     {
-        if (KEYWORDS.containsKey(word)) 
-        {
-            return new Token(KEYWORDS.get(word), word, startLine, startCol);
-        }
-        
-        if (word.equals("true") || word.equals("false")) 
+        int len = pos - startPos;
+        CharSequence src = (stream == null) ? input : stream;
+
+        TokenType kw = Keywords.match(src, startPos, len);
+        if (kw != null) 
         {
-            return new Token(TokenType.BOOLEAN, word, startLine, startCol);
+            return kw;
         }
         
-        if (!Character.isUpperCase(word.charAt(0))) 
+        if (!CharClass.isUpperCase(at(startPos))) 
         {
-             return new Token(TokenType.ERROR, word, startLine, startCol);
+             return TokenType.ERROR;
         }
 
-        for (int i = 1; i < word.length(); i++) 
+        for (int i = 1; i < len; i++) 
         {
-            char ch = word.charAt(i);
-            if (!(ch >= 'a' && ch <= 'z') && !(ch >= '0' && ch <= '9') && ch != '_') 
+            char ch = at(startPos + i);
+            if (!CharClass.isIdTail(ch)) 
             {
-                 return new Token(TokenType.ERROR, word, startLine, startCol);
+                 return TokenType.ERROR;
             }
         }
 
-        if (word.length() > 31) 
+        if (len > 31) 
         {
-             return new Token(TokenType.ERROR, word, startLine, startCol);
+             return TokenType.ERROR;
         }
 
-        return new Token(TokenType.IDENTIFIER, word, startLine, startCol);
+        return TokenType.IDENTIFIER;
     }
     
-    private Token checkFloat(String lex) 
+    private TokenType checkFloat() 
     {
-        int pointIndex = lex.indexOf('.');
-        int expIndexLower = lex.indexOf('e');
-        int expIndexUpper = lex.indexOf('E');
-        int expIndex = (expIndexLower != -1) ? expIndexLower : expIndexUpper;
+        int pointIndex = -1;
+        int expIndex   = -1;
+        for (int i = startPos; i < pos; i++) 
+        {
+            char ch = at(i);
+            if (ch == '.' && pointIndex == -1) pointIndex = i;
+            if ((ch == 'e' || ch == 'E') && expIndex == -1) expIndex = i;
+        }
         
         if (pointIndex != -1) 
         {
-            int end = (expIndex != -1) ? expIndex : lex.length();
+            int end = (expIndex != -1) ? expIndex : pos;
             int decimals = end - pointIndex - 1;
             if (decimals > 6) 
             {
-                return new Token(TokenType.ERROR, lex, startLine, startCol);
+                return TokenType.ERROR;
             }
         }
-        return new Token(TokenType.FLOAT, lex, startLine, startCol);
+        return TokenType.FLOAT;
     }
 
-    private Token createToken(String lex) 
+    private TokenType createToken(char c) 
     {
          TokenType type = TokenType.ERROR;
-         switch(lex) 
+         switch(c) 
          {
-             case ",": type = TokenType.COMMA; break;
-             case ";": type = TokenType.SEMICOLON; break;
-             case ":": type = TokenType.COLON; break;
-             case "(": type = TokenType.LPAREN; break;
-             case ")": type = TokenType.RPAREN; break;
-             case "[": type = TokenType.LBRACKET; break;
-             case "]": type = TokenType.RBRACKET; break;
-             case "{": type = TokenType.LBRACE; break;
-             case "}": type = TokenType.RBRACE; break;
+             case ',': type = TokenType.COMMA; break;
+             case ';': type = TokenType.SEMICOLON; break;
+             case ':': type = TokenType.COLON; break;
+             case '(': type = TokenType.LPAREN; break;
+             case ')': type = TokenType.RPAREN; break;
+             case '[': type = TokenType.LBRACKET; break;
+             case ']': type = TokenType.RBRACKET; break;
+             case '{': type = TokenType.LBRACE; break;
+             case '}': type = TokenType.RBRACE; break;
          }
-         return new Token(type, lex, startLine, startCol);
+         return type;
     }
 
-    private Token createOperatorToken(String lex) 
+    // single-char operator, two-char ones are resolved in the DFA
+    private TokenType createOperatorToken(char c) 
     {
         TokenType type = TokenType.ERROR;
-        switch(lex) 
+        switch(c) 
         {
-            case "+": type = TokenType.PLUS; break;
-            case "-": type = TokenType.MINUS; break;
-            case "*": type = TokenType.MULTIPLY; break;
-            case "/": type = TokenType.DIVIDE; break;
-            case "%": type = TokenType.MODULO; break;
-            case "=": type = TokenType.ASSIGN; break;
-            case "==": type = TokenType.EQUAL; break;
-            case "!=": type = TokenType.NOT_EQUAL; break;
-            case "<": type = TokenType.LESS_THAN; break;
-            case ">": type = TokenType.GREATER_THAN; break;
-            case "<=": type = TokenType.LESS_EQUAL; break;
-            case ">=": type = TokenType.GREATER_EQUAL; break;
-            case "!": type = TokenType.LOGICAL_NOT; break;
-            case "&&": type = TokenType.LOGICAL_AND; break;
-            case "||": type = TokenType.LOGICAL_OR; break;
-            case "**": type = TokenType.POWER; break;
-            case "+=": type = TokenType.PLUS_ASSIGN; break;
-            case "-=": type = TokenType.MINUS_ASSIGN; break;
-            case "*=": type = TokenType.MULT_ASSIGN; break;
-            case "/=": type = TokenType.DIV_ASSIGN; break;
-            case "++": type = TokenType.INCREMENT; break;
-            case "--": type = TokenType.DECREMENT; break;
+            case '+': type = TokenType.PLUS; break;
+            case '-': type = TokenType.MINUS; break;
+            case '*': type = TokenType.MULTIPLY; break;
+            case '/': type = TokenType.DIVIDE; break;
+            case '%': type = TokenType.MODULO; break;
+            case '=': type = TokenType.ASSIGN; break;
+            case '<': type = TokenType.LESS_THAN; break;
+            case '>': type = TokenType.GREATER_THAN; break;
+            case '!': type = TokenType.LOGICAL_NOT; break;
         }
-        return new Token(type, lex, startLine, startCol);
+        return type;
     }
 }
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/*
+ * Scans one big String on several cores with ManualScanner in region mode.
+ *
+ * The input is cut into chunks that each end right after a '\n' that does
+ * not follow a backslash. Char literals and ## comments stop at the end
+ * of a line, and a string only goes on past one when a backslash escapes
+ * the newline (a bad escape the scanner does not count as a line), so the
+ * only state that crosses a cut is being inside a #| ... |# comment.
+ *
+ *   1. every chunk counts its newlines, a prefix sum gives its first line
+ *   2. every chunk is scanned as if it started outside a comment
+ *   3. front to back, each chunk's real start state is known from the one
+ *      before it; a chunk that really starts inside a comment is scanned
+ *      again from just after the first |# (or not at all if it has none),
+ *      and its real first line is the line the chunk before ended on
+ *   4. chunks whose newline count in step 1 was off, because an escaped
+ *      newline before them was not a line, are scanned again in parallel
+ *
+ * Step 3 runs on the calling thread but only rescans chunks a comment
+ * runs into. Tokens and errors are appended chunk by chunk, so the result
+ * equals ManualScanner.all() and errs() on the whole input. Scopes cross
+ * chunks, so the symbol table is replayed from the merged tokens afterwards.
+ */
+public class ParallelScanner
+{
+    public static final int MIN_CHUNK = 1 << 16;
+
+    private final String       src;
+    private final ForkJoinPool pool;
+    private final int          chunkSize;
+
+    private ErrorHandler errors;
+    private SymbolTable  symbols;
+
+    // one piece of the input and what scanning it produced
+    private static class Chunk
+    {
+        int from;
+        int to;
+        int line;          // line of from, columns always start at 1
+        int end;           // line the scan ended on at to
+        boolean last;
+        boolean skip;      // all inside a comment from an earlier chunk
+
+        TokenBuffer  tokens;
+        ErrorHandler errors;
+        int openLine;      // #| left open at to, 0 if none
+        int openCol;
+        int openAt;
+    }
+
+    public ParallelScanner(String src)
+    {
+        this(src, ForkJoinPool.commonPool());
+    }
+
+    public ParallelScanner(String src, ForkJoinPool pool)
+    {
+        this(src, pool, Math.max(MIN_CHUNK, src.length() / (pool.getParallelism() * 4)));
+    }
+
+    public ParallelScanner(String src, ForkJoinPool pool, int chunkSize)
+    {
+        this.src       = src;
+        this.pool      = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.errors    = new ErrorHandler(src);
+    }
+
+    // scans all tokens into a packed buffer, same content as ManualScanner.buffer()
+    public TokenBuffer buffer()
+    {
+        int     max  = errors.max();
+        boolean stop = errors.stops();
+        boolean coal = errors.coalesces();
+        errors = new ErrorHandler(src).limit(max, stop).coalesce(coal);
+        if (stop)
+        {
+            // where a scan that stops on errors ends is only known front to back
+            ManualScanner s = new ManualScanner(src);
+            s.errs().limit(max, true).coalesce(coal);
+            TokenBuffer out = new TokenBuffer(src).scan(s);
+            errors  = s.errs();
+            symbols = s.syms();
+            return out;
+        }
+
+        List<Chunk> chunks = split();
+
+        List<Callable<Chunk>> count = new ArrayList<>();
+        for (Chunk c : chunks)
+        {
+            count.add(() -> { c.line = Skipper.INSTANCE.breaks(src, c.from, c.to); return c; });
+        }
+        runAll(count);
+        int line = 1;
+        for (Chunk c : chunks)
+        {
+            int n  = c.line;
+            c.line = line;
+            line  += n;
+        }
+
+        List<Callable<Chunk>> scans = new ArrayList<>();
+        for (Chunk c : chunks)
+        {
+            scans.add(() -> scan(c, c.from, c.line, 1));
+        }
+        runAll(scans);
+
+        int openLine = 0;
+        int openCol  = 0;
+        int openAt   = 0;
+        int close    = -1;      // end of the open comment, -1 if it never ends
+        line         = 1;       // now the real first line of the next chunk
+        List<Callable<Chunk>> again = new ArrayList<>();
+        for (Chunk c : chunks)
+        {
+            int shift = line - c.line;      // what step 1 got wrong for this chunk
+            c.line = line;
+            if (openLine != 0)
+            {
+                if (close >= 0 && close + 1 < c.to)
+                {
+                    // comment from an earlier chunk ends here, scan what follows it
+                    int at = close + 2;
+                    int ln = c.line + Skipper.INSTANCE.breaks(src, c.from, at);
+                    scan(c, at, ln, at - src.lastIndexOf('\n', at - 1));
+                    openLine = 0;
+                    shift    = 0;
+                }
+                else
+                {
+                    // the whole chunk is comment, every newline in it is a line
+                    line = c.line + Skipper.INSTANCE.breaks(src, c.from, c.to);
+                    c.skip = !c.last;
+                    if (c.last)
+                    {
+                        scan(c, c.to, line, c.to - src.lastIndexOf('\n', c.to - 1));
+                        c.errors.add(ErrorHandler.Code.NO_CLOSE_CMNT, openAt, 2, openLine, openCol);
+                    }
+                    continue;
+                }
+            }
+            else if (shift != 0)
+            {
+                again.add(() -> scan(c, c.from, c.line, 1));
+            }
+            line = c.end + shift;
+            if (c.openLine != 0)
+            {
+                openLine = c.openLine + shift;
+                openCol  = c.openCol;
+                openAt   = c.openAt;
+                close    = src.indexOf("|#", c.to);     // once per comment, not per chunk it covers
+            }
+        }
+        runAll(again);
+
+        TokenBuffer out = new TokenBuffer(src);
+        for (Chunk c : chunks)
+        {
+            if (!c.skip) merge(out, c);
+        }
+        symbols = ManualScanner.symbols(src, out);
+        return out;
+    }
+
+    // scans all tokens
+    public List<Token> all()
+    {
+        return buffer().asList();
+    }
+
+    // rets error handler, filled by buffer(); limit() it before
+    public ErrorHandler errs() { return errors; }
+    // rets symbol table, filled by buffer()
+    public SymbolTable  syms() { return symbols; }
+
+    // runs tasks on the pool and waits for all; join() rethrows what a task threw
+    private void runAll(List<Callable<Chunk>> tasks)
+    {
+        List<ForkJoinTask<Chunk>> running = new ArrayList<>(tasks.size());
+        for (Callable<Chunk> t : tasks) running.add(pool.submit(t));
+        for (ForkJoinTask<Chunk> t : running) t.join();
+    }
+
+    // cuts src into chunks of about chunkSize that end after a newline
+    private List<Chunk> split()
+    {
+        List<Chunk> chunks = new ArrayList<>();
+        int from = 0;
+        int n    = src.length();
+        while (from < n || chunks.isEmpty())
+        {
+            int to = n;
+            if (n - from > chunkSize)
+            {
+                // a string may go on past a newline after a backslash, never cut there
+                int nl = src.indexOf('\n', from + chunkSize - 1);
+                while (nl > 0 && src.charAt(nl - 1) == '\\') nl = src.indexOf('\n', nl + 1);
+                if (nl >= 0) to = nl + 1;
+            }
+            Chunk c = new Chunk();
+            c.from = from;
+            c.to   = to;
+            c.last = (to == n);
+            chunks.add(c);
+            from = to;
+        }
+        return chunks;
+    }
+
+    private Chunk scan(Chunk c, int from, int line, int col)
+    {
+        ManualScanner s = new ManualScanner(src, from, c.to, line, col, !c.last).track(false);
+        s.errs().limit(errors.max(), false).coalesce(errors.coalesces());
+        TokenBuffer   b = new TokenBuffer(src);
+        while (s.advance() != TokenType.EOF)
+        {
+            b.add(s);
+        }
+        if (c.last) b.add(s);
+        c.end      = s.line();
+        c.tokens   = b;
+        c.errors   = s.errs();
+        c.openLine = s.openLine();
+        c.openCol  = s.openCol();
+        c.openAt   = s.openAt();
+        return c;
+    }
+
+    private void merge(TokenBuffer out, Chunk c)
+    {
+        // an error token right after one may repeat its error, as a whole scan would fold it
+        boolean joins = out.size() > 0 && c.tokens.size() > 0
+                && out.type(out.size() - 1) == TokenType.ERROR && c.tokens.type(0) == TokenType.ERROR;
+        out.addAll(c.tokens);
+        errors.addAll(c.errors, joins);
+    }
+
+    // 0 if chunks of every size give what ManualScanner gives on the whole of src, else 1
+    private static int check(String name, String src, ForkJoinPool pool)
+    {
+        ManualScanner seq  = new ManualScanner(src);
+        String        toks = seq.all().toString();
+        String        errs = seq.errs().list().toString();
+        for (int size : new int[] { 1, 8, 64, 4096, MIN_CHUNK })
+        {
+            ParallelScanner par = new ParallelScanner(src, pool, size);
+            if (!toks.equals(par.all().toString())
+                    || !errs.equals(par.errs().list().toString())
+                    || seq.syms().size() != par.syms().size())
+            {
+                System.err.println(name + ": parallel scan in chunks of " + size + " differs from ManualScanner");
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    // input made mostly of what makes cuts hard: quotes, backslashes, newlines, comment marks
+    private static String garbage(long seed, int n)
+    {
+        String        alpha = "\"\\\n\n'#|#| Ab1{};=+";
+        Random        r     = new Random(seed);
+        StringBuilder sb    = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append(alpha.charAt(r.nextInt(alpha.length())));
+        return sb.toString();
+    }
+
+    // java ParallelScanner                           checks built-in inputs, chunks of 1 char up
+    // java ParallelScanner <file> [threads] [reps]   checks the file the same way, prints throughput
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            ForkJoinPool pool = new ForkJoinPool(4);
+            int bad = check("escaped newline", "start {\n  output << \"ab\\\ncd\";\n  declare Xy = 1;\n}\n", pool)
+                    + check("escaped newline in comment", "## a \\\n#| b \\\n c |# \"d\\\ne\\\n\" #|\nf\n", pool)
+                    + check("program", new CorpusGen(1).errors(0.05).generate(64 << 10), pool);
+            for (int k = 0; k < 20; k++)
+            {
+                bad += check("garbage " + k, garbage(k, 4096), pool);
+            }
+            pool.shutdown();
+            if (bad > 0) System.exit(1);
+            System.out.println("parallel ok");
+            return;
+        }
+
+        String src;
+        try
+        {
+            src = new String(Files.readAllBytes(Paths.get(args[0])));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not read file: " + args[0]);
+            System.exit(1);
+            return;
+        }
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int reps    = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        if (check(args[0], src, pool) > 0) System.exit(1);
+
+        for (int round = 0; round < 2; round++)
+        {
+            long tA = 0, tB = 0;
+            for (int r = 0; r < reps; r++)
+            {
+                long t0 = System.nanoTime();
+                new ManualScanner(src).buffer();
+                long t1 = System.nanoTime();
+                new ParallelScanner(src, pool).buffer();
+                long t2 = System.nanoTime();
+                tA += t1 - t0;
+                tB += t2 - t1;
+            }
+            String tag = (round == 0) ? "warmup" : "measured";
+            System.out.printf("%-9s ManualScanner:   %7.1f MB/s%n", tag, (double) src.length() * reps * 1e3 / tA);
+            System.out.printf("%-9s ParallelScanner: %7.1f MB/s  (%d threads)%n", tag,
+                    (double) src.length() * reps * 1e3 / tB, threads);
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,603 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+
+/*
+ * Find all references across a corpus of .lang files, kept on disk.
+ *
+ *   java RefIndex build <indexdir> [-j threads] <file|dir|glob>...
+ *   java RefIndex find  <indexdir> <Name>...
+ *   java RefIndex                                  self-check
+ *
+ * The index directory holds RefSegments and a manifest of the live files:
+ * id, segment, content key (ScanCache.key) and path. build is given the
+ * whole corpus every time and only scans files that are new or whose key
+ * changed. Those get fresh ids in one new segment; their old ids just stop
+ * being live, so no existing segment is rewritten, and files that left the
+ * corpus are dropped from the manifest. A segment with no live files left
+ * is deleted. Past MAX_SEGMENTS segments, or once dead files outnumber
+ * live ones, all segments are merged into one from their postings, without
+ * scanning anything again.
+ *
+ * The manifest is replaced by a rename after the new segment is written,
+ * so a reader opened at any time sees one whole version of the index.
+ */
+public class RefIndex 
+{
+    public static final int MAX_SEGMENTS = 16;
+
+    private static final int    MAGIC    = 0x5249584D;   // "RIXM"
+    private static final String MANIFEST = "manifest";
+
+    private final Path dir;
+
+    private int nextFile;
+    private int nextSeg;
+    private final Map<Integer, FileInfo>   files    = new HashMap<>();   // live files by id
+    private final Map<Integer, RefSegment> segments = new TreeMap<>();
+
+    // one live file
+    private static final class FileInfo 
+    {
+        final int    id;
+        final int    seg;
+        final String key;
+        final String path;
+
+        FileInfo(int id, int seg, String key, String path) 
+        {
+            this.id   = id;
+            this.seg  = seg;
+            this.key  = key;
+            this.path = path;
+        }
+    }
+
+    // one use of a name
+    public static final class Ref 
+    {
+        private final String path;
+        private final int    ln;
+        private final int    col;
+
+        Ref(String path, int ln, int col) 
+        {
+            this.path = path;
+            this.ln   = ln;
+            this.col  = col;
+        }
+
+        public String path() { return path; }
+        public int    ln()   { return ln;   }
+        public int    col()  { return col;  }
+
+        @Override
+        public String toString() 
+        {
+            return path + ":" + ln + ":" + col;
+        }
+    }
+
+    // what a worker found for one file
+    private static final class Scanned 
+    {
+        String  path;
+        String  key;
+        boolean same;       // key unchanged, nothing to index
+        boolean failed;
+        Map<String, SymbolTable.Entry> uses;    // all uses of each name
+    }
+
+    private static final Comparator<Ref> ORDER =
+            Comparator.comparing(Ref::path).thenComparingInt(Ref::ln).thenComparingInt(Ref::col);
+
+    // opens the index in dir, an empty one if there is none yet
+    public RefIndex(Path dir) throws IOException 
+    {
+        this.dir = dir;
+        Files.createDirectories(dir);
+
+        Set<Integer> segs = new LinkedHashSet<>();
+        try (InputStream raw = Files.newInputStream(dir.resolve(MANIFEST));
+             DataInputStream in = new DataInputStream(raw))
+        {
+            if (in.readInt() != MAGIC) throw new IOException("not a RefIndex manifest in " + dir);
+            nextFile = in.readInt();
+            nextSeg  = in.readInt();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                FileInfo f = new FileInfo(in.readInt(), in.readInt(), in.readUTF(), in.readUTF());
+                files.put(f.id, f);
+                segs.add(f.seg);
+            }
+        }
+        catch (NoSuchFileException e)
+        {
+            // new index
+        }
+        for (int s : segs) segments.put(s, new RefSegment(segPath(s)));
+    }
+
+    public int files()    { return files.size();    }
+    public int segments() { return segments.size(); }
+
+    // every use of name, by path, line and column
+    public List<Ref> find(String name) 
+    {
+        List<Ref> out = new ArrayList<>();
+        for (RefSegment seg : segments.values())
+        {
+            for (RefSegment.Posting p : seg.postings(name))
+            {
+                FileInfo f = files.get(p.file);
+                if (f == null) continue;     // replaced or dropped since
+                int[] pos = p.positions();
+                for (int i = 0; i < pos.length; i += 2)
+                {
+                    out.add(new Ref(f.path, pos[i], pos[i + 1]));
+                }
+            }
+        }
+        out.sort(ORDER);
+        return out;
+    }
+
+    // paths of the files using name, sorted
+    public List<String> filesUsing(String name) 
+    {
+        List<String> out = new ArrayList<>();
+        for (RefSegment seg : segments.values())
+        {
+            for (RefSegment.Posting p : seg.postings(name))
+            {
+                FileInfo f = files.get(p.file);
+                if (f != null) out.add(f.path);
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    // brings the index in line with corpus, scanning only what changed
+    public String update(List<Path> corpus, ForkJoinPool pool) throws IOException 
+    {
+        Map<String, FileInfo> byPath = new HashMap<>();
+        for (FileInfo f : files.values()) byPath.put(f.path, f);
+
+        List<ForkJoinTask<Scanned>> tasks = new ArrayList<>(corpus.size());
+        for (Path p : corpus)
+        {
+            FileInfo old = byPath.get(p.toString());
+            tasks.add(pool.submit(() -> scan(p, old)));
+        }
+
+        int seg = nextSeg;
+        Map<String, RefSegment.Postings> byName = new HashMap<>();
+        Map<Integer, FileInfo> live = new HashMap<>();
+        int scanned = 0, same = 0, failed = 0;
+        for (int i = 0; i < tasks.size(); i++)
+        {
+            Scanned s = tasks.get(i).join();
+            tasks.set(i, null);
+            if (s.failed)
+            {
+                failed++;
+                continue;
+            }
+            if (s.same)
+            {
+                FileInfo f = byPath.get(s.path);
+                live.put(f.id, f);
+                same++;
+                continue;
+            }
+            int id = nextFile++;
+            live.put(id, new FileInfo(id, seg, s.key, s.path));
+            for (Map.Entry<String, SymbolTable.Entry> e : s.uses.entrySet())
+            {
+                SymbolTable.Entry u = e.getValue();
+                byName.computeIfAbsent(e.getKey(), k -> new RefSegment.Postings()).add(id, u.uses(), u.occBytes(), u.occLength());
+            }
+            scanned++;
+        }
+        Set<String> kept = new LinkedHashSet<>();
+        for (Path p : corpus) kept.add(p.toString());
+        int dropped = 0;
+        for (String p : byPath.keySet())
+        {
+            if (!kept.contains(p)) dropped++;
+        }
+
+        if (scanned > 0)
+        {
+            RefSegment.write(segPath(seg), byName, scanned);
+            segments.put(seg, new RefSegment(segPath(seg)));
+            nextSeg++;
+        }
+        files.clear();
+        files.putAll(live);
+        save();
+        prune();
+
+        int dead = 0;
+        for (RefSegment s : segments.values()) dead += s.files();
+        dead -= files.size();
+        if (segments.size() > MAX_SEGMENTS || dead > files.size()) compact();
+
+        return String.format("%d files: %d scanned, %d unchanged, %d dropped, %d unreadable; %d segments",
+                corpus.size(), scanned, same, dropped, failed, segments.size());
+    }
+
+    // merges all segments into one, keeping only live files
+    public void compact() throws IOException 
+    {
+        if (segments.isEmpty()) return;
+        // later segments only hold later ids, so going in segment order keeps ids ascending
+        Map<String, RefSegment.Postings> byName = new HashMap<>();
+        for (RefSegment s : segments.values())
+        {
+            for (int i = 0; i < s.terms(); i++)
+            {
+                RefSegment.Postings ps = null;
+                for (RefSegment.Posting p : s.postings(i))
+                {
+                    if (!files.containsKey(p.file)) continue;
+                    if (ps == null) ps = byName.computeIfAbsent(s.term(i), k -> new RefSegment.Postings());
+                    ps.add(p.file, p.uses, p.occ, p.occ.length);
+                }
+            }
+        }
+
+        int seg = nextSeg++;
+        RefSegment.write(segPath(seg), byName, files.size());
+        for (Map.Entry<Integer, FileInfo> e : files.entrySet())
+        {
+            FileInfo f = e.getValue();
+            e.setValue(new FileInfo(f.id, seg, f.key, f.path));
+        }
+        segments.put(seg, new RefSegment(segPath(seg)));
+        save();
+        prune();
+    }
+
+    // reads and, if its key changed, scans one file
+    private static Scanned scan(Path path, FileInfo old) 
+    {
+        Scanned s = new Scanned();
+        s.path = path.toString();
+        try
+        {
+            String src = new String(Files.readAllBytes(path));
+            s.key  = ScanCache.key(src);
+            s.same = old != null && old.key.equals(s.key);
+            if (s.same) return s;
+
+            ManualScanner m = new ManualScanner(src);
+            m.buffer();
+            s.uses = uses(m.syms());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            s.failed = true;
+            System.err.println("RefIndex: skipping " + s.path + ": " + e.getMessage());
+        }
+        return s;
+    }
+
+    // every name's uses in one table, shadowing entries of a name merged
+    private static Map<String, SymbolTable.Entry> uses(SymbolTable t) 
+    {
+        Map<String, List<SymbolTable.Entry>> byName = new HashMap<>();
+        for (SymbolTable.Entry e : t.entries())
+        {
+            if (e.uses() > 0) byName.computeIfAbsent(e.name(), k -> new ArrayList<>()).add(e);
+        }
+
+        Map<String, SymbolTable.Entry> out = new HashMap<>();
+        for (Map.Entry<String, List<SymbolTable.Entry>> n : byName.entrySet())
+        {
+            List<SymbolTable.Entry> es = n.getValue();
+            SymbolTable.Entry one = es.get(0);
+            if (es.size() > 1)
+            {
+                // interleaved uses of several scopes, put back in source order
+                long[] all = new long[0];
+                for (SymbolTable.Entry e : es)
+                {
+                    int[] pos = e.occurrences();
+                    int   at  = all.length;
+                    all = Arrays.copyOf(all, at + pos.length / 2);
+                    for (int i = 0; i < pos.length; i += 2) all[at + i / 2] = (long) pos[i] << 32 | pos[i + 1];
+                }
+                Arrays.sort(all);
+                one = new SymbolTable.Entry(n.getKey(), null, null, 0);
+                for (long lc : all) one.use((int) (lc >>> 32), (int) lc);
+            }
+            out.put(n.getKey(), one);
+        }
+        return out;
+    }
+
+    private Path segPath(int seg) 
+    {
+        return dir.resolve("seg-" + seg + ".rix");
+    }
+
+    // writes the manifest next to the old one and renames it over
+    private void save() throws IOException 
+    {
+        Path tmp = Files.createTempFile(dir, "manifest-", ".part");
+        try
+        {
+            try (OutputStream raw = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(raw))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(nextFile);
+                out.writeInt(nextSeg);
+                out.writeInt(files.size());
+                for (FileInfo f : files.values())
+                {
+                    out.writeInt(f.id);
+                    out.writeInt(f.seg);
+                    out.writeUTF(f.key);
+                    out.writeUTF(f.path);
+                }
+            }
+            try
+            {
+                Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // deletes segment files no live file points into
+    private void prune() throws IOException 
+    {
+        Set<Integer> used = new LinkedHashSet<>();
+        for (FileInfo f : files.values()) used.add(f.seg);
+        segments.keySet().retainAll(used);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "seg-*.rix"))
+        {
+            for (Path p : ds)
+            {
+                String n = p.getFileName().toString();
+                int    s = Integer.parseInt(n.substring(4, n.length() - 4));
+                if (!used.contains(s)) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    // every use in files, from a plain ManualScanner pass over each: one per identifier token
+    private static Map<String, List<Ref>> expected(List<Path> files) throws IOException 
+    {
+        Map<String, List<Ref>> out = new HashMap<>();
+        for (Path p : files)
+        {
+            String        src = new String(Files.readAllBytes(p));
+            ManualScanner m   = new ManualScanner(src).track(false);
+            while (m.advance() != TokenType.EOF)
+            {
+                if (m.type() != TokenType.IDENTIFIER) continue;
+                out.computeIfAbsent(m.text(), k -> new ArrayList<>()).add(new Ref(p.toString(), m.line(), m.column()));
+            }
+        }
+        for (List<Ref> refs : out.values()) refs.sort(ORDER);
+        return out;
+    }
+
+    // 0 if find() gives what a fresh scan of files gives, for every name ever seen, else 1
+    private static int check(String step, RefIndex idx, List<Path> files, Set<String> seen) throws IOException 
+    {
+        Map<String, List<Ref>> want = expected(files);
+        seen.addAll(want.keySet());
+        for (String name : seen)
+        {
+            String a = String.valueOf(want.getOrDefault(name, new ArrayList<>()));
+            String b = String.valueOf(idx.find(name));
+            if (!a.equals(b))
+            {
+                System.err.println(step + ": find(" + name + ") is " + b + ", a fresh scan gives " + a);
+                return 1;
+            }
+        }
+        if (idx.files() != files.size())
+        {
+            System.err.println(step + ": " + idx.files() + " live files, corpus has " + files.size());
+            return 1;
+        }
+        return 0;
+    }
+
+    // builds an index of generated files, then edits, drops, compacts and reopens it,
+    // checking find() against a fresh scan after every step
+    private static int selfCheck() throws IOException 
+    {
+        Path root   = Files.createTempDirectory("refindex");
+        Path corpus = Files.createDirectories(root.resolve("corpus"));
+        Path index  = root.resolve("index");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int bad = 0;
+        try
+        {
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                Path p = corpus.resolve("f" + i + ".lang");
+                Files.write(p, new CorpusGen(i).vocabulary(64).errors(0.02).generate(8 << 10).getBytes());
+                files.add(p);
+            }
+            Set<String> seen = new LinkedHashSet<>();
+            RefIndex    idx  = new RefIndex(index);
+            idx.update(files, pool);
+            bad += check("build", idx, files, seen);
+
+            idx.update(files, pool);
+            bad += check("rebuild unchanged", idx, files, seen);
+
+            Files.write(files.get(0), new CorpusGen(100).vocabulary(64).generate(8 << 10).getBytes());
+            idx.update(files, pool);
+            bad += check("edit", idx, files, seen);
+
+            Files.delete(files.remove(1));
+            idx.update(files, pool);
+            bad += check("drop", idx, files, seen);
+
+            // a new file per update, each in its own segment, until past MAX_SEGMENTS
+            for (int k = 0; k <= MAX_SEGMENTS; k++)
+            {
+                Path p = corpus.resolve("g" + k + ".lang");
+                Files.write(p, new CorpusGen(200 + k).vocabulary(64).generate(4 << 10).getBytes());
+                files.add(p);
+                idx.update(files, pool);
+                bad += check("edit " + k, idx, files, seen);
+                if (idx.segments() > MAX_SEGMENTS)
+                {
+                    System.err.println("edit " + k + ": " + idx.segments() + " segments, never compacted");
+                    bad++;
+                }
+            }
+
+            // all but the first and the last two dropped, so dead files outnumber live ones
+            // in segments that still have a live file
+            while (files.size() > 3) Files.delete(files.remove(1));
+            idx.update(files, pool);
+            bad += check("drop most", idx, files, seen);
+            if (idx.segments() != 1)
+            {
+                System.err.println("drop most: " + idx.segments() + " segments, mostly dead files not compacted");
+                bad++;
+            }
+
+            Files.write(files.get(1), new CorpusGen(300).vocabulary(64).generate(4 << 10).getBytes());
+            idx.update(files, pool);
+            bad += check("edit after compaction", idx, files, seen);
+
+            idx.compact();
+            bad += check("compact", idx, files, seen);
+            if (idx.segments() != 1)
+            {
+                System.err.println("compact: " + idx.segments() + " segments");
+                bad++;
+            }
+
+            bad += check("reopen", new RefIndex(index), files, seen);
+        }
+        finally
+        {
+            pool.shutdown();
+            try (Stream<Path> all = Files.walk(root))
+            {
+                List<Path> ps = new ArrayList<>();
+                all.forEach(ps::add);
+                for (int i = ps.size() - 1; i >= 0; i--) Files.deleteIfExists(ps.get(i));
+            }
+        }
+        return bad;
+    }
+
+    public static void main(String[] args) 
+    {
+        if (args.length == 0)
+        {
+            try
+            {
+                if (selfCheck() > 0) System.exit(1);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            }
+            System.out.println("index ok");
+            return;
+        }
+
+        int          threads = Runtime.getRuntime().availableProcessors();
+        List<String> inputs  = new ArrayList<>();
+        boolean      usage   = args.length < 3 || !(args[0].equals("build") || args[0].equals("find"));
+        try
+        {
+            for (int i = 2; i < args.length && !usage && args[0].equals("build"); i++)
+            {
+                if (args[i].equals("-j")) threads = Integer.parseInt(args[++i]);
+                else                      inputs.add(args[i]);
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+        {
+            usage = true;
+        }
+        if (usage || threads < 1 || (args[0].equals("build") && inputs.isEmpty()))
+        {
+            System.err.println("Usage: java RefIndex build <indexdir> [-j threads] <file|dir|glob>...");
+            System.err.println("       java RefIndex find  <indexdir> <Name>...");
+            System.exit(1);
+        }
+        try
+        {
+            RefIndex idx = new RefIndex(Paths.get(args[1]));
+            if (args[0].equals("find"))
+            {
+                for (int i = 2; i < args.length; i++)
+                {
+                    long       t0   = System.nanoTime();
+                    List<Ref>  refs = idx.find(args[i]);
+                    double     ms   = (System.nanoTime() - t0) / 1e6;
+                    for (Ref r : refs) System.out.println(r);
+                    System.err.printf("%s: %d uses in %d files, %.2f ms%n",
+                            args[i], refs.size(), idx.filesUsing(args[i]).size(), ms);
+                }
+                return;
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try
+            {
+                long t0 = System.nanoTime();
+                String summary = idx.update(BatchDriver.expand(inputs), pool);
+                System.err.printf("%s in %.3f s%n", summary, (System.nanoTime() - t0) / 1e9);
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
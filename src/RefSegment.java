@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * One immutable piece of a RefIndex: names to the files using them to
+ * where, read through a memory map.
+ *
+ *   header   32 bytes, little endian
+ *              "RIX" 1                  magic and version
+ *              u32 terms, u32 files, u32 bloom bits (a power of two)
+ *              u32 offsets of the bloom, dictionary and postings sections
+ *              u32 file size
+ *   bloom    bits / 8 bytes, K bits set per name
+ *   dict     u32 at[terms + 1] into the names, u32 post[terms] into the
+ *            postings, UTF-8 of all names sorted by unsigned byte order
+ *   postings per name: varint files, then per file, ids ascending
+ *                         varint id - previous id
+ *                         varint uses, varint k, k bytes of uses
+ *
+ * Uses are coded as SymbolTable.Entry keeps them, line delta then column
+ * or column delta, so a scan's postings are copied in as they are.
+ */
+public class RefSegment 
+{
+    static final byte[] MAGIC  = { 'R', 'I', 'X', 1 };
+    static final int    HEADER = 32;
+
+    private static final int K = 7;    // bloom probes per name, ~1% false hits at 10 bits a name
+
+    // uses of one name in one file
+    static final class Posting 
+    {
+        final int    file;
+        final int    uses;
+        final byte[] occ;
+
+        Posting(int file, int uses, byte[] occ) 
+        {
+            this.file = file;
+            this.uses = uses;
+            this.occ  = occ;
+        }
+
+        // line and column of every use, as line0, col0, line1, col1, ...
+        int[] positions() 
+        {
+            return SymbolTable.Entry.decode(occ, uses);
+        }
+    }
+
+    // one name's postings being written, already in their coded form
+    static final class Postings 
+    {
+        private final TokWriter.Out out = new TokWriter.Out();
+        private int files;
+        private int last;
+
+        // files must come in ascending id order
+        void add(int file, int uses, byte[] occ, int len) 
+        {
+            out.varint(file - last);
+            out.varint(uses);
+            out.varint(len);
+            out.bytes(occ, len);
+            last = file;
+            files++;
+        }
+    }
+
+    private final MappedByteBuffer map;
+    private final int terms;
+    private final int files;
+    private final int bits;
+    private final int offBloom;
+    private final int offDict;
+    private final int offPost;
+
+    public RefSegment(Path path) throws IOException 
+    {
+        try (FileChannel ch = FileChannel.open(path))
+        {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[MAGIC.length];
+        if (map.capacity() < HEADER) throw new IOException("not a segment: " + path);
+        map.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || map.getInt(28) != map.capacity())
+        {
+            throw new IOException("not a segment: " + path);
+        }
+        terms    = map.getInt(4);
+        files    = map.getInt(8);
+        bits     = map.getInt(12);
+        offBloom = map.getInt(16);
+        offDict  = map.getInt(20);
+        offPost  = map.getInt(24);
+    }
+
+    public int terms() { return terms; }
+    public int files() { return files; }
+
+    // false means name is surely not here
+    public boolean mightContain(String name) 
+    {
+        return mightContain(utf8(name));
+    }
+
+    private boolean mightContain(byte[] key) 
+    {
+        long h  = hash(key);
+        int  h1 = (int) h;
+        int  h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < K; i++)
+        {
+            int bit = (h1 + i * h2) & (bits - 1);
+            if ((map.get(offBloom + (bit >>> 3)) & (1 << (bit & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    // postings of name, empty if it is not here
+    public List<Posting> postings(String name) 
+    {
+        byte[] key = utf8(name);
+        if (!mightContain(key)) return new ArrayList<>();
+        int lo = 0, hi = terms - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int c   = compareTerm(mid, key);
+            if      (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else            return postings(mid);
+        }
+        return new ArrayList<>();
+    }
+
+    // i-th name in sorted order
+    public String term(int i) 
+    {
+        int from = map.getInt(offDict + i * 4);
+        int to   = map.getInt(offDict + i * 4 + 4);
+        byte[] b = new byte[to - from];
+        map.get(names() + from, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // postings of the i-th name
+    public List<Posting> postings(int i) 
+    {
+        int[] at = { offPost + map.getInt(offDict + (terms + 1) * 4 + i * 4) };
+        int   n  = varint(at);
+        List<Posting> out = new ArrayList<>(n);
+        int file = 0;
+        for (int k = 0; k < n; k++)
+        {
+            file += varint(at);
+            int    uses = varint(at);
+            byte[] occ  = new byte[varint(at)];
+            map.get(at[0], occ);
+            at[0] += occ.length;
+            out.add(new Posting(file, uses, occ));
+        }
+        return out;
+    }
+
+    private int names() 
+    {
+        return offDict + (terms + 1) * 4 + terms * 4;
+    }
+
+    private int compareTerm(int i, byte[] key) 
+    {
+        int from = map.getInt(offDict + i * 4);
+        int len  = map.getInt(offDict + i * 4 + 4) - from;
+        int base = names() + from;
+        int n    = Math.min(len, key.length);
+        for (int j = 0; j < n; j++)
+        {
+            int c = (map.get(base + j) & 0xFF) - (key[j] & 0xFF);
+            if (c != 0) return c;
+        }
+        return len - key.length;
+    }
+
+    private int varint(int[] at) 
+    {
+        int v = 0;
+        int shift = 0;
+        while (true)
+        {
+            int b = map.get(at[0]++);
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+        }
+    }
+
+    // writes a segment of the given names' postings
+    static void write(Path path, Map<String, Postings> byName, int files) throws IOException 
+    {
+        int      n    = byName.size();
+        byte[][] keys = new byte[n][];
+        int      k    = 0;
+        for (String s : byName.keySet()) keys[k++] = utf8(s);
+        Arrays.sort(keys, Arrays::compareUnsigned);
+
+        int bits = 64;
+        while (bits < n * 10) bits <<= 1;
+        byte[] bloom = new byte[bits >>> 3];
+
+        TokWriter.Out dict  = new TokWriter.Out();
+        TokWriter.Out text  = new TokWriter.Out();
+        TokWriter.Out post  = new TokWriter.Out();
+        int[]         atPost = new int[n];
+        dict.u32(0);
+        for (int i = 0; i < n; i++)
+        {
+            byte[] key = keys[i];
+            text.bytes(key);
+            dict.u32(text.len);
+
+            long h  = hash(key);
+            int  h1 = (int) h;
+            int  h2 = (int) (h >>> 32) | 1;
+            for (int j = 0; j < K; j++)
+            {
+                int bit = (h1 + j * h2) & (bits - 1);
+                bloom[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+
+            atPost[i] = post.len;
+            Postings ps = byName.get(new String(key, StandardCharsets.UTF_8));
+            post.varint(ps.files);
+            post.bytes(ps.out.buf, ps.out.len);
+        }
+        for (int i = 0; i < n; i++) dict.u32(atPost[i]);
+
+        int offBloom = HEADER;
+        int offDict  = offBloom + bloom.length;
+        int offPost  = offDict + dict.len + text.len;
+        int size     = offPost + post.len;
+
+        ByteBuffer hd = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        hd.put(MAGIC);
+        hd.putInt(n);
+        hd.putInt(files);
+        hd.putInt(bits);
+        hd.putInt(offBloom);
+        hd.putInt(offDict);
+        hd.putInt(offPost);
+        hd.putInt(size);
+        hd.flip();
+
+        ByteBuffer[] parts = { hd, ByteBuffer.wrap(bloom), dict.buffer(), text.buffer(), post.buffer() };
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long left = size;
+            while (left > 0) left -= ch.write(parts);
+        }
+    }
+
+    private static byte[] utf8(String s) 
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 64-bit FNV-1a with a murmur3 finish
+    private static long hash(byte[] key) 
+    {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : key)
+        {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
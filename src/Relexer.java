@@ -0,0 +1,296 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+/*
+ * Keeps the ManualScanner token stream of a text up to date under edits.
+ *
+ * A ManualScanner token only depends on the chars from its start to two
+ * chars past its end (the "12." lookahead), never on what came before it,
+ * and the scanner only starts a new line while skipping trivia. So an edit
+ * at off leaves every token ending at or before off - 2 alone, and scanning
+ * can restart right after the last of them, on its line at its column plus
+ * its length. Once a rescanned token starts
+ * exactly where an old token, shifted by the edit, used to start, the rest
+ * of the old stream is correct again and scanning stops.
+ *
+ * Tokens live in a gap buffer of packed arrays, the gap sits at the last
+ * edit. Tokens after the gap store their start relative to the end of the
+ * text and their line relative to the EOF token's, so an edit shifts all of
+ * them without touching them; only columns on the line where scanning
+ * resynced are patched. A small edit costs a binary search, a few tokens of
+ * scanning and moving the gap, not a rescan.
+ *
+ * Only tokens are tracked; errors and symbols need a full ManualScanner pass.
+ */
+public class Relexer
+{
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private static final int LOOKAHEAD = 2;
+
+    private String src;
+    private int    endLine;    // line of the EOF token
+
+    private byte[] types;
+    private int[]  starts;
+    private int[]  lens;
+    private int[]  lines;
+    private int[]  cols;
+    private int    gapStart;
+    private int    gapEnd;
+
+    public Relexer(String src)
+    {
+        this.src      = src;
+        this.types    = new byte[256];
+        this.starts   = new int[256];
+        this.lens     = new int[256];
+        this.lines    = new int[256];
+        this.cols     = new int[256];
+        this.gapStart = 0;
+        this.gapEnd   = 256;
+
+        ManualScanner s = new ManualScanner(src).track(false);
+        TokenType t;
+        do
+        {
+            t = s.advance();
+            insert(s);
+        } while (t != TokenType.EOF);
+        this.endLine = s.line();
+    }
+
+    public String source()
+    {
+        return src;
+    }
+
+    // replaces src[off, off + removed) with inserted, returns how many tokens were rescanned
+    public int edit(int off, int removed, String inserted)
+    {
+        String next = src.substring(0, off) + inserted + src.substring(off + removed);
+        return update(next, off, removed, inserted.length());
+    }
+
+    // same, for callers that already hold the edited text
+    public int update(String next, int off, int removed, int added)
+    {
+        if (off < 0 || removed < 0 || off + removed > src.length()
+                || next.length() != src.length() - removed + added)
+        {
+            throw new IllegalArgumentException("edit does not match the text");
+        }
+
+        // last token that cannot see the edit, scanning restarts after it
+        int k = restartIndex(off);
+        int from, line, col;
+        if (k < 0)
+        {
+            from = 0;
+            line = 1;
+            col  = 1;
+        }
+        else
+        {
+            from = start(k) + length(k);
+            line = line(k);
+            col  = column(k) + length(k);
+        }
+
+        // everything after k goes behind the gap while the old end is still current
+        moveGap(k + 1);
+        src = next;
+
+        int len   = src.length();
+        int clean = off + added;      // old tokens starting here or later are unchanged
+        int count = 0;
+
+        ManualScanner s = new ManualScanner(src, from, len, line, col, false).track(false);
+        while (true)
+        {
+            s.advance();
+            int p = s.start();
+
+            // old tokens that start before p are gone
+            int j = gapEnd;
+            while (j < types.length && starts[j] + len < p)
+            {
+                j++;
+            }
+            gapEnd = j;
+
+            if (p >= clean && j < types.length && starts[j] + len == p)
+            {
+                // back in step with the old stream, the scanner knows how far lines
+                // moved (a \ before a newline in a string is not counted as one)
+                endLine = s.line() - lines[j];
+                int shift = s.column() - cols[j];
+                for (int q = j; shift != 0 && q < types.length && lines[q] == lines[j]; q++)
+                {
+                    cols[q] += shift;
+                }
+                break;
+            }
+
+            insert(s);
+            count++;
+            if (s.type() == TokenType.EOF)
+            {
+                endLine = s.line();
+                gapEnd  = types.length;
+                break;
+            }
+        }
+        return count;
+    }
+
+    // index of the last token with end + LOOKAHEAD <= off, -1 if none
+    private int restartIndex(int off)
+    {
+        int lo = 0, hi = size() - 1, k = -1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) + length(mid) + LOOKAHEAD <= off && type(mid) != TokenType.EOF)
+            {
+                k  = mid;
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid - 1;
+            }
+        }
+        return k;
+    }
+
+    // appends the scanner's token at the gap
+    private void insert(ManualScanner s)
+    {
+        if (gapStart == gapEnd) grow();
+        types[gapStart]  = (byte) s.type().ordinal();
+        starts[gapStart] = s.start();
+        lens[gapStart]   = s.length();
+        lines[gapStart]  = s.line();
+        cols[gapStart]   = s.column();
+        gapStart++;
+    }
+
+    // moves the gap so that it starts before logical index i
+    private void moveGap(int i)
+    {
+        int len = src.length();
+        while (gapStart > i)
+        {
+            gapStart--;
+            gapEnd--;
+            types[gapEnd]  = types[gapStart];
+            starts[gapEnd] = starts[gapStart] - len;
+            lens[gapEnd]   = lens[gapStart];
+            lines[gapEnd]  = lines[gapStart] - endLine;
+            cols[gapEnd]   = cols[gapStart];
+        }
+        while (gapStart < i)
+        {
+            types[gapStart]  = types[gapEnd];
+            starts[gapStart] = starts[gapEnd] + len;
+            lens[gapStart]   = lens[gapEnd];
+            lines[gapStart]  = lines[gapEnd] + endLine;
+            cols[gapStart]   = cols[gapEnd];
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    private void grow()
+    {
+        int cap  = types.length;
+        int n    = cap << 1;
+        int tail = cap - gapEnd;
+        types  = regap(types, n, tail);
+        starts = regap(starts, n, tail);
+        lens   = regap(lens, n, tail);
+        lines  = regap(lines, n, tail);
+        cols   = regap(cols, n, tail);
+        gapEnd = n - tail;
+    }
+
+    private byte[] regap(byte[] a, int n, int tail)
+    {
+        byte[] b = Arrays.copyOf(a, n);
+        System.arraycopy(a, a.length - tail, b, n - tail, tail);
+        return b;
+    }
+
+    private int[] regap(int[] a, int n, int tail)
+    {
+        int[] b = Arrays.copyOf(a, n);
+        System.arraycopy(a, a.length - tail, b, n - tail, tail);
+        return b;
+    }
+
+    private int phys(int i)
+    {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("token " + i + " of " + size());
+        return (i < gapStart) ? i : i + (gapEnd - gapStart);
+    }
+
+    public int size()
+    {
+        return types.length - (gapEnd - gapStart);
+    }
+
+    public TokenType type(int i)   { return TYPES[types[phys(i)]]; }
+    public int       length(int i) { return lens[phys(i)]; }
+    public int       column(int i) { return cols[phys(i)]; }
+
+    public int start(int i)
+    {
+        int p = phys(i);
+        return (i < gapStart) ? starts[p] : starts[p] + src.length();
+    }
+
+    public int line(int i)
+    {
+        int p = phys(i);
+        return (i < gapStart) ? lines[p] : lines[p] + endLine;
+    }
+
+    // lexeme of token i, allocates
+    public String text(int i)
+    {
+        TokenType t = type(i);
+        if (t.text() != null) return t.text();
+        int s = start(i);
+        return src.substring(s, s + length(i));
+    }
+
+    public Token token(int i)
+    {
+        return new Token(type(i), src, start(i), length(i), line(i), column(i));
+    }
+
+    // read-only List view of the current tokens
+    public List<Token> asList()
+    {
+        return new View();
+    }
+
+    private class View extends AbstractList<Token> implements RandomAccess
+    {
+        @Override
+        public Token get(int i)
+        {
+            return token(i);
+        }
+
+        @Override
+        public int size()
+        {
+            return Relexer.this.size();
+        }
+    }
+}
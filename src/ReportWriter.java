@@ -0,0 +1,361 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/*
+ * Ordered report output: many threads format, one thread writes.
+ *
+ *   ReportWriter w = new ReportWriter().to(System.out, OUT).to(file, OUT | ERR);
+ *   ReportWriter.Part p = w.part();     // parts come out in the order they are made
+ *   ... p.out().println(...) on any thread, then p.close()
+ *   w.close();
+ *
+ * A Part fills one 64 KB buffer and hands it over as a chunk when it is
+ * full; a switch between out and err, flush() or close() hands over a copy
+ * of just the bytes so far and keeps the buffer. A single writer thread
+ * takes the chunks of the oldest open part as they come, writes each to
+ * every sink listening on its channel (out or err), and flushes the sinks
+ * only when a part is done or flush() asks for it. So a line is a memcpy
+ * for the formatting thread and a report is a few big writes.
+ *
+ * At most MAX_BYTES of chunks wait unwritten. A part past that blocks until
+ * the writer catches up, except the part being written, which can always
+ * go on; so memory stays bounded however big or far ahead a report is, and
+ * however often it switches channel.
+ * Parts are to be filled in the order they were made (a pool running
+ * tasks in submission order does that), or one waits on one behind it.
+ */
+public class ReportWriter implements Closeable
+{
+    public static final int OUT = 1;    // channels, a sink takes one or both
+    public static final int ERR = 2;
+
+    static final int CHUNK     = 1 << 16;
+    static final int MAX_BYTES = 1 << 24;   // handed over and not yet written
+
+    // bytes of one channel, in order
+    private static final class Chunk
+    {
+        final int    channel;
+        final byte[] buf;
+
+        Chunk(int channel, byte[] buf)
+        {
+            this.channel = channel;
+            this.buf     = buf;
+        }
+    }
+
+    private final List<OutputStream> sinks = new ArrayList<>();
+    private final List<Integer>      masks = new ArrayList<>();
+
+    // guarded by this
+    private final ArrayDeque<Part> parts = new ArrayDeque<>();   // made and not yet written, oldest first
+    private int         waiting;        // bytes handed over, not yet written
+    private long        made;           // parts made
+    private long        written;        // parts written and flushed
+    private boolean     closed;
+    private volatile IOException failed;
+    private Thread      thread;
+
+    // sink gets the channels in mask; all sinks are added before the first part
+    public synchronized ReportWriter to(OutputStream sink, int mask)
+    {
+        if (thread != null) throw new IllegalStateException("sinks are fixed once parts are made");
+        sinks.add(sink);
+        masks.add(mask);
+        return this;
+    }
+
+    // sink gets both channels
+    public ReportWriter to(OutputStream sink)
+    {
+        return to(sink, OUT | ERR);
+    }
+
+    // next report, written after all parts made before it
+    public synchronized Part part()
+    {
+        if (closed) throw new IllegalStateException("closed");
+        if (thread == null)
+        {
+            thread = new Thread(this::drain, "report-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Part p = new Part();
+        parts.add(p);
+        made++;
+        return p;
+    }
+
+    // waits until every part made so far is closed and written, and the sinks flushed
+    public void flush() throws IOException
+    {
+        synchronized (this)
+        {
+            long upTo = made;
+            try
+            {
+                while (written < upTo && failed == null) wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("report flush interrupted");
+            }
+            if (failed != null) throw failed;
+        }
+    }
+
+    // writes out all parts, which must all be closed; the sinks are left open
+    @Override
+    public void close() throws IOException
+    {
+        Thread t;
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+            t = thread;
+        }
+        if (t != null)
+        {
+            try
+            {
+                t.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("report close interrupted");
+            }
+        }
+        synchronized (this)
+        {
+            if (failed != null) throw failed;
+        }
+    }
+
+    // the writer thread
+    private void drain()
+    {
+        while (true)
+        {
+            Part  p;
+            Chunk c;
+            synchronized (this)
+            {
+                while (true)
+                {
+                    p = parts.peekFirst();
+                    if (p == null && closed) return;
+                    c = (p == null) ? null : p.ready.poll();
+                    if (c != null || (p != null && p.done)) break;
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+
+            if (c != null)
+            {
+                write(c);
+                synchronized (this)
+                {
+                    waiting -= c.buf.length;
+                    notifyAll();
+                }
+                continue;
+            }
+
+            // a part is done: a file boundary
+            flushSinks();
+            synchronized (this)
+            {
+                parts.poll();
+                written++;
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(Chunk c)
+    {
+        if (failed != null) return;
+        try
+        {
+            for (int i = 0; i < sinks.size(); i++)
+            {
+                if ((masks.get(i) & c.channel) != 0) sinks.get(i).write(c.buf);
+            }
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+
+    private void flushSinks()
+    {
+        if (failed != null) return;
+        try
+        {
+            for (OutputStream s : sinks) s.flush();
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+
+    // after a failed write the rest is dropped, so parts never block on it
+    private synchronized void fail(IOException e)
+    {
+        if (failed == null) failed = e;
+        notifyAll();
+    }
+
+    /*
+     * One report. Filled by one thread at a time, through out() and err()
+     * or write(); close() hands the rest over and lets the next part start.
+     */
+    public final class Part implements Closeable
+    {
+        private final ArrayDeque<Chunk> ready = new ArrayDeque<>();   // guarded by the writer
+        private boolean     done;
+        private byte[]      buf;            // filling, null until written to or after a full one went
+        private int         len;
+        private int         channel;        // of the bytes in buf
+        private PrintStream out;
+        private PrintStream err;
+
+        private Part()
+        {
+        }
+
+        // channel OUT as a PrintStream
+        public PrintStream out()
+        {
+            if (out == null) out = new PrintStream(new Channel(OUT), false);
+            return out;
+        }
+
+        // channel ERR as a PrintStream
+        public PrintStream err()
+        {
+            if (err == null) err = new PrintStream(new Channel(ERR), false);
+            return err;
+        }
+
+        // appends bytes to a channel
+        public void write(int channel, byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0)
+            {
+                if (this.len > 0 && this.channel != channel) hand();
+                if (buf == null) buf = new byte[CHUNK];
+                this.channel = channel;
+                int n = Math.min(len, CHUNK - this.len);
+                System.arraycopy(b, off, buf, this.len, n);
+                this.len += n;
+                off      += n;
+                len      -= n;
+                if (this.len == CHUNK) hand();
+            }
+        }
+
+        // hands over what is buffered, the writer may write it at once if this part is first
+        public void flush() throws IOException
+        {
+            if (out != null) out.flush();
+            if (err != null) err.flush();
+            hand();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (done) return;
+            flush();
+            buf = null;
+            synchronized (ReportWriter.this)
+            {
+                done = true;
+                ReportWriter.this.notifyAll();
+            }
+        }
+
+        // gives the buffered bytes to the writer, waits while too many are waiting unless this part is first;
+        // a full buffer goes as it is, a partial one as a copy so the buffer is kept
+        private void hand() throws IOException
+        {
+            if (len == 0) return;
+            Chunk c;
+            if (len == CHUNK)
+            {
+                c   = new Chunk(channel, buf);
+                buf = null;
+            }
+            else
+            {
+                c = new Chunk(channel, Arrays.copyOf(buf, len));
+            }
+            len = 0;
+            synchronized (ReportWriter.this)
+            {
+                try
+                {
+                    while (waiting >= MAX_BYTES && parts.peekFirst() != this && failed == null)
+                    {
+                        ReportWriter.this.wait();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("report part interrupted");
+                }
+                ready.add(c);
+                waiting += c.buf.length;
+                ReportWriter.this.notifyAll();
+            }
+        }
+
+        private final class Channel extends OutputStream
+        {
+            private final int channel;
+            private final byte[] one = new byte[1];
+
+            Channel(int channel)
+            {
+                this.channel = channel;
+            }
+
+            @Override
+            public void write(int b) throws IOException
+            {
+                one[0] = (byte) b;
+                Part.this.write(channel, one, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                Part.this.write(channel, b, off, len);
+            }
+        }
+    }
+}
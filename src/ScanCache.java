@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/*
+ * On-disk cache of ManualScanner results, one .tok file per distinct source.
+ *
+ * Files are named by a 128-bit hash of the source chars mixed with the
+ * backend name and VERSION, so editing a file or changing the scanner
+ * (bump VERSION) simply misses. That key is not a cryptographic hash, so a
+ * hit is only taken when the file's stored source length and SHA-256 match
+ * the source too; on a mismatch the source is scanned and the entry
+ * rewritten. Hashing is a small cost next to the scan it saves.
+ *
+ * Entries are written to a temp file in the cache directory and renamed
+ * into place, so other processes see either nothing or a whole file; two
+ * processes writing the same key write the same bytes. A hit touches the
+ * file's modified time, which is the LRU order. When the bytes this
+ * instance knows about pass maxBytes the directory is listed and the
+ * oldest files go until it is back under 3/4 of the limit.
+ *
+ * Safe to share between threads.
+ */
+public class ScanCache
+{
+    public static final String BACKEND = "ManualScanner";
+    public static final int    VERSION = 6;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong size      = new AtomicLong();
+    private final AtomicLong hits      = new AtomicLong();
+    private final AtomicLong misses    = new AtomicLong();
+    private final AtomicLong writes    = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // what a scan produced, from the cache or fresh
+    public static class Result
+    {
+        private final TokenBuffer  tokens;
+        private final ErrorHandler errs;
+        private final SymbolTable  syms;
+        private final boolean      hit;
+
+        Result(TokenBuffer tokens, ErrorHandler errs, SymbolTable syms, boolean hit)
+        {
+            this.tokens = tokens;
+            this.errs   = errs;
+            this.syms   = syms;
+            this.hit    = hit;
+        }
+
+        public TokenBuffer  tokens() { return tokens; }
+        public List<Token>  all()    { return tokens.asList(); }
+        public ErrorHandler errs()   { return errs; }
+        public SymbolTable  syms()   { return syms; }
+        public boolean      hit()    { return hit; }
+    }
+
+    public ScanCache(Path dir, long maxBytes) throws IOException
+    {
+        this.dir      = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        size.set(usage());
+    }
+
+    // cached result for src, scans and stores it on a miss
+    public Result scan(String src)
+    {
+        Path file = dir.resolve(key(src) + ".tok");
+
+        Result r = load(file, src);
+        if (r != null)
+        {
+            hits.incrementAndGet();
+            return r;
+        }
+        misses.incrementAndGet();
+
+        ManualScanner s = new ManualScanner(src);
+        TokenBuffer   b = s.buffer();
+        store(file, src, b, s.errs(), s.syms());
+        return new Result(b, s.errs(), s.syms(), false);
+    }
+
+    private Result load(Path file, String src)
+    {
+        try
+        {
+            TokReader rd = new TokReader(file);
+            if (!rd.matches(src)) return null;
+            TokenBuffer b = new TokenBuffer(src).scan(rd);
+            Result r = new Result(b, rd.errors(), rd.symbols(), true);
+            touch(file);
+            return r;
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // unreadable entry, drop it and rescan
+            delete(file);
+            return null;
+        }
+    }
+
+    private void store(Path file, String src, TokenBuffer b, ErrorHandler errs, SymbolTable syms)
+    {
+        Path tmp = null;
+        try
+        {
+            tmp = Files.createTempFile(dir, "tmp-", ".part");
+            new TokWriter(src).scan(b).finish(tmp, errs, syms);
+            long n = Files.size(tmp);
+            try
+            {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            writes.incrementAndGet();
+            if (size.addAndGet(n) > maxBytes) evict();
+        }
+        catch (IOException e)
+        {
+            // a cache that cannot write is just a slower cache
+            System.err.println("ScanCache: could not write " + file + ": " + e.getMessage());
+        }
+        finally
+        {
+            if (tmp != null) delete(tmp);
+        }
+    }
+
+    // drops least recently used entries until under 3/4 of maxBytes
+    private synchronized void evict()
+    {
+        if (size.get() <= maxBytes) return;
+
+        List<Path>     files = new ArrayList<>();
+        List<FileTime> times = new ArrayList<>();
+        List<Long>     sizes = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.tok"))
+        {
+            for (Path p : ds)
+            {
+                try
+                {
+                    times.add(Files.getLastModifiedTime(p));
+                    sizes.add(Files.size(p));
+                    files.add(p);
+                    total += sizes.get(sizes.size() - 1);
+                }
+                catch (IOException e)
+                {
+                    // removed by someone else meanwhile
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            return;
+        }
+
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> times.get(a).compareTo(times.get(b)));
+
+        long target = maxBytes / 4 * 3;
+        for (int i = 0; i < order.length && total > target; i++)
+        {
+            if (delete(files.get(order[i])))
+            {
+                total -= sizes.get(order[i]);
+                evictions.incrementAndGet();
+            }
+        }
+        size.set(total);
+    }
+
+    private long usage() throws IOException
+    {
+        long total = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.tok"))
+        {
+            for (Path p : ds)
+            {
+                try
+                {
+                    total += Files.size(p);
+                }
+                catch (IOException e)
+                {
+                    // gone already
+                }
+            }
+        }
+        return total;
+    }
+
+    private static void touch(Path file)
+    {
+        try
+        {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException e)
+        {
+            // evicted by another process, the result we read is still good
+        }
+    }
+
+    private static boolean delete(Path p)
+    {
+        try
+        {
+            return Files.deleteIfExists(p);
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    // 128-bit hash of the chars, backend and version, as 32 hex digits
+    static String key(String src)
+    {
+        long h1 = 0x9E3779B97F4A7C15L ^ VERSION;
+        long h2 = 0xC2B2AE3D27D4EB4FL ^ BACKEND.hashCode();
+        int  n  = src.length();
+        int  i  = 0;
+        for (; i + 4 <= n; i += 4)
+        {
+            long k = src.charAt(i) | (long) src.charAt(i + 1) << 16
+                   | (long) src.charAt(i + 2) << 32 | (long) src.charAt(i + 3) << 48;
+            h1 = Long.rotateLeft(h1 ^ mix(k), 27) * 0x100000001B3L + 0x52DCE729;
+            h2 = Long.rotateLeft(h2 + k * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+        }
+        for (; i < n; i++)
+        {
+            h1 = (h1 ^ src.charAt(i)) * 0x100000001B3L;
+            h2 = (h2 + src.charAt(i)) * 0x87C37B91114253D5L;
+        }
+        h1 = mix(h1 ^ n);
+        h2 = mix(h2 ^ h1);
+        return String.format("%016x%016x", h1, h2);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    public long hits()      { return hits.get(); }
+    public long misses()    { return misses.get(); }
+    public long evictions() { return evictions.get(); }
+
+    public String stats()
+    {
+        long h = hits.get(), m = misses.get();
+        return String.format("cache: %d hits, %d misses (%.1f%% hit), %d writes, %d evicted, %.1f MB on disk",
+                h, m, (h + m == 0) ? 0.0 : 100.0 * h / (h + m), writes.get(), evictions.get(), size.get() / 1e6);
+    }
+}
@@ -0,0 +1,858 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/*
+ * Writes a scanned file's tokens, symbols and errors in one output format:
+ *
+ *   box     the decorated tables of ScannerDriver.report(), for people
+ *   jsonl   one JSON object per line, a "kind" field says which
+ *   csv     RFC 4180 rows under one header, every row names its file
+ *   bin     length-prefixed frames of varints, see Binary
+ *
+ * The machine formats are Records: they read the packed state the scanner
+ * left behind (a TokenBuffer, a TokenCursor's current token, ErrorHandler
+ * records, SymbolTable entries) and write bytes straight into one reusable
+ * buffer; lexemes are copied char by char out of the source, numbers are
+ * written digit by digit, so no String is built per token, symbol or error.
+ * The buffer goes to the OutputStream whenever it passes BATCH bytes.
+ *
+ * An encoder keeps that buffer, so it is for one thread; header() is
+ * written once before all files, globals() once after them.
+ */
+public abstract class ScanEncoder
+{
+    static final int BATCH = 1 << 15;
+
+    private static final TokenType[]         TYPES = TokenType.values();
+    private static final ErrorHandler.Code[] CODES = ErrorHandler.Code.values();
+
+    // "box", "jsonl", "csv" or "bin"
+    public static ScanEncoder of(String name)
+    {
+        switch (name)
+        {
+            case "box":   return new Box();
+            case "jsonl": return new Jsonl();
+            case "csv":   return new Csv();
+            case "bin":   return new Binary();
+            default:      throw new IllegalArgumentException("unknown format " + name + ", use box, jsonl, csv or bin");
+        }
+    }
+
+    public abstract String name();
+
+    // once, before any file
+    public abstract void header(OutputStream out) throws IOException;
+
+    // one scanned file of chars chars, returns its token count
+    public abstract int encode(OutputStream out, String path, int chars, TokenBuffer tokens, SymbolTable syms, ErrorHandler errs) throws IOException;
+
+    // one file straight off a scanner: drains the cursor, then writes syms and errs it filled
+    public abstract int encode(OutputStream out, String path, CharSequence src, TokenCursor c, SymbolTable syms, ErrorHandler errs) throws IOException;
+
+    // once, after all files
+    public abstract void globals(OutputStream out, SharedSymbolTable g) throws IOException;
+
+
+    // the human-readable tables, as before
+    static final class Box extends ScanEncoder
+    {
+        public String name() { return "box"; }
+
+        public void header(OutputStream out)
+        {
+        }
+
+        public int encode(OutputStream out, String path, int chars, TokenBuffer tokens, SymbolTable syms, ErrorHandler errs)
+        {
+            PrintStream ps = print(out);
+            ScannerDriver.report(ps, ps, tokens, syms, errs);
+            ps.flush();
+            return tokens.size();
+        }
+
+        public int encode(OutputStream out, String path, CharSequence src, TokenCursor c, SymbolTable syms, ErrorHandler errs)
+        {
+            return encode(out, path, src.length(), new TokenBuffer(src).scan(c), syms, errs);
+        }
+
+        public void globals(OutputStream out, SharedSymbolTable g)
+        {
+            PrintStream ps = print(out);
+            g.show(ps);
+            ps.flush();
+        }
+
+        private static PrintStream print(OutputStream out)
+        {
+            return (out instanceof PrintStream) ? (PrintStream) out : new PrintStream(out, false);
+        }
+    }
+
+
+    /*
+     * Formats of one record per token, symbol and error, between a file
+     * record and an end record with the counts.
+     */
+    abstract static class Records extends ScanEncoder
+    {
+        byte[] buf = new byte[BATCH + 1024];
+        int    len;
+
+        private final int[] at = new int[2];    // lexeme range, see TokenBuffer.lexeme()
+
+        abstract void file(String path, int chars);
+        abstract void token(String path, TokenType t, CharSequence s, int from, int to, int off, int len, int ln, int col);
+        abstract void symbol(String path, SymbolTable.Entry e);
+        abstract void error(String path, ErrorHandler.Code code, CharSequence s, int from, int to,
+                            int off, int len, int ln, int col, int reps, int end, int lastLn, int lastCol);
+        abstract void global(SharedSymbolTable.Entry e);
+        abstract void end(String path, int tokens, int symbols, int errors, int kept);
+
+        public void header(OutputStream out) throws IOException
+        {
+        }
+
+        public int encode(OutputStream out, String path, int chars, TokenBuffer tokens, SymbolTable syms, ErrorHandler errs) throws IOException
+        {
+            int n = tokens.size();
+            file(path, chars);
+            for (int i = 0; i < n; i++)
+            {
+                CharSequence s = tokens.lexeme(i, at);
+                token(path, tokens.type(i), s, at[0], at[1], tokens.start(i), tokens.length(i), tokens.line(i), tokens.column(i));
+                if (len >= BATCH) drain(out);
+            }
+            rest(out, path, n, syms, errs);
+            return n;
+        }
+
+        public int encode(OutputStream out, String path, CharSequence src, TokenCursor c, SymbolTable syms, ErrorHandler errs) throws IOException
+        {
+            int n = 0;
+            file(path, src.length());
+            TokenType t;
+            do
+            {
+                t = c.advance();
+                n++;
+                if (t.text() != null)
+                {
+                    token(path, t, t.text(), 0, t.text().length(), c.start(), c.length(), c.line(), c.column());
+                }
+                else if (c.sliced())
+                {
+                    token(path, t, src, c.start(), c.start() + c.length(), c.start(), c.length(), c.line(), c.column());
+                }
+                else
+                {
+                    String s = c.text();
+                    token(path, t, s, 0, s.length(), c.start(), c.length(), c.line(), c.column());
+                }
+                if (len >= BATCH) drain(out);
+            } while (t != TokenType.EOF);
+            rest(out, path, n, syms, errs);
+            return n;
+        }
+
+        // symbols, errors and the end record
+        private void rest(OutputStream out, String path, int tokens, SymbolTable syms, ErrorHandler errs) throws IOException
+        {
+            for (SymbolTable.Entry e : syms.entries())
+            {
+                symbol(path, e);
+                if (len >= BATCH) drain(out);
+            }
+            for (int i = 0; i < errs.kept(); i++)
+            {
+                CharSequence s   = errs.lexeme(i, at);
+                int[]        run = errs.run(i);
+                int          off = errs.off(i);
+                int          n   = errs.len(i);
+                if (run == null) error(path, errs.code(i), s, at[0], at[1], off, n, errs.ln(i), errs.col(i), 1, off + n, errs.ln(i), errs.col(i));
+                else             error(path, errs.code(i), s, at[0], at[1], off, n, errs.ln(i), errs.col(i), run[0], run[1], run[2], run[3]);
+                if (len >= BATCH) drain(out);
+            }
+            end(path, tokens, syms.size(), errs.count(), errs.kept());
+            drain(out);
+        }
+
+        public void globals(OutputStream out, SharedSymbolTable g) throws IOException
+        {
+            for (SharedSymbolTable.Entry e : g.snapshot())
+            {
+                global(e);
+                if (len >= BATCH) drain(out);
+            }
+            drain(out);
+        }
+
+        void drain(OutputStream out) throws IOException
+        {
+            out.write(buf, 0, len);
+            len = 0;
+        }
+
+        // ----- bytes -----
+
+        void u8(int b)
+        {
+            if (len == buf.length) grow(1);
+            buf[len++] = (byte) b;
+        }
+
+        void grow(int n)
+        {
+            byte[] b = new byte[Math.max(buf.length << 1, len + n)];
+            System.arraycopy(buf, 0, b, 0, len);
+            buf = b;
+        }
+
+        // chars known to be ASCII: names, keys, enum constants
+        void ascii(String s)
+        {
+            int n = s.length();
+            if (len + n > buf.length) grow(n);
+            for (int k = 0; k < n; k++) buf[len++] = (byte) s.charAt(k);
+        }
+
+        // decimal, no String
+        void num(int v)
+        {
+            if (v < 0)
+            {
+                if (v == Integer.MIN_VALUE)
+                {
+                    ascii("-2147483648");
+                    return;
+                }
+                u8('-');
+                v = -v;
+            }
+            int digits = 1;
+            for (int p = v; p >= 10; p /= 10) digits++;
+            if (len + digits > buf.length) grow(digits);
+            for (int k = len + digits - 1; k >= len; k--)
+            {
+                buf[k] = (byte) ('0' + v % 10);
+                v /= 10;
+            }
+            len += digits;
+        }
+
+        // the char at k as UTF-8, returns the index after it; a lone surrogate becomes '?' as String.getBytes() does
+        int utf8At(CharSequence s, int k, int to)
+        {
+            char c = s.charAt(k);
+            if (c < 0x80)
+            {
+                u8(c);
+            }
+            else if (c < 0x800)
+            {
+                u8(0xC0 | (c >> 6));
+                u8(0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && k + 1 < to && Character.isLowSurrogate(s.charAt(k + 1)))
+            {
+                int cp = Character.toCodePoint(c, s.charAt(k + 1));
+                u8(0xF0 | (cp >> 18));
+                u8(0x80 | ((cp >> 12) & 0x3F));
+                u8(0x80 | ((cp >> 6) & 0x3F));
+                u8(0x80 | (cp & 0x3F));
+                return k + 2;
+            }
+            else if (Character.isSurrogate(c))
+            {
+                u8('?');
+            }
+            else
+            {
+                u8(0xE0 | (c >> 12));
+                u8(0x80 | ((c >> 6) & 0x3F));
+                u8(0x80 | (c & 0x3F));
+            }
+            return k + 1;
+        }
+
+        void utf8(CharSequence s, int from, int to)
+        {
+            for (int k = from; k < to; ) k = utf8At(s, k, to);
+        }
+
+        void utf8(String s)
+        {
+            utf8(s, 0, s.length());
+        }
+    }
+
+
+    /*
+     *   {"kind":"file","path":"a.lang","chars":120}
+     *   {"kind":"token","type":"IDENTIFIER","text":"Count","line":3,"col":5,"off":17,"len":5}
+     *   {"kind":"symbol","name":"Count","type":"unknown","scope":"global","line":3,"depth":0,"uses":2,"firstLine":3,"firstCol":5}
+     *   {"kind":"error","code":"BAD_CHAR","type":"Invalid Character","text":"@","line":7,"col":2,"off":80,"len":1,"repeats":1}
+     *   {"kind":"end","path":"a.lang","tokens":31,"symbols":4,"errors":1,"kept":1}
+     *
+     * An error that repeats has "end", "lastLine" and "lastCol" as well.
+     * A symbol's type and root scope are what the scanner gave it: "unknown"
+     * and "global" from ManualScanner, "N/A" and "Global" from Yylex. After
+     * all files, one {"kind":"global",...} per name of a SharedSymbolTable.
+     */
+    static final class Jsonl extends Records
+    {
+        public String name() { return "jsonl"; }
+
+        void file(String path, int chars)
+        {
+            ascii("{\"kind\":\"file\",\"path\":");
+            str(path, 0, path.length());
+            ascii(",\"chars\":");
+            num(chars);
+            ascii("}\n");
+        }
+
+        void token(String path, TokenType t, CharSequence s, int from, int to, int off, int n, int ln, int col)
+        {
+            ascii("{\"kind\":\"token\",\"type\":\"");
+            ascii(t.name());
+            ascii("\",\"text\":");
+            str(s, from, to);
+            ascii(",\"line\":");
+            num(ln);
+            ascii(",\"col\":");
+            num(col);
+            ascii(",\"off\":");
+            num(off);
+            ascii(",\"len\":");
+            num(n);
+            ascii("}\n");
+        }
+
+        void symbol(String path, SymbolTable.Entry e)
+        {
+            ascii("{\"kind\":\"symbol\",\"name\":");
+            str(e.name());
+            ascii(",\"type\":");
+            str(e.type());
+            ascii(",\"scope\":");
+            str(e.scope());
+            ascii(",\"line\":");
+            num(e.ln());
+            ascii(",\"depth\":");
+            num(e.depth());
+            ascii(",\"uses\":");
+            num(e.uses());
+            ascii(",\"firstLine\":");
+            num(e.firstLn());
+            ascii(",\"firstCol\":");
+            num(e.firstCol());
+            ascii("}\n");
+        }
+
+        void error(String path, ErrorHandler.Code code, CharSequence s, int from, int to,
+                   int off, int n, int ln, int col, int reps, int end, int lastLn, int lastCol)
+        {
+            ascii("{\"kind\":\"error\",\"code\":\"");
+            ascii(code.name());
+            ascii("\",\"type\":");
+            str(code.type());
+            ascii(",\"text\":");
+            str(s, from, to);
+            ascii(",\"line\":");
+            num(ln);
+            ascii(",\"col\":");
+            num(col);
+            ascii(",\"off\":");
+            num(off);
+            ascii(",\"len\":");
+            num(n);
+            ascii(",\"repeats\":");
+            num(reps);
+            if (reps > 1)
+            {
+                ascii(",\"end\":");
+                num(end);
+                ascii(",\"lastLine\":");
+                num(lastLn);
+                ascii(",\"lastCol\":");
+                num(lastCol);
+            }
+            ascii("}\n");
+        }
+
+        void global(SharedSymbolTable.Entry e)
+        {
+            ascii("{\"kind\":\"global\",\"name\":");
+            str(e.name());
+            ascii(",\"type\":");
+            str(e.type());
+            ascii(",\"path\":");
+            str(e.file());
+            ascii(",\"line\":");
+            num(e.ln());
+            ascii("}\n");
+        }
+
+        void end(String path, int tokens, int symbols, int errors, int kept)
+        {
+            ascii("{\"kind\":\"end\",\"path\":");
+            str(path, 0, path.length());
+            ascii(",\"tokens\":");
+            num(tokens);
+            ascii(",\"symbols\":");
+            num(symbols);
+            ascii(",\"errors\":");
+            num(errors);
+            ascii(",\"kept\":");
+            num(kept);
+            ascii("}\n");
+        }
+
+        private void str(String s)
+        {
+            if (s == null) ascii("null");
+            else           str(s, 0, s.length());
+        }
+
+        // a JSON string, escaped
+        private void str(CharSequence s, int from, int to)
+        {
+            u8('"');
+            for (int k = from; k < to; )
+            {
+                char c = s.charAt(k);
+                if (c == '"' || c == '\\')
+                {
+                    u8('\\');
+                    u8(c);
+                    k++;
+                }
+                else if (c < 0x20)
+                {
+                    u8('\\');
+                    switch (c)
+                    {
+                        case '\n': u8('n'); break;
+                        case '\r': u8('r'); break;
+                        case '\t': u8('t'); break;
+                        default:
+                            ascii("u00");
+                            u8(HEX[c >> 4]);
+                            u8(HEX[c & 0xF]);
+                            break;
+                    }
+                    k++;
+                }
+                else if (Character.isSurrogate(c) && !(Character.isHighSurrogate(c) && k + 1 < to && Character.isLowSurrogate(s.charAt(k + 1))))
+                {
+                    // keeps a lone surrogate as the escape JSON allows for it
+                    ascii("\\u");
+                    u8(HEX[c >> 12]);
+                    u8(HEX[(c >> 8) & 0xF]);
+                    u8(HEX[(c >> 4) & 0xF]);
+                    u8(HEX[c & 0xF]);
+                    k++;
+                }
+                else
+                {
+                    k = utf8At(s, k, to);
+                }
+            }
+            u8('"');
+        }
+
+        private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+    }
+
+
+    /*
+     *   kind,path,type,text,line,col,off,len,scope,depth,count
+     *
+     * token:  type is the TokenType, text the lexeme
+     * symbol: text is the name, type its type, count its uses
+     * error:  type is the Code, text the lexeme, count its repeats
+     * global: path is the declaring file, text the name
+     * file and end rows carry the path; in an end row len is the token
+     * count, count the error count. Fields are quoted only when they hold
+     * a comma, quote or line break; rows end in CRLF.
+     */
+    static final class Csv extends Records
+    {
+        public String name() { return "csv"; }
+
+        public void header(OutputStream out) throws IOException
+        {
+            ascii("kind,path,type,text,line,col,off,len,scope,depth,count\r\n");
+            drain(out);
+        }
+
+        void file(String path, int chars)
+        {
+            ascii("file,");
+            str(path, 0, path.length());
+            ascii(",,,,,,");
+            num(chars);
+            ascii(",,,\r\n");
+        }
+
+        void token(String path, TokenType t, CharSequence s, int from, int to, int off, int n, int ln, int col)
+        {
+            ascii("token,");
+            str(path, 0, path.length());
+            u8(',');
+            ascii(t.name());
+            u8(',');
+            str(s, from, to);
+            u8(',');
+            num(ln);
+            u8(',');
+            num(col);
+            u8(',');
+            num(off);
+            u8(',');
+            num(n);
+            ascii(",,,\r\n");
+        }
+
+        void symbol(String path, SymbolTable.Entry e)
+        {
+            ascii("symbol,");
+            str(path, 0, path.length());
+            u8(',');
+            str(e.type());
+            u8(',');
+            str(e.name());
+            u8(',');
+            num(e.ln());
+            ascii(",,,,");
+            str(e.scope());
+            u8(',');
+            num(e.depth());
+            u8(',');
+            num(e.uses());
+            ascii("\r\n");
+        }
+
+        void error(String path, ErrorHandler.Code code, CharSequence s, int from, int to,
+                   int off, int n, int ln, int col, int reps, int end, int lastLn, int lastCol)
+        {
+            ascii("error,");
+            str(path, 0, path.length());
+            u8(',');
+            ascii(code.name());
+            u8(',');
+            str(s, from, to);
+            u8(',');
+            num(ln);
+            u8(',');
+            num(col);
+            u8(',');
+            num(off);
+            u8(',');
+            num(n);
+            ascii(",,,");
+            num(reps);
+            ascii("\r\n");
+        }
+
+        void global(SharedSymbolTable.Entry e)
+        {
+            ascii("global,");
+            str(e.file());
+            u8(',');
+            str(e.type());
+            u8(',');
+            str(e.name());
+            u8(',');
+            num(e.ln());
+            ascii(",,,,,,\r\n");
+        }
+
+        void end(String path, int tokens, int symbols, int errors, int kept)
+        {
+            ascii("end,");
+            str(path, 0, path.length());
+            ascii(",,,,,,");
+            num(tokens);
+            ascii(",,,");
+            num(errors);
+            ascii("\r\n");
+        }
+
+        private void str(String s)
+        {
+            if (s != null) str(s, 0, s.length());
+        }
+
+        // a field, quoted with doubled quotes if it needs it
+        private void str(CharSequence s, int from, int to)
+        {
+            boolean quote = false;
+            for (int k = from; k < to && !quote; k++)
+            {
+                char c = s.charAt(k);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote)
+            {
+                utf8(s, from, to);
+                return;
+            }
+            u8('"');
+            for (int k = from; k < to; )
+            {
+                if (s.charAt(k) == '"') u8('"');
+                k = utf8At(s, k, to);
+            }
+            u8('"');
+        }
+    }
+
+
+    /*
+     * Frames, little endian varints, strings as varint byte count + UTF-8:
+     *
+     *   header  "TKS" 1, varint n + n type names, varint m + m code names
+     *   frame   u8 kind, varint payload bytes, payload
+     *
+     *   1 file    str path, varint chars + 1 (0 if not known)
+     *   2 token   u8 type, varint off, len, line, col, str text if the type has no fixed text
+     *   3 symbol  str name, type, scope, varint line, depth, uses, first line, first col
+     *   4 error   u8 code, varint off, len, line, col, str text, varint repeats,
+     *             then if repeats > 1 varint end, last line, last col
+     *   5 global  str name, type, path, varint line
+     *   6 end     varint tokens, symbols, errors, kept
+     *
+     * Types and codes are by their index in the header's lists, so a reader
+     * does not depend on this build's enum order; an unknown kind is skipped
+     * by its length.
+     */
+    static final class Binary extends Records
+    {
+        static final byte[] MAGIC = { 'T', 'K', 'S', 1 };
+
+        static final int FILE = 1, TOKEN = 2, SYMBOL = 3, ERROR = 4, GLOBAL = 5, END = 6;
+
+        public String name() { return "bin"; }
+
+        public void header(OutputStream out) throws IOException
+        {
+            for (byte b : MAGIC) u8(b);
+            varint(TYPES.length);
+            for (TokenType t : TYPES) str(t.name());
+            varint(CODES.length);
+            for (ErrorHandler.Code c : CODES) str(c.name());
+            drain(out);
+        }
+
+        void file(String path, int chars)
+        {
+            int m = frame(FILE);
+            str(path);
+            varint(chars + 1);
+            close(m);
+        }
+
+        void token(String path, TokenType t, CharSequence s, int from, int to, int off, int n, int ln, int col)
+        {
+            int m = frame(TOKEN);
+            u8(t.ordinal());
+            varint(off);
+            varint(n);
+            varint(ln);
+            varint(col);
+            if (t.text() == null) str(s, from, to);
+            close(m);
+        }
+
+        void symbol(String path, SymbolTable.Entry e)
+        {
+            int m = frame(SYMBOL);
+            str(e.name());
+            str(e.type());
+            str(e.scope());
+            varint(e.ln());
+            varint(e.depth());
+            varint(e.uses());
+            varint(e.firstLn());
+            varint(e.firstCol());
+            close(m);
+        }
+
+        void error(String path, ErrorHandler.Code code, CharSequence s, int from, int to,
+                   int off, int n, int ln, int col, int reps, int end, int lastLn, int lastCol)
+        {
+            int m = frame(ERROR);
+            u8(code.ordinal());
+            varint(off);
+            varint(n);
+            varint(ln);
+            varint(col);
+            str(s, from, to);
+            varint(reps);
+            if (reps > 1)
+            {
+                varint(end);
+                varint(lastLn);
+                varint(lastCol);
+            }
+            close(m);
+        }
+
+        void global(SharedSymbolTable.Entry e)
+        {
+            int m = frame(GLOBAL);
+            str(e.name());
+            str(e.type());
+            str(e.file());
+            varint(e.ln());
+            close(m);
+        }
+
+        void end(String path, int tokens, int symbols, int errors, int kept)
+        {
+            int m = frame(END);
+            varint(tokens);
+            varint(symbols);
+            varint(errors);
+            varint(kept);
+            close(m);
+        }
+
+        private void varint(int v)
+        {
+            while ((v & ~0x7F) != 0)
+            {
+                u8((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            u8(v);
+        }
+
+        // starts a frame, returns where its length goes
+        private int frame(int kind)
+        {
+            u8(kind);
+            u8(0);
+            return len - 1;
+        }
+
+        // writes the length of what follows mark as a varint at mark, moving it up if that takes more than a byte
+        private void close(int mark)
+        {
+            int n     = len - mark - 1;
+            int extra = 0;
+            for (int v = n >>> 7; v != 0; v >>>= 7) extra++;
+            if (extra > 0)
+            {
+                if (len + extra > buf.length) grow(extra);
+                System.arraycopy(buf, mark + 1, buf, mark + 1 + extra, n);
+                len += extra;
+            }
+            int at = mark;
+            int v  = n;
+            while ((v & ~0x7F) != 0)
+            {
+                buf[at++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[at] = (byte) v;
+        }
+
+        private void str(String s)
+        {
+            if (s == null) s = "";
+            str(s, 0, s.length());
+        }
+
+        private void str(CharSequence s, int from, int to)
+        {
+            u8(0);
+            int m = len - 1;
+            utf8(s, from, to);
+            close(m);
+        }
+    }
+
+    // java ScanEncoder [file...]   self-check
+    //
+    // Each file (a generated program with errors if none) is written in every
+    // format three ways: straight off a ManualScanner, from the TokenBuffer a
+    // ScanCache miss scans, and from the one a hit reads back. All three must
+    // be the same bytes, as BatchDriver's output must not depend on -c.
+    public static void main(String[] args) throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        List<String> srcs  = new ArrayList<>();
+        for (String a : args)
+        {
+            names.add(a);
+            srcs.add(new String(Files.readAllBytes(Paths.get(a))));
+        }
+        if (srcs.isEmpty())
+        {
+            names.add("program");
+            srcs.add(new CorpusGen(1).errors(0.05).generate(64 << 10));
+        }
+
+        Path dir = Files.createTempDirectory("encoder");
+        int  bad = 0;
+        try
+        {
+            ScanCache cache = new ScanCache(dir, Long.MAX_VALUE);
+            for (int k = 0; k < srcs.size(); k++)
+            {
+                String             src  = srcs.get(k);
+                ScanCache.Result[] both = { cache.scan(src), cache.scan(src) };     // a miss, then a hit
+                for (String f : new String[] { "box", "jsonl", "csv", "bin" })
+                {
+                    ManualScanner m = new ManualScanner(src);
+                    byte[] fresh = write(f, names.get(k), src.length(), null, m, src, m.syms(), m.errs());
+                    for (ScanCache.Result r : both)
+                    {
+                        byte[] cached = write(f, names.get(k), src.length(), r.tokens(), null, src, r.syms(), r.errs());
+                        if (!Arrays.equals(fresh, cached))
+                        {
+                            System.err.printf("%s: %s from a cache %s differs from a plain scan%n",
+                                    names.get(k), f, r.hit() ? "hit" : "miss");
+                            bad++;
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+            {
+                for (Path p : files) Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+        if (bad > 0) System.exit(1);
+        System.out.println("encoders ok");
+    }
+
+    // one file in format f, from tokens if set, else drained from c
+    private static byte[] write(String f, String path, int chars, TokenBuffer tokens, TokenCursor c,
+                                String src, SymbolTable syms, ErrorHandler errs) throws IOException
+    {
+        ScanEncoder           enc = of(f);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        enc.header(out);
+        if (tokens != null) enc.encode(out, path, chars, tokens, syms, errs);
+        else                enc.encode(out, path, src, c, syms, errs);
+        return out.toByteArray();
+    }
+}
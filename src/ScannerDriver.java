@@ -2,63 +2,21 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 
 public class ScannerDriver 
 {
+    private static final String NL    = System.lineSeparator();
+    private static final int    BATCH = 8192;
 
-    /*
-     * A PrintStream that writes to two underlying OutputStreams simultaneously.
-     * Used to send output to both console and file at the same time.
-     */
-    private static class TeeStream extends PrintStream 
+    // scans one file into its report part, out and err as the console would split them
+    private static void scanFile(String filePath, ReportWriter.Part part) 
     {
-        private final PrintStream second;
-
-        public TeeStream(PrintStream main, PrintStream second) 
-        {
-            super(main, true);
-            this.second = second;
-        }
-
-        @Override
-        public void write(byte[] buf, int off, int len) 
-        {
-            super.write(buf, off, len);
-            second.write(buf, off, len);
-            second.flush();
-        }
-
-        @Override
-        public void write(int b) 
-        {
-            super.write(b);
-            second.write(b);
-            second.flush();
-        }
-
-        @Override
-        public void flush() 
-        {
-            super.flush();
-            second.flush();
-        }
-
-        @Override
-        public void close() 
-        {
-            super.close();
-            second.close();
-        }
-    }
-
-
-    private static void scanFile(String filePath) 
-    {
-        System.out.println("\n--- Running " + filePath + " ---");
+        PrintStream out = part.out();
+        PrintStream err = part.err();
+        out.println("\n--- Running " + filePath + " ---");
 
         String source;
         try 
@@ -67,47 +25,54 @@ public class ScannerDriver
         } 
         catch (IOException e) 
         {
-            System.out.println("Error: Could not read file: " + filePath);
-            System.out.println(e.getMessage());
+            out.println("Error: Could not read file: " + filePath);
+            out.println(e.getMessage());
             return;
         }
 
         try 
         {
             Yylex scanner = new Yylex(new StringReader(source));
-            List<Token> tokens = new ArrayList<>();
-
-            Token t;
-            do 
-            {
-                t = scanner.yylex();
-                tokens.add(t);
-            } while (t.type() != TokenType.EOF);
+            TokenBuffer tokens = new TokenBuffer(source).scan(scanner);
+            report(out, err, tokens, scanner.syms(), scanner.errs());
+        } 
+        catch (UncheckedIOException e) 
+        {
+            out.println("Scanner I/O error: " + e.getCause().getMessage());
+        }
+    }
 
-            // ----- Token Stream -----
-            System.out.println("||============================================================|| ");
-            System.out.println("||                        TOKEN STREAM                        || ");
-            System.out.println("||============================================================|| ");
 
-            for (Token tok : tokens) 
+    // token stream, symbol table and errors of one scanned file
+    static void report(PrintStream out, PrintStream err, TokenBuffer tokens, SymbolTable syms, ErrorHandler errs) 
+    {
+        // ----- Token Stream -----
+        out.println("||============================================================|| ");
+        out.println("||                        TOKEN STREAM                        || ");
+        out.println("||============================================================|| ");
+
+        // lines are batched, one print per few KB instead of a Token and a print per line
+        StringBuilder lines = new StringBuilder(BATCH + 256);
+        for (int i = 0; i < tokens.size(); i++) 
+        {
+            tokens.format(i, lines.append("  ")).append(NL);
+            if (lines.length() >= BATCH)
             {
-                System.out.println("  " + tok);
+                out.append(lines);
+                lines.setLength(0);
             }
+        }
+        out.append(lines);
 
-            System.out.println("||============================================================|| ");
-            System.out.printf("||  Total tokens: %-45d\u2551%n", tokens.size());
-            System.out.println("||============================================================|| ");
+        out.println("||============================================================|| ");
+        out.printf("||  Total tokens: %-45d\u2551%n", tokens.size());
+        out.println("||============================================================|| ");
 
-            // ----- Symbol Table (uses System.out internally
-            scanner.syms().show();
+        // ----- Symbol Table
+        syms.show(out);
 
-            // ----- Errors (uses System.err internally
-            scanner.errs().show();
-        } 
-        catch (IOException e) 
-        {
-            System.out.println("Scanner I/O error: " + e.getMessage());
-        }
+        // ----- Errors (table goes to err)
+        errs.show(out, err);
     }
 
 
@@ -124,41 +89,36 @@ public class ScannerDriver
             testsDir + "/test5.lang"
         };
 
-        // Save original streams
-        PrintStream origOut = System.out;
-        PrintStream origErr = System.err;
-
-        try (PrintStream fileStream = new PrintStream(
-                    Files.newOutputStream(Paths.get(outputFile)))) 
+        try (OutputStream fileStream = Files.newOutputStream(Paths.get(outputFile))) 
         {
-            // Redirect both System.out and System.err through tee streams
-            // so everything goes to console + file
-            TeeStream teeOut = new TeeStream(origOut, fileStream);
-            TeeStream teeErr = new TeeStream(origErr, fileStream);
-
-            System.setOut(teeOut);
-            System.setErr(teeErr);
+            // stdout and stderr as before, and everything in order to the file;
+            // the writer thread does all the writing, a flush per file
+            ReportWriter w = new ReportWriter()
+                    .to(System.out, ReportWriter.OUT)
+                    .to(System.err, ReportWriter.ERR)
+                    .to(fileStream);
 
             for (String testFile : testFiles) 
             {
-                scanFile(testFile);
+                try (ReportWriter.Part part = w.part())
+                {
+                    scanFile(testFile, part);
+                }
             }
 
-            System.out.println();
-            System.out.println("=== ALL TESTS COMPLETE ===");
-            System.out.println("Results written to " + outputFile);
+            try (ReportWriter.Part part = w.part())
+            {
+                part.out().println();
+                part.out().println("=== ALL TESTS COMPLETE ===");
+                part.out().println("Results written to " + outputFile);
+            }
+            w.close();
         } 
         catch (IOException e) 
         {
-            origErr.println("Error: Could not write output file: " + outputFile);
-            origErr.println(e.getMessage());
+            System.err.println("Error: Could not write output file: " + outputFile);
+            System.err.println(e.getMessage());
             System.exit(1);
         } 
-        finally 
-        {
-            // Restore original streams
-            System.setOut(origOut);
-            System.setErr(origErr);
-        }
     }
 }
\ No newline at end of file
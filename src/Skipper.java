@@ -0,0 +1,131 @@
+/*
+ * Bulk search for the ends of whitespace runs and comments, used by
+ * ManualScanner to skip trivia a block at a time instead of char by char.
+ * Every method searches [from, to) and returns an absolute index.
+ *
+ * The String versions serve string mode and lean on String.indexOf, which
+ * the JIT already compiles to SIMD code. The char[] versions serve the
+ * windows of a CharStream ring. They are scalar here; when the
+ * jdk.incubator.vector module is present (java --add-modules
+ * jdk.incubator.vector) and VectorSkipper from src/vector is on the
+ * classpath, INSTANCE overrides them with Vector API code.
+ * Run with -Dscanner.scalar=true to force the scalar one.
+ */
+public class Skipper 
+{
+    public static final Skipper INSTANCE = load();
+
+    // first index not in ' ' \t \r \n, to if the whole window is blank
+    public int blank(char[] a, int from, int to) 
+    {
+        int i = from;
+        while (i < to) 
+        {
+            char c = a[i];
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') break;
+            i++;
+        }
+        return i;
+    }
+
+    // index of the next '\n', to if there is none
+    public int lineEnd(char[] a, int from, int to) 
+    {
+        int i = from;
+        while (i < to && a[i] != '\n') i++;
+        return i;
+    }
+
+    // index of the '|' of the next "|#", to - 1 if no pair fits in the window
+    public int blockEnd(char[] a, int from, int to) 
+    {
+        int i = from;
+        while (i < to - 1) 
+        {
+            if (a[i] == '|' && a[i + 1] == '#') return i;
+            i++;
+        }
+        return Math.max(from, to - 1);
+    }
+
+    // number of '\n' in [from, to)
+    public int breaks(char[] a, int from, int to) 
+    {
+        int n = 0;
+        for (int i = from; i < to; i++) 
+        {
+            if (a[i] == '\n') n++;
+        }
+        return n;
+    }
+
+    // index of the last '\n' in [from, to), -1 if none
+    public int lastBreak(char[] a, int from, int to) 
+    {
+        for (int i = to - 1; i >= from; i--) 
+        {
+            if (a[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    public int blank(String s, int from, int to) 
+    {
+        int i = from;
+        while (i < to) 
+        {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') break;
+            i++;
+        }
+        return i;
+    }
+
+    public int lineEnd(String s, int from, int to) 
+    {
+        int i = s.indexOf('\n', from);
+        return (i < 0 || i > to) ? to : i;
+    }
+
+    public int blockEnd(String s, int from, int to) 
+    {
+        int i = s.indexOf("|#", from);
+        return (i < 0 || i + 1 >= to) ? Math.max(from, to - 1) : i;
+    }
+
+    public int breaks(String s, int from, int to) 
+    {
+        int n = 0;
+        for (int i = s.indexOf('\n', from); i >= 0 && i < to; i = s.indexOf('\n', i + 1)) 
+        {
+            n++;
+        }
+        return n;
+    }
+
+    public int lastBreak(String s, int from, int to) 
+    {
+        if (to <= from) return -1;
+        int i = s.lastIndexOf('\n', to - 1);
+        return (i >= from) ? i : -1;
+    }
+
+    public String name() 
+    {
+        return "scalar";
+    }
+
+    private static Skipper load() 
+    {
+        if (Boolean.getBoolean("scanner.scalar")) return new Skipper();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return new Skipper();
+        try 
+        {
+            return (Skipper) Class.forName("VectorSkipper").getDeclaredConstructor().newInstance();
+        } 
+        catch (ReflectiveOperationException | LinkageError e) 
+        {
+            return new Skipper();
+        }
+    }
+}
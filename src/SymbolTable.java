@@ -1,7 +1,35 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 
+/*
+ * Identifiers by scope. The root scope is open from the start, enter() and
+ * exit() push and pop nested ones, and lookups go innermost first, so a
+ * name declared again in a block shadows the outer one until the block ends.
+ *
+ * Every distinct name gets an id once, in an open addressing table that is
+ * probed straight from (chars, off, len) without building a String. Each
+ * name id holds the innermost visible entry, which links to the one it
+ * shadows. Declaring in a scope logs the name id; exit() walks back only
+ * that scope's log, so entering and leaving a block costs O(its names) and
+ * the table never shrinks or rehashes on scope changes.
+ *
+ * follow() tracks scopes from a token stream: { and } open and close blocks,
+ * except that the block after start is the program body and so the root,
+ * "function Name (params) :" opens a scope named after the function that
+ * holds the params and lasts for the body, and the name after declare is
+ * declared in the current scope even if an outer one has it. A block keeps
+ * only the line of its {, the "block@<line>" name is built when an entry's
+ * scope is first asked for.
+ *
+ * Every ident() is also recorded as a use of the entry it resolved to, in
+ * a per-entry byte array of varint (line delta, column or column delta)
+ * pairs, which is about two bytes a use.
+ */
 public class SymbolTable 
 {
 
@@ -9,8 +37,19 @@ public class SymbolTable
     {
         private String name;
         private String type;
-        private String scope;
+        private String scope;      // null for a block until scope() names it
+        private int    block;      // line of the { that opened a block scope, else 0
         private int    ln;
+        private int    depth;      // 0 is the root scope
+        private Entry  shadows;    // outer entry of the same name, hidden by this one
+
+        private byte[] occ = NONE; // uses: varint line - last line, then the column,
+        private int    occLen;     // or its distance from the last one on the same line
+        private int    uses;
+        private int    firstLn;
+        private int    firstCol;
+        private int    lastLn;
+        private int    lastCol;
 
         public Entry(String name, String type, String scope, int ln) 
         {
@@ -20,72 +59,644 @@ public class SymbolTable
             this.ln    = ln;
         }
 
-        public String name()  { return name;  }
-        public String type()  { return type;  }
-        public String scope() { return scope; }
-        public int    ln()    { return ln;    }
+        public String name()    { return name;    }
+        public String type()    { return type;    }
+        public int    ln()      { return ln;      }
+        public int    depth()   { return depth;   }
+        public Entry  shadows() { return shadows; }
+
+        public String scope() 
+        {
+            if (scope == null && block > 0) scope = "block@" + block;
+            return scope;
+        }
 
         public void setType(String t)  { this.type  = t; }
-        public void setScope(String s) { this.scope = s; }
+        public void setScope(String s) { this.scope = s; this.block = 0; }
+
+        // ----- uses -----
+
+        // 0 for all four when there are no uses
+        public int uses()     { return uses;     }
+        public int firstLn()  { return firstLn;  }
+        public int firstCol() { return firstCol; }
+        public int lastLn()   { return lastLn;   }
+        public int lastCol()  { return lastCol;  }
+
+        // line and column of every use, as line0, col0, line1, col1, ...
+        public int[] occurrences() 
+        {
+            return decode(occ, uses);
+        }
+
+        // uses coded as use() writes them, back to line and column pairs
+        static int[] decode(byte[] occ, int uses) 
+        {
+            int[] out = new int[uses * 2];
+            int   at  = 0;
+            for (int i = 0; i < out.length; i++)
+            {
+                int v = 0, shift = 0, b;
+                do
+                {
+                    b = occ[at++];
+                    v |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                out[i] = v;
+            }
+            int l = 0, c = 0;
+            for (int i = 0; i < out.length; i += 2)
+            {
+                c = (out[i] == 0) ? c + out[i + 1] : out[i + 1];
+                l += out[i];
+                out[i]     = l;
+                out[i + 1] = c;
+            }
+            return out;
+        }
+
+        // lines that use the name, each once
+        public int[] lines() 
+        {
+            int[] occ = occurrences();
+            int[] out = new int[uses];
+            int   n   = 0;
+            for (int i = 0; i < occ.length; i += 2)
+            {
+                if (n == 0 || out[n - 1] != occ[i]) out[n++] = occ[i];
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        // appends a use, uses come in source order so the deltas stay small
+        void use(int line, int col) 
+        {
+            int d = line - lastLn;
+            if (occLen + 10 > occ.length) occ = Arrays.copyOf(occ, Math.max(8, occ.length << 1));
+            occLen  = varint(occ, occLen, d);
+            occLen  = varint(occ, occLen, (d == 0) ? col - lastCol : col);
+            lastLn  = line;
+            lastCol = col;
+            if (uses++ == 0)
+            {
+                firstLn  = line;
+                firstCol = col;
+            }
+        }
+
+        byte[] occBytes()  { return occ;    }
+        int    occLength() { return occLen; }
+
+        void setUses(byte[] b, int len, int n) 
+        {
+            occ    = b;
+            occLen = len;
+            uses   = n;
+            if (n == 0) return;
+            int[] all = occurrences();
+            firstLn  = all[0];
+            firstCol = all[1];
+            lastLn   = all[2 * n - 2];
+            lastCol  = all[2 * n - 1];
+        }
+
+        private static int varint(byte[] b, int at, int v) 
+        {
+            while ((v & ~0x7F) != 0)
+            {
+                b[at++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            b[at++] = (byte) v;
+            return at;
+        }
 
         @Override
         public String toString() 
         {
-            return String.format("%-20s %-12s %-12s %d", name, type, scope, ln);
+            return String.format("%-20s %-12s %-12s %d", name, type, scope(), ln);
         }
     }
 
-    private Map<String, Entry> tbl;
+    private static final byte[] NONE = new byte[0];
+
+    // what follow() expects next
+    private static final int PLAIN    = 0;
+    private static final int DECLARE  = 1;   // after declare
+    private static final int FN_NAME  = 2;   // after function
+    private static final int FN_OPEN  = 3;   // after the function name
+    private static final int PARAMS   = 4;   // inside the parameter list
+    private static final int FN_COLON = 5;   // after the parameter list
+    private static final int FN_BODY  = 6;   // after the colon
+    private static final int START    = 7;   // after start
+
+    private final List<Entry> order = new ArrayList<>();   // entries in insertion order
+
+    // name ids
+    private int[]    slots  = new int[64];    // name id + 1, 0 is empty
+    private String[] names  = new String[32];
+    private int[]    hashes = new int[32];
+    private Entry[]  heads  = new Entry[32];  // innermost visible entry
+    private Entry[]  firsts = new Entry[32];  // first entry ever added
+    private int      count;
+
+    // scope stack
+    private String[] scopes = new String[16];   // null for a block, named by blocks[]
+    private int[]    blocks = new int[16];      // line of a block's {
+    private int[]    marks  = new int[16];    // log size when the scope was entered
+    private int      depth;
+    private int[]    log    = new int[64];    // name ids declared, innermost last
+    private int      logLen;
+
+    // follow() state
+    private int      state;
+    private String   fnName;
+    private int      lastId;                  // name id of the last ident()
+    private int      inlineDepth = -1;        // scope of a function whose body has no braces
 
     public SymbolTable() 
     {
-        tbl = new HashMap<>();
+        this("global");
+    }
+
+    public SymbolTable(String root) 
+    {
+        scopes[0] = root;
+    }
+
+    // ----- scopes -----
+
+    public void enter(String scope) 
+    {
+        enter(scope, 0);
     }
 
-    // add new id, first wins
-    public boolean add(String name, String type, String scope, int ln) 
+    // a block opened by { on line ln, named "block@ln" only when someone asks
+    private void enter(String scope, int ln) 
     {
-        if (tbl.containsKey(name)) 
+        if (++depth == scopes.length)
         {
-            return false;
+            scopes = Arrays.copyOf(scopes, depth << 1);
+            blocks = Arrays.copyOf(blocks, depth << 1);
+            marks  = Arrays.copyOf(marks, depth << 1);
         }
-        tbl.put(name, new Entry(name, type, scope, ln));
+        scopes[depth] = scope;
+        blocks[depth] = ln;
+        marks[depth]  = logLen;
+    }
+
+    // closes the innermost scope, false at the root
+    public boolean exit() 
+    {
+        if (depth == 0) return false;
+        int mark = marks[depth];
+        while (logLen > mark)
+        {
+            int id = log[--logLen];
+            heads[id] = heads[id].shadows;
+        }
+        scopes[depth--] = null;
         return true;
     }
 
-    // find by name
+    public int    depth() { return depth; }
+    public String scope() 
+    {
+        return (blocks[depth] > 0) ? "block@" + blocks[depth] : scopes[depth];
+    }
+
+    // ----- lookups -----
+
+    // innermost visible entry, null if none
+    public Entry resolve(String name) 
+    {
+        int id = find(name, null, null, 0, name.length(), name.hashCode());
+        return (id < 0) ? null : heads[id];
+    }
+
+    public Entry resolve(CharSequence src, int off, int len) 
+    {
+        int id = find(null, src, null, off, len, hash(src, null, off, len));
+        return (id < 0) ? null : heads[id];
+    }
+
+    public Entry resolve(char[] buf, int off, int len) 
+    {
+        int id = find(null, null, buf, off, len, hash(null, buf, off, len));
+        return (id < 0) ? null : heads[id];
+    }
+
+    // visible entry by name, else the first one ever added
     public Entry find(String name) 
     {
-        return tbl.get(name);
+        int id = find(name, null, null, 0, name.length(), name.hashCode());
+        if (id < 0) return null;
+        return (heads[id] != null) ? heads[id] : firsts[id];
+    }
+
+    // ----- adding -----
+
+    // declares in the current scope, shadowing outer ones; false if already there
+    public boolean declare(String name, String type, int ln) 
+    {
+        return declare(intern(name, null, null, 0, name.length(), name.hashCode()), type, ln);
+    }
+
+    public boolean declare(CharSequence src, int off, int len, String type, int ln) 
+    {
+        return declare(intern(null, src, null, off, len, hash(src, null, off, len)), type, ln);
+    }
+
+    public boolean declare(char[] buf, int off, int len, String type, int ln) 
+    {
+        return declare(intern(null, null, buf, off, len, hash(null, buf, off, len)), type, ln);
+    }
+
+    // a use: adds to the current scope unless some scope already has it
+    public boolean add(String name, String type, int ln) 
+    {
+        return add(intern(name, null, null, 0, name.length(), name.hashCode()), type, ln);
+    }
+
+    // add src[off, off+len), only allocates the first time a name is seen
+    public boolean add(CharSequence src, int off, int len, String type, int ln) 
+    {
+        return add(intern(null, src, null, off, len, hash(src, null, off, len)), type, ln);
+    }
+
+    public boolean add(char[] buf, int off, int len, String type, int ln) 
+    {
+        return add(intern(null, null, buf, off, len, hash(null, buf, off, len)), type, ln);
+    }
+
+    // identifier in a token stream: declared or used depending on what came before,
+    // and recorded as a use of whichever entry it ends up naming
+    public boolean ident(CharSequence src, int off, int len, String type, int ln, int col) 
+    {
+        return ident(intern(null, src, null, off, len, hash(src, null, off, len)), type, ln, col);
+    }
+
+    public boolean ident(char[] buf, int off, int len, String type, int ln, int col) 
+    {
+        return ident(intern(null, null, buf, off, len, hash(null, buf, off, len)), type, ln, col);
+    }
+
+    private boolean ident(int id, String type, int ln, int col) 
+    {
+        lastId = id;
+        boolean decl  = state == DECLARE || state == FN_NAME || state == PARAMS;
+        boolean added = decl ? declare(id, type, ln) : add(id, type, ln);
+        heads[id].use(ln, col);
+        return added;
+    }
+
+    // appends an entry of a finished table, e.g. one read back from disk;
+    // only root entries are visible afterwards
+    public Entry restore(String name, String type, String scope, int depth, int ln) 
+    {
+        int   id = intern(name, null, null, 0, name.length(), name.hashCode());
+        Entry e  = new Entry(names[id], type, scope, ln);
+        e.depth  = depth;
+        if (firsts[id] == null) firsts[id] = e;
+        if (depth == 0 && heads[id] == null) heads[id] = e;
+        order.add(e);
+        return e;
+    }
+
+    private boolean add(int id, String type, int ln) 
+    {
+        if (heads[id] != null) return false;
+        return declare(id, type, ln);
+    }
+
+    private boolean declare(int id, String type, int ln) 
+    {
+        Entry h = heads[id];
+        if (h != null && h.depth == depth) return false;
+
+        Entry e   = new Entry(names[id], type, scopes[depth], ln);
+        e.block   = blocks[depth];
+        e.depth   = depth;
+        e.shadows = h;
+        heads[id] = e;
+        if (firsts[id] == null) firsts[id] = e;
+        order.add(e);
+
+        if (depth > 0)
+        {
+            if (logLen == log.length) log = Arrays.copyOf(log, logLen << 1);
+            log[logLen++] = id;
+        }
+        return true;
+    }
+
+    // ----- token stream -----
+
+    // moves the scope stack along; call once per token, after ident() for identifiers
+    public void follow(TokenType t, int ln) 
+    {
+        switch (state)
+        {
+            case FN_NAME:
+                if (t == TokenType.IDENTIFIER)
+                {
+                    fnName = names[lastId];
+                    state  = FN_OPEN;
+                    return;
+                }
+                break;
+            case FN_OPEN:
+                if (t == TokenType.LPAREN)
+                {
+                    enter(fnName);
+                    state = PARAMS;
+                    return;
+                }
+                break;
+            case PARAMS:
+                if (t == TokenType.IDENTIFIER || t == TokenType.COMMA) return;
+                state = (t == TokenType.RPAREN) ? FN_COLON : PLAIN;
+                if (state == FN_COLON) return;
+                exit();
+                break;
+            case FN_COLON:
+                if (t == TokenType.COLON)
+                {
+                    state = FN_BODY;
+                    return;
+                }
+                exit();
+                break;
+            case FN_BODY:
+                state = PLAIN;
+                // a braced body lives in the function's scope and its } closes it
+                if (t == TokenType.LBRACE) return;
+                inlineDepth = depth;
+                break;
+            case START:
+                state = PLAIN;
+                // the program body is the root scope, its } finds nothing to close
+                if (t == TokenType.LBRACE && depth == 0) return;
+                break;
+            default:
+                break;
+        }
+
+        state = PLAIN;
+        switch (t)
+        {
+            case START:    state = START;   break;
+            case DECLARE:  state = DECLARE; break;
+            case FUNCTION: state = FN_NAME; break;
+            case LBRACE:   enter(null, ln); break;
+            case RBRACE:
+                exit();
+                if (depth == inlineDepth - 1) inlineDepth = -1;
+                if (depth == inlineDepth) endInline();
+                break;
+            case SEMICOLON:
+                if (depth == inlineDepth) endInline();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void endInline() 
+    {
+        inlineDepth = -1;
+        exit();
+    }
+
+    // ----- name ids -----
+
+    private static int hash(CharSequence src, char[] buf, int off, int len) 
+    {
+        int h = 0;
+        if (buf != null)
+        {
+            for (int i = 0; i < len; i++) h = 31 * h + buf[off + i];
+        }
+        else
+        {
+            for (int i = 0; i < len; i++) h = 31 * h + src.charAt(off + i);
+        }
+        return h;
+    }
+
+    // id of the name, -1 if never seen; exactly one of name, src, buf is set
+    private int find(String name, CharSequence src, char[] buf, int off, int len, int h) 
+    {
+        int mask = slots.length - 1;
+        for (int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask)
+        {
+            int s = slots[i];
+            if (s == 0) return -1;
+            int id = s - 1;
+            if (hashes[id] == h && same(names[id], name, src, buf, off, len)) return id;
+        }
+    }
+
+    private int intern(String name, CharSequence src, char[] buf, int off, int len, int h) 
+    {
+        int mask = slots.length - 1;
+        int i    = (h ^ (h >>> 16)) & mask;
+        for (; slots[i] != 0; i = (i + 1) & mask)
+        {
+            int id = slots[i] - 1;
+            if (hashes[id] == h && same(names[id], name, src, buf, off, len)) return id;
+        }
+
+        if (name == null)
+        {
+            name = (buf != null) ? new String(buf, off, len) : src.subSequence(off, off + len).toString();
+        }
+        if (count == names.length)
+        {
+            names  = Arrays.copyOf(names, count << 1);
+            hashes = Arrays.copyOf(hashes, count << 1);
+            heads  = Arrays.copyOf(heads, count << 1);
+            firsts = Arrays.copyOf(firsts, count << 1);
+        }
+        names[count]  = name;
+        hashes[count] = h;
+        slots[i]      = ++count;
+        if (count * 2 > slots.length) grow();
+        return count - 1;
+    }
+
+    // doubles the slots, kept at most half full
+    private void grow() 
+    {
+        slots = new int[slots.length << 1];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++)
+        {
+            int h = hashes[id];
+            int i = (h ^ (h >>> 16)) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+
+    private static boolean same(String k, String name, CharSequence src, char[] buf, int off, int len) 
+    {
+        if (name != null) return k.equals(name);
+        if (k.length() != len) return false;
+        if (buf != null)
+        {
+            for (int i = 0; i < len; i++)
+            {
+                if (k.charAt(i) != buf[off + i]) return false;
+            }
+            return true;
+        }
+        for (int i = 0; i < len; i++)
+        {
+            if (k.charAt(i) != src.charAt(off + i)) return false;
+        }
+        return true;
+    }
+
+    // ----- listing -----
+
+    // entries in the order they were added
+    public List<Entry> entries() 
+    {
+        return Collections.unmodifiableList(order);
     }
 
     // prints table
     public void show() 
     {
-        System.out.println("\n||============================================================||");
-        System.out.println("||                        SYMBOL TABLE                        ||");
-        System.out.println("||============================================================||");
-        System.out.printf("|| %-20s %-12s %-12s %-6s ||%n", "Name", "Type", "Scope", "Line");
-        System.out.println("||============================================================||");
+        show(System.out);
+    }
+
+    public void show(PrintStream out) 
+    {
+        out.println("\n||============================================================||");
+        out.println("||                        SYMBOL TABLE                        ||");
+        out.println("||============================================================||");
+        out.printf("|| %-20s %-12s %-12s %-6s ||%n", "Name", "Type", "Scope", "Line");
+        out.println("||============================================================||");
 
-        if (tbl.isEmpty()) 
+        if (order.isEmpty())
         {
-            System.out.println("||                     (empty table)                          ||");
-        } 
-        else 
-        {            
-            for (Entry e : tbl.values()) 
+            out.println("||                     (empty table)                          ||");
+        }
+        else
+        {
+            // the "|| %-20s %-12s %-12s %-6d ||" rows padded by hand, printf is most of a report
+            String        nl = System.lineSeparator();
+            StringBuilder sb = new StringBuilder(8192 + 256);
+            for (Entry e : order)
             {
-                System.out.printf("|| %-20s %-12s %-12s %-6d ||%n",
-                        e.name(), e.type(), e.scope(), e.ln());
+                sb.append("|| ");
+                pad(sb, e.name(), 20).append(' ');
+                pad(sb, e.type(), 12).append(' ');
+                pad(sb, e.scope(), 12).append(' ');
+                pad(sb, Integer.toString(e.ln()), 6).append(" ||").append(nl);
+                if (sb.length() >= 8192)
+                {
+                    out.append(sb);
+                    sb.setLength(0);
+                }
             }
+            out.append(sb);
         }
 
-        System.out.println("||============================================================||");
+        out.println("||============================================================||");
     }
 
     public int size() 
     {
-        return tbl.size();
+        return order.size();
+    }
+
+    // s left-justified in width columns, as %-<width>s
+    private static StringBuilder pad(StringBuilder sb, String s, int width) 
+    {
+        String t = String.valueOf(s);
+        sb.append(t);
+        for (int k = t.length(); k < width; k++) sb.append(' ');
+        return sb;
+    }
+
+    // java SymbolTable   self-check
+    //
+    // A small program must give the listing below: start's block is the root,
+    // a function's params and braced body share its scope, a redeclared name
+    // shadows the outer one only inside its block, and uses land on the entry
+    // visible at the time. Then 10,000 nested blocks are entered and left
+    // through follow() and probed by (char[], off, len), which in steady state
+    // must not allocate.
+    public static void main(String[] args) 
+    {
+        String src = "start\n{\n    declare Xa = 1;\n    function Fn(Xa, Yb) :\n    {\n        declare Zc = Xa;\n    }\n"
+                   + "    loop (Xa < 2)\n    {\n        declare Xa = 2;\n        Yb = Xa;\n    }\n    Xa = 3;\n}\n";
+        String[] want = {
+            "Xa global 0 [3, 8, 13]",
+            "Fn global 0 [4]",
+            "Xa Fn 1 [4, 6]",
+            "Yb Fn 1 [4]",
+            "Zc Fn 1 [6]",
+            "Xa block@9 1 [10, 11]",
+            "Yb block@9 1 [11]",
+        };
+        ManualScanner s = new ManualScanner(src);
+        s.all();
+        List<String> got = new ArrayList<>();
+        for (Entry e : s.syms().entries())
+        {
+            got.add(e.name() + " " + e.scope() + " " + e.depth() + " " + Arrays.toString(e.lines()));
+        }
+        int bad = 0;
+        if (!got.equals(Arrays.asList(want)))
+        {
+            System.err.println("scopes: got " + got + ", want " + Arrays.asList(want));
+            bad++;
+        }
+
+        SymbolTable t    = new SymbolTable();
+        char[]      name = "Ab".toCharArray();
+        t.declare(name, 0, 2, "unknown", 1);
+        long bytes = 0;
+        for (int round = 0; round < 3; round++)
+        {
+            long before = allocated();
+            for (int i = 0; i < 10_000; i++) t.follow(TokenType.LBRACE, i + 2);
+            for (int i = 0; i < 10_000; i++)
+            {
+                if (t.resolve(name, 0, 2) == null) bad++;
+                t.follow(TokenType.RBRACE, i + 2);
+            }
+            bytes = allocated() - before;
+        }
+        if (t.depth() != 0 || t.size() != 1)
+        {
+            System.err.println("nesting: depth " + t.depth() + ", " + t.size() + " entries after closing every block");
+            bad++;
+        }
+        t.follow(TokenType.LBRACE, 77);
+        if (!"block@77".equals(t.scope()))
+        {
+            System.err.println("nesting: open block is " + t.scope());
+            bad++;
+        }
+        if (bytes > 1024)
+        {
+            System.err.println("nesting: 10,000 blocks allocated " + bytes + " bytes");
+            bad++;
+        }
+        if (bad > 0) System.exit(1);
+        System.out.println("scopes ok");
+    }
+
+    // bytes this thread has allocated so far
+    private static long allocated() 
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
     }
 }
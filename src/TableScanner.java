@@ -0,0 +1,504 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Table-driven version of the ManualScanner1 state machine.
+ * Chars are mapped to classes (byte table for ASCII, CharClass fallback
+ * above it), the DFA is a byte[] state x class transition matrix and each
+ * state has an accept action. next() runs one tight longest-match loop and
+ * produces the same token stream as ManualScanner1.
+ */
+public class TableScanner implements TokenCursor
+{
+    // ----- char classes -----
+    private static final int C_OTHER  = 0;
+    private static final int C_WS     = 1;   // ' ' \t \r
+    private static final int C_NL     = 2;
+    private static final int C_PUNCT  = 3;   // , ; : ( ) [ ] { }
+    private static final int C_LETTER = 4;
+    private static final int C_E      = 5;   // e E
+    private static final int C_ESC    = 6;   // n t r  (letters that are escapes)
+    private static final int C_US     = 7;   // _
+    private static final int C_DIGIT  = 8;
+    private static final int C_DOT    = 9;
+    private static final int C_PLUS   = 10;
+    private static final int C_MINUS  = 11;
+    private static final int C_STAR   = 12;
+    private static final int C_SLASH  = 13;
+    private static final int C_PCT    = 14;
+    private static final int C_EQ     = 15;
+    private static final int C_BANG   = 16;
+    private static final int C_LT     = 17;
+    private static final int C_GT     = 18;
+    private static final int C_AMP    = 19;
+    private static final int C_PIPE   = 20;
+    private static final int C_HASH   = 21;
+    private static final int C_DQ     = 22;
+    private static final int C_SQ     = 23;
+    private static final int C_BSL    = 24;
+    private static final int C_EOF    = 25;
+    private static final int NC       = 26;
+
+    // ----- states, transitions are filled in by build() -----
+    private static final int S_START = 0,  S_WS = 1,  S_PUNCT = 2, S_ID = 3, S_ERR1 = 4;
+    private static final int S_PLUS = 5,   S_MINUS = 6, S_INC = 7, S_PLUS_EQ = 8, S_DEC = 9, S_MINUS_EQ = 10;
+    private static final int S_INT = 11,   S_DOT = 12, S_FRAC = 13, S_EXP = 14, S_EXP_SIGN = 15, S_EXP_DIG = 16;
+    private static final int S_STAR = 17,  S_POW = 18, S_STAR_EQ = 19, S_SLASH = 20, S_SLASH_EQ = 21, S_PCT = 22;
+    private static final int S_EQ = 23,    S_EQEQ = 24, S_BANG = 25, S_NE = 26, S_LT = 27, S_LE = 28;
+    private static final int S_GT = 29,    S_GE = 30, S_AMP = 31, S_AND = 32, S_PIPE = 33, S_OR = 34;
+    private static final int S_HASH = 35,  S_LCMT = 36, S_LCMT_END = 37, S_CMT = 38, S_CMT_P = 39, S_CMT_END = 40;
+    private static final int S_STR = 41,   S_STR_ESC = 42, S_STR_END = 43, S_STRB = 44, S_STRB_ESC = 45, S_STRB_END = 46;
+    private static final int S_CH = 47,    S_CH_EMPTY = 48, S_CH_ESC = 49, S_CH1 = 50, S_CH_END = 51;
+    private static final int S_CH_REC = 52, S_CH_REC_END = 53;
+    private static final int NS = 54;
+
+    // ----- accept actions, >= 0 is a TokenType ordinal -----
+    private static final int A_NONE     = -1;   // not accepting, back up to last accept
+    private static final int A_SKIP     = -2;   // whitespace / comment
+    private static final int A_PUNCT    = -3;   // type from the char
+    private static final int A_WORD     = -4;   // keyword / bool / identifier rules
+    private static final int A_FLOAT    = -5;   // FLOAT unless > 6 decimals
+    private static final int A_CMT      = -6;   // unclosed #| comment
+    private static final int A_CMT_EOF  = -7;   // same, ManualScanner1 steps one past EOF here
+
+    private static final byte[] CLASS  = new byte[128];
+    private static final byte[] TRANS  = new byte[NS * NC];
+    private static final int[]  ACCEPT = new int[NS];
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    static
+    {
+        build();
+    }
+
+    private String input;
+    private int    pos;
+    private int    line;
+    private int    column;
+    private int    startPos;
+    private int    startLine;
+    private int    startCol;
+
+    private TokenType tokType;
+    private String    errText;
+
+    public TableScanner(String input)
+    {
+        this.input  = input;
+        this.pos    = 0;
+        this.line   = 1;
+        this.column = 1;
+    }
+
+    private static int classOf(char c)
+    {
+        if (c < 128) return CLASS[c];
+        if (CharClass.isLetter(c)) return C_LETTER;
+        if (CharClass.isDigit(c))  return C_DIGIT;
+        return C_OTHER;
+    }
+
+    public TokenType advance()
+    {
+        final String src = input;
+        final int    end = src.length();
+
+        while (true)
+        {
+            startPos  = pos;
+            startLine = line;
+            startCol  = column;
+            errText   = null;
+
+            if (pos >= end)
+            {
+                return tokType = TokenType.EOF;
+            }
+
+            int state    = S_START;
+            int lastAct  = A_NONE;
+            int lastPos  = pos;
+            int lastLine = line;
+            int lastCol  = column;
+
+            while (true)
+            {
+                int cls  = (pos < end) ? classOf(src.charAt(pos)) : C_EOF;
+                int next = TRANS[state * NC + cls];
+                if (next < 0) break;
+
+                pos++;
+                column++;
+                if (cls == C_NL)
+                {
+                    line++;
+                    column = 1;
+                }
+                state = next;
+
+                int act = ACCEPT[state];
+                if (act != A_NONE)
+                {
+                    lastAct  = act;
+                    lastPos  = pos;
+                    lastLine = line;
+                    lastCol  = column;
+                }
+            }
+
+            int act = ACCEPT[state];
+            if (act == A_NONE)
+            {
+                pos    = lastPos;
+                line   = lastLine;
+                column = lastCol;
+                act    = lastAct;
+            }
+
+            TokenType t = finish(act);
+            if (t != null)
+            {
+                return tokType = t;
+            }
+        }
+    }
+
+    // turns an accept action into a type, null for skipped text
+    private TokenType finish(int act)
+    {
+        if (act >= 0) return TYPES[act];
+
+        switch (act)
+        {
+            case A_SKIP:
+                return null;
+            case A_PUNCT:
+                return punct(input.charAt(startPos));
+            case A_WORD:
+                return word();
+            case A_FLOAT:
+                return decimals() > 6 ? TokenType.ERROR : TokenType.FLOAT;
+            case A_CMT_EOF:
+                pos++;
+                column++;
+                errText = commentText();
+                return TokenType.ERROR;
+            case A_CMT:
+                errText = commentText();
+                return TokenType.ERROR;
+            default:
+                return TokenType.ERROR;
+        }
+    }
+
+    private TokenType word()
+    {
+        int len = pos - startPos;
+        TokenType kw = Keywords.match(input, startPos, len);
+        if (kw != null) return kw;
+
+        if (!CharClass.isUpperCase(input.charAt(startPos))) return TokenType.ERROR;
+        for (int i = startPos + 1; i < pos; i++)
+        {
+            char ch = input.charAt(i);
+            if (!CharClass.isIdTail(ch)) return TokenType.ERROR;
+        }
+        if (len > 31) return TokenType.ERROR;
+        return TokenType.IDENTIFIER;
+    }
+
+    // digits between '.' and the exponent (or end)
+    private int decimals()
+    {
+        int dot = input.indexOf('.', startPos);
+        int i   = dot + 1;
+        while (i < pos && input.charAt(i) != 'e' && input.charAt(i) != 'E') i++;
+        return i - dot - 1;
+    }
+
+    private static TokenType punct(char c)
+    {
+        switch (c)
+        {
+            case ',': return TokenType.COMMA;
+            case ';': return TokenType.SEMICOLON;
+            case ':': return TokenType.COLON;
+            case '(': return TokenType.LPAREN;
+            case ')': return TokenType.RPAREN;
+            case '[': return TokenType.LBRACKET;
+            case ']': return TokenType.RBRACKET;
+            case '{': return TokenType.LBRACE;
+            default:  return TokenType.RBRACE;
+        }
+    }
+
+    // text ManualScanner1 collects for an unclosed #| comment: a '|' run
+    // and the char right after it are dropped unless the run starts it
+    private String commentText()
+    {
+        StringBuilder sb = new StringBuilder("#|");
+        boolean pipe = false;
+        int end = Math.min(pos, input.length());
+        for (int i = startPos + 2; i < end; i++)
+        {
+            char c = input.charAt(i);
+            if (pipe)
+            {
+                if (c != '|') pipe = false;
+                continue;
+            }
+            sb.append(c);
+            if (c == '|') pipe = true;
+        }
+        return sb.toString();
+    }
+
+    public TokenType type()   { return tokType; }
+    public int       start()  { return startPos; }
+    public int       length() { return tokType == TokenType.EOF ? 0 : pos - startPos; }
+    public int       line()   { return startLine; }
+    public int       column() { return startCol; }
+
+    public boolean sliced()
+    {
+        return tokType != TokenType.EOF && errText == null;
+    }
+
+    public String text()
+    {
+        if (errText != null) return errText;
+        if (tokType.text() != null) return tokType.text();
+        return input.substring(startPos, pos);
+    }
+
+    public Token next()
+    {
+        TokenType t = advance();
+        if (errText != null) return new Token(t, errText, startLine, startCol);
+        return new Token(t, input, startPos, length(), startLine, startCol);
+    }
+
+    public TokenBuffer buffer()
+    {
+        return new TokenBuffer(input).scan(this);
+    }
+
+    public List<Token> all()
+    {
+        return buffer().asList();
+    }
+
+    // ----- table construction -----
+
+    private static void cls(int c, char... cs)
+    {
+        for (char ch : cs) CLASS[ch] = (byte) c;
+    }
+
+    private static void on(int from, int to, int... classes)
+    {
+        for (int c : classes) TRANS[from * NC + c] = (byte) to;
+    }
+
+    // every class but EOF and the listed ones
+    private static void otherwise(int from, int to, int... except)
+    {
+        outer:
+        for (int c = 0; c < C_EOF; c++)
+        {
+            for (int e : except) if (e == c) continue outer;
+            TRANS[from * NC + c] = (byte) to;
+        }
+    }
+
+    private static void accept(int state, TokenType t)
+    {
+        ACCEPT[state] = t.ordinal();
+    }
+
+    private static void build()
+    {
+        for (int c = 0; c < 128; c++)
+        {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) CLASS[c] = C_LETTER;
+            else if (c >= '0' && c <= '9') CLASS[c] = C_DIGIT;
+            else CLASS[c] = C_OTHER;
+        }
+        cls(C_WS, ' ', '\t', '\r');
+        cls(C_NL, '\n');
+        cls(C_PUNCT, ',', ';', ':', '(', ')', '[', ']', '{', '}');
+        cls(C_E, 'e', 'E');
+        cls(C_ESC, 'n', 't', 'r');
+        cls(C_US, '_');
+        cls(C_DOT, '.');
+        cls(C_PLUS, '+');   cls(C_MINUS, '-'); cls(C_STAR, '*');  cls(C_SLASH, '/');
+        cls(C_PCT, '%');    cls(C_EQ, '=');    cls(C_BANG, '!');  cls(C_LT, '<');
+        cls(C_GT, '>');     cls(C_AMP, '&');   cls(C_PIPE, '|');  cls(C_HASH, '#');
+        cls(C_DQ, '"');     cls(C_SQ, '\'');   cls(C_BSL, '\\');
+
+        Arrays.fill(TRANS, (byte) -1);
+        Arrays.fill(ACCEPT, TokenType.ERROR.ordinal());
+
+        // start
+        otherwise(S_START, S_ERR1);
+        on(S_START, S_WS,    C_WS, C_NL);
+        on(S_START, S_PUNCT, C_PUNCT);
+        on(S_START, S_ID,    C_LETTER, C_E, C_ESC);
+        on(S_START, S_INT,   C_DIGIT);
+        on(S_START, S_PLUS,  C_PLUS);
+        on(S_START, S_MINUS, C_MINUS);
+        on(S_START, S_STAR,  C_STAR);
+        on(S_START, S_SLASH, C_SLASH);
+        on(S_START, S_PCT,   C_PCT);
+        on(S_START, S_EQ,    C_EQ);
+        on(S_START, S_BANG,  C_BANG);
+        on(S_START, S_LT,    C_LT);
+        on(S_START, S_GT,    C_GT);
+        on(S_START, S_AMP,   C_AMP);
+        on(S_START, S_PIPE,  C_PIPE);
+        on(S_START, S_HASH,  C_HASH);
+        on(S_START, S_STR,   C_DQ);
+        on(S_START, S_CH,    C_SQ);
+        ACCEPT[S_START] = A_NONE;
+
+        on(S_WS, S_WS, C_WS, C_NL);
+        ACCEPT[S_WS] = A_SKIP;
+        ACCEPT[S_PUNCT] = A_PUNCT;
+
+        on(S_ID, S_ID, C_LETTER, C_E, C_ESC, C_DIGIT, C_US);
+        ACCEPT[S_ID] = A_WORD;
+
+        // signs, numbers
+        on(S_PLUS,  S_INT, C_DIGIT);  on(S_PLUS,  S_INC, C_PLUS);   on(S_PLUS,  S_PLUS_EQ,  C_EQ);
+        on(S_MINUS, S_INT, C_DIGIT);  on(S_MINUS, S_DEC, C_MINUS);  on(S_MINUS, S_MINUS_EQ, C_EQ);
+        accept(S_PLUS, TokenType.PLUS);   accept(S_INC, TokenType.INCREMENT); accept(S_PLUS_EQ,  TokenType.PLUS_ASSIGN);
+        accept(S_MINUS, TokenType.MINUS); accept(S_DEC, TokenType.DECREMENT); accept(S_MINUS_EQ, TokenType.MINUS_ASSIGN);
+
+        on(S_INT, S_INT, C_DIGIT);
+        on(S_INT, S_DOT, C_DOT);
+        on(S_DOT, S_FRAC, C_DIGIT);
+        on(S_FRAC, S_FRAC, C_DIGIT);
+        on(S_FRAC, S_EXP, C_E);
+        on(S_EXP, S_EXP_SIGN, C_PLUS, C_MINUS);
+        on(S_EXP, S_EXP_DIG, C_DIGIT);
+        on(S_EXP_SIGN, S_EXP_DIG, C_DIGIT);
+        on(S_EXP_DIG, S_EXP_DIG, C_DIGIT);
+        accept(S_INT, TokenType.INTEGER);
+        ACCEPT[S_DOT]     = A_NONE;
+        ACCEPT[S_FRAC]    = A_FLOAT;
+        ACCEPT[S_EXP_DIG] = A_FLOAT;
+
+        // operators
+        on(S_STAR, S_POW, C_STAR);  on(S_STAR, S_STAR_EQ, C_EQ);
+        on(S_SLASH, S_SLASH_EQ, C_EQ);
+        on(S_EQ, S_EQEQ, C_EQ);
+        on(S_BANG, S_NE, C_EQ);
+        on(S_LT, S_LE, C_EQ);
+        on(S_GT, S_GE, C_EQ);
+        on(S_AMP, S_AND, C_AMP);
+        on(S_PIPE, S_OR, C_PIPE);
+        accept(S_STAR, TokenType.MULTIPLY);  accept(S_POW, TokenType.POWER);      accept(S_STAR_EQ, TokenType.MULT_ASSIGN);
+        accept(S_SLASH, TokenType.DIVIDE);   accept(S_SLASH_EQ, TokenType.DIV_ASSIGN);
+        accept(S_PCT, TokenType.MODULO);
+        accept(S_EQ, TokenType.ASSIGN);      accept(S_EQEQ, TokenType.EQUAL);
+        accept(S_BANG, TokenType.LOGICAL_NOT); accept(S_NE, TokenType.NOT_EQUAL);
+        accept(S_LT, TokenType.LESS_THAN);   accept(S_LE, TokenType.LESS_EQUAL);
+        accept(S_GT, TokenType.GREATER_THAN); accept(S_GE, TokenType.GREATER_EQUAL);
+        accept(S_AND, TokenType.LOGICAL_AND);
+        accept(S_OR, TokenType.LOGICAL_OR);
+
+        // comments
+        on(S_HASH, S_CMT, C_PIPE);
+        on(S_HASH, S_LCMT, C_HASH);
+        otherwise(S_LCMT, S_LCMT, C_NL);
+        on(S_LCMT, S_LCMT_END, C_NL);
+        ACCEPT[S_LCMT]     = A_SKIP;
+        ACCEPT[S_LCMT_END] = A_SKIP;
+        otherwise(S_CMT, S_CMT, C_PIPE);
+        on(S_CMT, S_CMT_P, C_PIPE);
+        otherwise(S_CMT_P, S_CMT);
+        on(S_CMT_P, S_CMT_P, C_PIPE);
+        on(S_CMT_P, S_CMT_END, C_HASH);
+        ACCEPT[S_CMT]     = A_CMT;
+        ACCEPT[S_CMT_P]   = A_CMT_EOF;
+        ACCEPT[S_CMT_END] = A_SKIP;
+
+        // strings, the B states remember a bad escape
+        otherwise(S_STR, S_STR, C_NL, C_BSL, C_DQ);
+        on(S_STR, S_STR_ESC, C_BSL);
+        on(S_STR, S_STR_END, C_DQ);
+        otherwise(S_STR_ESC, S_STRB);
+        on(S_STR_ESC, S_STR, C_DQ, C_BSL, C_ESC);
+        otherwise(S_STRB, S_STRB, C_NL, C_BSL, C_DQ);
+        on(S_STRB, S_STRB_ESC, C_BSL);
+        on(S_STRB, S_STRB_END, C_DQ);
+        otherwise(S_STRB_ESC, S_STRB);
+        accept(S_STR_END, TokenType.STRING);
+
+        // chars
+        otherwise(S_CH, S_CH1, C_NL, C_SQ, C_BSL);
+        on(S_CH, S_CH_EMPTY, C_SQ);
+        on(S_CH, S_CH_ESC, C_BSL);
+        otherwise(S_CH_ESC, S_CH1);
+        otherwise(S_CH1, S_CH_REC, C_NL, C_SQ);
+        on(S_CH1, S_CH_END, C_SQ);
+        otherwise(S_CH_REC, S_CH_REC, C_NL, C_SQ);
+        on(S_CH_REC, S_CH_REC_END, C_SQ);
+        accept(S_CH_END, TokenType.CHAR);
+    }
+
+    // throughput comparison: java TableScanner <file> [reps]
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: java TableScanner <file> [reps]");
+            System.exit(1);
+        }
+
+        String src;
+        try
+        {
+            src = new String(Files.readAllBytes(Paths.get(args[0])));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not read file: " + args[0]);
+            System.exit(1);
+            return;
+        }
+        int reps = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        if (!new ManualScanner1(src).all().toString().equals(new TableScanner(src).all().toString()))
+        {
+            System.err.println("Token streams differ from ManualScanner1");
+            System.exit(1);
+        }
+
+        for (int round = 0; round < 2; round++)
+        {
+            long tA = 0, tB = 0, n = 0;
+            for (int r = 0; r < reps; r++)
+            {
+                long t0 = System.nanoTime();
+                ManualScanner1 a = new ManualScanner1(src);
+                while (a.advance() != TokenType.EOF) n++;
+                long t1 = System.nanoTime();
+                TableScanner b = new TableScanner(src);
+                while (b.advance() != TokenType.EOF) { }
+                long t2 = System.nanoTime();
+                tA += t1 - t0;
+                tB += t2 - t1;
+            }
+            String tag = (round == 0) ? "warmup" : "measured";
+            System.out.printf("%-9s ManualScanner1: %8.1f Mtok/s  %7.1f MB/s%n", tag,
+                    n * 1e3 / tA, (double) src.length() * reps * 1e3 / tA);
+            System.out.printf("%-9s TableScanner:   %8.1f Mtok/s  %7.1f MB/s%n", tag,
+                    n * 1e3 / tB, (double) src.length() * reps * 1e3 / tB);
+        }
+    }
+}
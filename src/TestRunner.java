@@ -3,6 +3,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.io.PrintStream;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -21,22 +22,26 @@ public class TestRunner
  private static final String OUT_FILE = "TestResults.txt";
     public static void main(String[] args) 
     {
-        PrintStream file = null;
+        OutputStream file = null;
 
         try 
         {
-            file = new PrintStream(new FileOutputStream(OUT_FILE));
+            file = new FileOutputStream(OUT_FILE);
         } 
         catch (IOException e) 
         {
             System.err.println("cant open " + OUT_FILE);
             System.exit(1);
         }
-        
+
+        // one println per line, the writer thread copies it to console and file
+        ReportWriter w = new ReportWriter().to(System.out, ReportWriter.OUT).to(file);
         for (String path : FILES) 
         {
+            ReportWriter.Part part = w.part();
+            PrintStream       out  = part.out();
             String hdr = "--- Running " + path + " ---";
-            both(System.out, file, "\n" + hdr);
+            out.println("\n" + hdr);
 
             String src;
             try 
@@ -46,8 +51,9 @@ public class TestRunner
             catch (IOException e) 
             {
                 String msg = "  ERROR: cant read " + path + " - " + e.getMessage();
-                both(System.out, file, msg);
-                both(System.out, file, "");
+                out.println(msg);
+                out.println("");
+                close(part);
                 continue;
             }
 
@@ -56,24 +62,24 @@ public class TestRunner
             ManualScanner1 s2 = new ManualScanner1(src);
             List<Token> tokens = s2.all();
 
-                both(System.out, file, "||============================================================||");
-                both(System.out, file, "||                        TOKEN STREAM                        ||");
-                both(System.out, file, "||============================================================||");
+                out.println("||============================================================||");
+                out.println("||                        TOKEN STREAM                        ||");
+                out.println("||============================================================||");
 
                 for (Token t : tokens) 
                 {
-                    both(System.out, file, "  " + t);
+                    out.println("  " + t);
                 }
-                both(System.out, file, "||============================================================||");
-                both(System.out, file, String.format("||  Total tokens: %-45d||", tokens.size()));
-                both(System.out, file, "||============================================================||");
+                out.println("||============================================================||");
+                out.println(String.format("||  Total tokens: %-45d||", tokens.size()));
+                out.println("||============================================================||");
 
-                both(System.out, file, "");
-                both(System.out, file, "||============================================================||");
-                both(System.out, file, "||                        SYMBOL TABLE                        ||");
-                both(System.out, file, "||============================================================||");
-                both(System.out, file, String.format("|| %-20s %-12s %-12s %-6s ||", "Name", "Type", "Scope", "Line"));
-                both(System.out, file, "||============================================================||");
+                out.println("");
+                out.println("||============================================================||");
+                out.println("||                        SYMBOL TABLE                        ||");
+                out.println("||============================================================||");
+                out.println(String.format("|| %-20s %-12s %-12s %-6s ||", "Name", "Type", "Scope", "Line"));
+                out.println("||============================================================||");
 
                 List<Token> ids = tokens.stream()
                     .filter(t -> t.type() == TokenType.IDENTIFIER)
@@ -81,64 +87,82 @@ public class TestRunner
 
                 if (ids.isEmpty()) 
                 {
-                    both(System.out, file, "||                     (empty table)                          ||");
+                    out.println("||                     (empty table)                          ||");
                 } 
                 else 
                 {
                     for (Token t : ids) 
                     {
-                        both(System.out, file, String.format("|| %-20s %-12s %-12s %-6d ||",
+                        out.println(String.format("|| %-20s %-12s %-12s %-6d ||",
                                 t.lex(), "N/A", "Global", t.ln()));
                     }
                 }
-                both(System.out, file, "||============================================================||");
+                out.println("||============================================================||");
 
                 // errors
-                both(System.out, file, "");
+                out.println("");
                 List<Token> errTokens = tokens.stream()
                     .filter(t -> t.type() == TokenType.ERROR)
                     .collect(Collectors.toList());
 
                 if (errTokens.isEmpty()) 
                 {
-                    both(System.out, file, "[ErrorHandler] No lexical errors detected.");
+                    out.println("[ErrorHandler] No lexical errors detected.");
                 } 
                 else 
                 {
-                    both(System.out, file, "||============================================================||");
-                    both(System.out, file, "||                     LEXICAL ERRORS                         ||");
-                    both(System.out, file, "||============================================================||");
+                    out.println("||============================================================||");
+                    out.println("||                     LEXICAL ERRORS                         ||");
+                    out.println("||============================================================||");
 
                     for (Token e : errTokens) 
                     {
-                        both(System.out, file, "||  " + e);
+                        out.println("||  " + e);
                     }
 
-                    both(System.out, file, "||============================================================||");
-                    both(System.out, file, String.format("||  Total errors: %-45d||", errTokens.size()));
-                    both(System.out, file, "||============================================================||");
+                    out.println("||============================================================||");
+                    out.println(String.format("||  Total errors: %-45d||", errTokens.size()));
+                    out.println("||============================================================||");
                 }
             } 
             catch (Exception e) 
             {
                 String msg = "  EXCEPTION on " + path + ": " + e.getMessage();
-                both(System.out, file, msg);
-                e.printStackTrace(file);
+                out.println(msg);
+                e.printStackTrace(part.err());   // file only
             }
 
-            both(System.out, file, "");
+            out.println("");
+            close(part);
         }
 
-        both(System.out, file, "=== ALL TESTS COMPLETE ===");
-        both(System.out, file, "Results written to " + OUT_FILE);
+        ReportWriter.Part part = w.part();
+        part.out().println("=== ALL TESTS COMPLETE ===");
+        part.out().println("Results written to " + OUT_FILE);
+        close(part);
 
-        file.close();
+        try 
+        {
+            w.close();
+            file.close();
+        } 
+        catch (IOException e) 
+        {
+            System.err.println("cant write " + OUT_FILE);
+            System.exit(1);
+        }
     
     }
 
-    private static void both(PrintStream console, PrintStream file, String line) 
+    private static void close(ReportWriter.Part part) 
     {
-        console.println(line);
-        file.println(line);
+        try 
+        {
+            part.close();
+        } 
+        catch (IOException e) 
+        {
+            System.err.println("cant write " + OUT_FILE);
+        }
     }
 }
@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+
+/*
+ * Reads a .tok file written by TokWriter through a memory map.
+ * As a TokenCursor it decodes one token at a time into a few ints, so
+ * walking a stream allocates nothing; lexemes are only turned into Strings
+ * when text() is asked for. Errors and symbols are decoded on demand.
+ */
+public class TokReader implements TokenCursor
+{
+    private final MappedByteBuffer    map;
+    private final TokenType[]         types;   // file type id -> TokenType
+    private final ErrorHandler.Code[] codes;   // file code id -> Code
+    private final int                 count;
+    private final int                 srcLen;
+    private final int                 offTokens;
+    private final int                 offPool;
+    private final int                 offErrors;
+    private final int                 offSymbols;
+    private final int                 poolSize;
+
+    private int at;          // read position in the tokens section
+    private int index;       // tokens read so far
+
+    private TokenType type;
+    private int       start;
+    private int       len;
+    private int       line;
+    private int       col;
+    private int       lexId;
+
+    public TokReader(Path path) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(path))
+        {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[TokWriter.MAGIC.length];
+        if (map.capacity() < TokWriter.HEADER) throw new IOException("not a .tok file: " + path);
+        map.get(0, magic);
+        if (!Arrays.equals(magic, TokWriter.MAGIC)) throw new IOException("not a .tok file: " + path);
+
+        count      = map.getInt(36);
+        srcLen     = map.getInt(40);
+        int offTypes = map.getInt(44);
+        offTokens  = map.getInt(48);
+        offPool    = map.getInt(52);
+        offErrors  = map.getInt(56);
+        offSymbols = map.getInt(60);
+        poolSize   = map.getInt(offPool);
+
+        at = offTypes;
+        int n = varint();
+        types = new TokenType[n];
+        for (int i = 0; i < n; i++)
+        {
+            String name = str();
+            try
+            {
+                types[i] = TokenType.valueOf(name);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException("unknown token type in " + path + ": " + name);
+            }
+        }
+        n = varint();
+        codes = new ErrorHandler.Code[n];
+        for (int i = 0; i < n; i++)
+        {
+            String name = str();
+            try
+            {
+                codes[i] = ErrorHandler.Code.valueOf(name);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException("unknown error code in " + path + ": " + name);
+            }
+        }
+        rewind();
+    }
+
+    // true if the file was written from exactly this source
+    public boolean matches(String src)
+    {
+        return src.length() == srcLen && Arrays.equals(TokWriter.hash(src), hash());
+    }
+
+    public byte[] hash()
+    {
+        byte[] h = new byte[32];
+        map.get(4, h);
+        return h;
+    }
+
+    public int count()        { return count; }
+    public int sourceLength() { return srcLen; }
+
+    // back to before the first token
+    public void rewind()
+    {
+        at    = offTokens;
+        index = 0;
+        type  = null;
+        start = len = 0;
+        line  = col = 1;
+    }
+
+    // cursor: decodes the next token, EOF again once the stream is done
+    public TokenType advance()
+    {
+        if (index == count) return type;
+        int prevEnd = start + len;
+        int prevCol = col + len;
+        int prevLn  = line;
+
+        int b = map.get(at++) & 0xFF;
+        int gap;
+        type  = types[b & 0x7F];
+        gap   = zz();
+        start = prevEnd + gap;
+        len   = ((b & 0x80) != 0) ? type.text().length() : varint();
+        int v = varint();
+        line  = prevLn + ((v >>> 2) ^ -((v >>> 1) & 1));
+        col   = ((v & 1) != 0) ? varint() : prevCol + gap;
+        lexId = (type.text() == null) ? varint() : -1;
+        index++;
+        return type;
+    }
+
+    public TokenType type()   { return type;  }
+    public int       start()  { return start; }
+    public int       length() { return len;   }
+    public int       line()   { return line;  }
+    public int       column() { return col;   }
+
+    public String text()
+    {
+        return (lexId < 0) ? type.text() : lexeme(lexId);
+    }
+
+    // pool id of the current lexeme, equal ids mean equal text, -1 for fixed text
+    public int lexemeId()
+    {
+        return lexId;
+    }
+
+    public int poolSize()
+    {
+        return poolSize;
+    }
+
+    // lexeme by pool id
+    public String lexeme(int id)
+    {
+        if (id < 0 || id >= poolSize) throw new IndexOutOfBoundsException("lexeme " + id + " of " + poolSize);
+        int table = offPool + 4;
+        int blob  = table + (poolSize + 1) * 4;
+        int from  = map.getInt(table + id * 4);
+        int to    = map.getInt(table + id * 4 + 4);
+        byte[] b  = new byte[to - from];
+        map.get(blob + from, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public ErrorHandler errors()
+    {
+        int save = at;
+        at = offErrors;
+        ErrorHandler h = new ErrorHandler();
+        int seen = varint();
+        int n    = varint();
+        for (int i = 0; i < n; i++)
+        {
+            ErrorHandler.Code code = codes[varint()];
+            int    off = varint();
+            int    len = varint();
+            int    ln  = varint();
+            int    c   = varint();
+            h.add(code, off, len, ln, c, lexeme(varint()));
+            int reps = varint();
+            if (reps > 1) h.setRun(i, new int[] { reps, varint(), varint(), varint() });
+        }
+        h.counted(seen - n);
+        at = save;
+        return h;
+    }
+
+    public SymbolTable symbols()
+    {
+        int save = at;
+        at = offSymbols;
+        SymbolTable t = new SymbolTable();
+        int n = varint();
+        for (int i = 0; i < n; i++)
+        {
+            String name  = lexeme(varint());
+            String type  = lexeme(varint());
+            String scope = lexeme(varint());
+            int    depth = varint();
+            SymbolTable.Entry e = t.restore(name, type, scope, depth, varint());
+            int    uses  = varint();
+            byte[] occ   = new byte[varint()];
+            map.get(at, occ);
+            at += occ.length;
+            e.setUses(occ, occ.length, uses);
+        }
+        at = save;
+        return t;
+    }
+
+    private int varint()
+    {
+        int v = 0;
+        int shift = 0;
+        while (true)
+        {
+            int b = map.get(at++);
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+        }
+    }
+
+    private int zz()
+    {
+        int v = varint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private String str()
+    {
+        int n = varint();
+        byte[] b = new byte[n];
+        map.get(at, b);
+        at += n;
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // java TokReader <file.tok>   prints the stored tokens, symbols and errors
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: java TokReader <file.tok>");
+            System.exit(1);
+        }
+        try
+        {
+            TokReader r = new TokReader(Paths.get(args[0]));
+            System.out.println("||============================================================|| ");
+            System.out.println("||                        TOKEN STREAM                        || ");
+            System.out.println("||============================================================|| ");
+            TokenType t;
+            do
+            {
+                t = r.advance();
+                System.out.println("  " + new Token(t, r.text(), r.line(), r.column()));
+            } while (t != TokenType.EOF);
+            System.out.println("||============================================================|| ");
+            System.out.printf("||  Total tokens: %-45d \u2551%n", r.count());
+            System.out.println("||============================================================|| ");
+            r.symbols().show();
+            r.errors().show();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
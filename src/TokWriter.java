@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/*
+ * Writes a token stream as a binary .tok file, read back by TokReader.
+ *
+ *   header   64 bytes, little endian
+ *              "TOK" 6                    magic and version 6
+ *              sha-256 of the source      32 bytes, over its UTF-8
+ *              u32 tokens, u32 source length in chars
+ *              u32 offsets of the types, tokens, pool, errors, symbols sections
+ *   types    varint n, n x str            TokenType by name, not ordinal
+ *            varint m, m x str            ErrorHandler.Code by name, not ordinal
+ *   tokens   per token: u8 type id, | 0x80 if the length is that of the fixed text
+ *                       zz start - end of previous token
+ *                       varint length          unless implied
+ *                       varint zz(line - previous line) << 1 | 1 if a column follows
+ *                       varint column          only if flagged, otherwise the token
+ *                                              is as far right of the previous one
+ *                                              as its start is
+ *                       varint pool id         only when the type has no fixed text
+ *   pool     u32 n, u32 offsets[n + 1], UTF-8 of each distinct string
+ *   errors   varint count, varint n kept, n x (varint code id,
+ *                           varint offset, varint length, varint line,
+ *                           varint col, id lexeme, varint repeats, and if
+ *                           over 1 varint end, line, col of the last repeat)
+ *   symbols  varint n, n x (id name, id type, id scope, varint depth, varint line,
+ *                           varint uses, varint k, k bytes of uses as SymbolTable
+ *                           keeps them), insertion order
+ *
+ * zz is a zigzag varint, str a varint byte length and UTF-8, id a varint
+ * pool id. Lexemes and error/symbol strings share the one pool. A type or
+ * code id is its index in the types section.
+ */
+public class TokWriter
+{
+    static final byte[] MAGIC   = { 'T', 'O', 'K', 6 };
+    static final int    HEADER  = 64;
+
+    private static final TokenType[]         TYPES = TokenType.values();
+    private static final ErrorHandler.Code[] CODES = ErrorHandler.Code.values();
+
+    private final String src;
+    private final Out    tokens = new Out();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Out    pool   = new Out();
+    private int[]        poolAt = new int[256];
+    private int          count;
+
+    private int prevEnd;
+    private int prevLine = 1;
+    private int prevCol  = 1;
+
+    public TokWriter(String src)
+    {
+        this.src = src;
+    }
+
+    // appends the cursor's current token
+    public void add(TokenCursor c)
+    {
+        add(c.type(), c.start(), c.length(), c.line(), c.column(), (c.type().text() == null) ? c.text() : null);
+    }
+
+    // text is only read for types without fixed text
+    public void add(TokenType t, int st, int len, int ln, int col, String text)
+    {
+        boolean implied = t.text() != null && t != TokenType.EOF && len == t.text().length();
+        boolean moved   = ln != prevLine || col - prevCol != st - prevEnd;
+
+        tokens.u8(t.ordinal() | (implied ? 0x80 : 0));
+        tokens.zz(st - prevEnd);
+        if (!implied) tokens.varint(len);
+        int d = ln - prevLine;
+        tokens.varint(((d << 1) ^ (d >> 31)) << 1 | (moved ? 1 : 0));
+        if (moved) tokens.varint(col);
+        if (t.text() == null)
+        {
+            tokens.varint(intern(text));
+        }
+
+        prevEnd  = st + len;
+        prevLine = ln;
+        prevCol  = col + len;
+        count++;
+    }
+
+    // drains the cursor up to and including EOF
+    public TokWriter scan(TokenCursor c)
+    {
+        TokenType t;
+        do
+        {
+            t = c.advance();
+            add(c);
+        } while (t != TokenType.EOF);
+        return this;
+    }
+
+    private int intern(String lex)
+    {
+        Integer id = ids.get(lex);
+        if (id != null) return id;
+        int n = ids.size();
+        if (n + 1 >= poolAt.length) poolAt = Arrays.copyOf(poolAt, poolAt.length << 1);
+        pool.bytes(lex.getBytes(StandardCharsets.UTF_8));
+        poolAt[n + 1] = pool.len;
+        ids.put(lex, n);
+        return n;
+    }
+
+    // writes header and all sections to path
+    public void finish(Path path, ErrorHandler errs, SymbolTable syms) throws IOException
+    {
+        Out types = new Out();
+        types.varint(TYPES.length);
+        for (TokenType t : TYPES) types.str(t.name());
+        types.varint(CODES.length);
+        for (ErrorHandler.Code c : CODES) types.str(c.name());
+
+        Out errors = new Out();
+        errors.varint(errs.count());
+        errors.varint(errs.kept());
+        for (int i = 0; i < errs.kept(); i++)
+        {
+            errors.varint(errs.code(i).ordinal());
+            errors.varint(errs.off(i));
+            errors.varint(errs.len(i));
+            errors.varint(errs.ln(i));
+            errors.varint(errs.col(i));
+            errors.varint(intern(errs.lex(i)));
+            int[] run = errs.run(i);
+            errors.varint((run == null) ? 1 : run[0]);
+            if (run != null)
+            {
+                errors.varint(run[1]);
+                errors.varint(run[2]);
+                errors.varint(run[3]);
+            }
+        }
+
+        Out symbols = new Out();
+        symbols.varint(syms.size());
+        for (SymbolTable.Entry e : syms.entries())
+        {
+            symbols.varint(intern(e.name()));
+            symbols.varint(intern(e.type()));
+            symbols.varint(intern(e.scope()));
+            symbols.varint(e.depth());
+            symbols.varint(e.ln());
+            symbols.varint(e.uses());
+            symbols.varint(e.occLength());
+            symbols.bytes(e.occBytes(), e.occLength());
+        }
+
+        int  n      = ids.size();
+        Out  poolHd = new Out();
+        poolHd.u32(n);
+        for (int i = 0; i <= n; i++) poolHd.u32(poolAt[i]);
+
+        int offTypes   = HEADER;
+        int offTokens  = offTypes + types.len;
+        int offPool    = offTokens + tokens.len;
+        int offErrors  = offPool + poolHd.len + pool.len;
+        int offSymbols = offErrors + errors.len;
+
+        ByteBuffer hd = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        hd.put(MAGIC);
+        hd.put(hash(src));
+        hd.putInt(count);
+        hd.putInt(src.length());
+        hd.putInt(offTypes);
+        hd.putInt(offTokens);
+        hd.putInt(offPool);
+        hd.putInt(offErrors);
+        hd.putInt(offSymbols);
+        hd.position(HEADER);
+        hd.flip();
+
+        ByteBuffer[] parts = {
+            hd, types.buffer(), tokens.buffer(), poolHd.buffer(), pool.buffer(), errors.buffer(), symbols.buffer()
+        };
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long left = 0;
+            for (ByteBuffer b : parts) left += b.remaining();
+            while (left > 0) left -= ch.write(parts);
+        }
+    }
+
+    // appends every token of a buffer
+    public TokWriter scan(TokenBuffer b)
+    {
+        for (int i = 0; i < b.size(); i++)
+        {
+            TokenType t = b.type(i);
+            add(t, b.start(i), b.length(i), b.line(i), b.column(i), (t.text() == null) ? b.text(i) : null);
+        }
+        return this;
+    }
+
+    // scans src with ManualScanner straight into path
+    public static void write(Path path, String src) throws IOException
+    {
+        ManualScanner s = new ManualScanner(src);
+        new TokWriter(src).scan(s).finish(path, s.errs(), s.syms());
+    }
+
+    // sha-256 of the UTF-8 source, stored in the header
+    static byte[] hash(String src)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256").digest(src.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // growable little endian byte sink, RefSegment writes with it too
+    static final class Out
+    {
+        byte[] buf = new byte[1024];
+        int    len;
+
+        void u8(int v)
+        {
+            if (len == buf.length) buf = Arrays.copyOf(buf, len << 1);
+            buf[len++] = (byte) v;
+        }
+
+        void u32(int v)
+        {
+            u8(v);
+            u8(v >>> 8);
+            u8(v >>> 16);
+            u8(v >>> 24);
+        }
+
+        void varint(int v)
+        {
+            while ((v & ~0x7F) != 0)
+            {
+                u8((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            u8(v);
+        }
+
+        void zz(int v)
+        {
+            varint((v << 1) ^ (v >> 31));
+        }
+
+        void bytes(byte[] b)
+        {
+            bytes(b, b.length);
+        }
+
+        void bytes(byte[] b, int n)
+        {
+            if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length << 1, len + n));
+            System.arraycopy(b, 0, buf, len, n);
+            len += n;
+        }
+
+        void str(String s)
+        {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            bytes(b);
+        }
+
+        ByteBuffer buffer()
+        {
+            return ByteBuffer.wrap(buf, 0, len);
+        }
+    }
+
+    // java TokWriter <file.lang> [out.tok]
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: java TokWriter <file.lang> [out.tok]");
+            System.exit(1);
+        }
+        String out = (args.length > 1) ? args[1] : args[0].replaceAll("\\.lang$", "") + ".tok";
+        try
+        {
+            write(Paths.get(out), new String(Files.readAllBytes(Paths.get(args[0]))));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
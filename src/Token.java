@@ -7,6 +7,11 @@ public class Token
     private int ln;
     private int col;
 
+    // lazy lexeme: slice of src, built the first time lex() is called
+    private CharSequence src;
+    private int off;
+    private int len;
+
     public Token(TokenType type, String lex, int ln, int col) 
     {
         this.type = type;
@@ -15,15 +20,39 @@ public class Token
         this.col  = col;
     }
 
+    // fixed-text types share their constant lexeme, others keep a source slice
+    public Token(TokenType type, CharSequence src, int off, int len, int ln, int col) 
+    {
+        this.type = type;
+        this.lex  = type.text();
+        this.ln   = ln;
+        this.col  = col;
+        if (lex == null)
+        {
+            this.src = src;
+            this.off = off;
+            this.len = len;
+        }
+    }
+
     public TokenType type()  { return type; }
-    public String    lex()   { return lex;  }
     public int       ln()    { return ln;   }
     public int       col()   { return col;  }
 
+    public String lex() 
+    {
+        if (lex == null && src != null)
+        {
+            lex = src.subSequence(off, off + len).toString();
+            src = null;
+        }
+        return lex;
+    }
+
     // <TYPE, "lexeme", Line: X, Col: Y>
     @Override
     public String toString() 
     {
-        return "<" + type + ", \"" + lex + "\", Line: " + ln + ", Col: " + col + ">";
+        return "<" + type + ", \"" + lex() + "\", Line: " + ln + ", Col: " + col + ">";
     }
 }
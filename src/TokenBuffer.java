@@ -0,0 +1,369 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+
+/*
+ * Growable struct-of-arrays token store. One byte for the type and four
+ * ints for start/length/line/column per token, no object per token.
+ * Lexemes are sliced out of the source on demand; when the source is only
+ * a streaming window the chars are copied into a shared pool instead.
+ * Built over a LineIndex it keeps only start/length and looks lines and
+ * columns up in the index when asked.
+ */
+public class TokenBuffer implements Iterable<Token>
+{
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence src;
+    private final boolean      copy;    // src is transient, keep our own chars
+
+    private byte[] types;
+    private int[]  starts;
+    private int[]  lens;
+    private int[]  lines;
+    private int[]  cols;
+    private int    size;
+
+    private char[] pool;                // copy mode only
+    private int[]  poolAt;
+    private int    poolLen;
+
+    private Map<Integer, String> texts; // lexemes that are not source slices
+
+    private LineIndex index;            // offsets only mode, lines/cols unused
+
+    public TokenBuffer(CharSequence src)
+    {
+        this(src, false);
+    }
+
+    // offsets only: lines and columns come from index instead of the scanner
+    public TokenBuffer(CharSequence src, LineIndex index)
+    {
+        this(src, false);
+        this.index = index;
+        this.lines = null;
+        this.cols  = null;
+    }
+
+    public TokenBuffer(CharSequence src, boolean copy)
+    {
+        this.src    = src;
+        this.copy   = copy;
+        this.types  = new byte[256];
+        this.starts = new int[256];
+        this.lens   = new int[256];
+        this.lines  = new int[256];
+        this.cols   = new int[256];
+        this.size   = 0;
+        if (copy)
+        {
+            this.pool   = new char[1024];
+            this.poolAt = new int[256];
+        }
+    }
+
+    // drains the cursor up to and including EOF
+    public TokenBuffer scan(TokenCursor c)
+    {
+        TokenType t;
+        do
+        {
+            t = c.advance();
+            add(c);
+        } while (t != TokenType.EOF);
+        return this;
+    }
+
+    // appends the cursor's current token
+    public void add(TokenCursor c)
+    {
+        int i = add(c.type(), c.start(), c.length(), c.line(), c.column());
+        if (c.type() != TokenType.EOF && !c.sliced())
+        {
+            setText(i, c.text());
+        }
+    }
+
+    public int add(TokenType t, int start, int len, int line, int col)
+    {
+        if (size == types.length)
+        {
+            int n  = size << 1;
+            types  = Arrays.copyOf(types, n);
+            starts = Arrays.copyOf(starts, n);
+            lens   = Arrays.copyOf(lens, n);
+            if (index == null)
+            {
+                lines = Arrays.copyOf(lines, n);
+                cols  = Arrays.copyOf(cols, n);
+            }
+            if (copy) poolAt = Arrays.copyOf(poolAt, n);
+        }
+        types[size]  = (byte) t.ordinal();
+        starts[size] = start;
+        lens[size]   = len;
+        if (index == null)
+        {
+            lines[size] = line;
+            cols[size]  = col;
+        }
+        if (copy)
+        {
+            poolAt[size] = poolLen;
+            if (t != TokenType.EOF) keep(start, len);
+        }
+        return size++;
+    }
+
+    // appends all of other's tokens, other must slice the same source
+    public void addAll(TokenBuffer other)
+    {
+        if (copy || other.copy || other.src != src || (index == null) != (other.index == null))
+        {
+            throw new IllegalArgumentException("buffers do not share a source");
+        }
+        int n = size + other.size;
+        if (n > types.length)
+        {
+            int cap = Math.max(n, types.length << 1);
+            types  = Arrays.copyOf(types, cap);
+            starts = Arrays.copyOf(starts, cap);
+            lens   = Arrays.copyOf(lens, cap);
+            if (index == null)
+            {
+                lines = Arrays.copyOf(lines, cap);
+                cols  = Arrays.copyOf(cols, cap);
+            }
+        }
+        System.arraycopy(other.types,  0, types,  size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.lens,   0, lens,   size, other.size);
+        if (index == null)
+        {
+            System.arraycopy(other.lines, 0, lines, size, other.size);
+            System.arraycopy(other.cols,  0, cols,  size, other.size);
+        }
+        if (other.texts != null)
+        {
+            for (Map.Entry<Integer, String> e : other.texts.entrySet())
+            {
+                setText(size + e.getKey(), e.getValue());
+            }
+        }
+        size = n;
+    }
+
+    // overrides the lexeme of token i
+    public void setText(int i, String text)
+    {
+        if (texts == null) texts = new HashMap<>();
+        texts.put(i, text);
+    }
+
+    private void keep(int start, int len)
+    {
+        if (poolLen + len > pool.length)
+        {
+            pool = Arrays.copyOf(pool, Math.max(pool.length << 1, poolLen + len));
+        }
+        for (int k = 0; k < len; k++)
+        {
+            pool[poolLen++] = src.charAt(start + k);
+        }
+    }
+
+    public int       size()          { return size; }
+    public TokenType type(int i)     { return TYPES[types[check(i)]]; }
+    public int       start(int i)    { return starts[check(i)]; }
+    public int       length(int i)   { return lens[check(i)]; }
+
+    public int line(int i)
+    {
+        if (index != null) return index.line(starts[check(i)]);
+        return lines[check(i)];
+    }
+
+    public int column(int i)
+    {
+        if (index != null) return index.column(starts[check(i)]);
+        return cols[check(i)];
+    }
+
+    // lexeme of token i, allocates
+    public String text(int i)
+    {
+        check(i);
+        if (texts != null)
+        {
+            String s = texts.get(i);
+            if (s != null) return s;
+        }
+        String fixed = TYPES[types[i]].text();
+        if (fixed != null) return fixed;
+        if (copy) return new String(pool, poolAt[i], lens[i]);
+        return src.subSequence(starts[i], starts[i] + lens[i]).toString();
+    }
+
+    // lexeme of token i as the returned chars [at[0], at[1]), copied only in copy mode
+    public CharSequence lexeme(int i, int[] at)
+    {
+        check(i);
+        String s = (texts == null) ? null : texts.get(i);
+        if (s == null) s = TYPES[types[i]].text();
+        if (s == null && copy) s = new String(pool, poolAt[i], lens[i]);
+        if (s != null)
+        {
+            at[0] = 0;
+            at[1] = s.length();
+            return s;
+        }
+        at[0] = starts[i];
+        at[1] = starts[i] + lens[i];
+        return src;
+    }
+
+    // Token object for index i, built on demand with a lazy lexeme
+    public Token token(int i)
+    {
+        if (copy || (texts != null && texts.containsKey(i)))
+        {
+            return new Token(type(i), text(i), line(i), column(i));
+        }
+        return new Token(type(i), src, starts[i], lens[i], line(i), column(i));
+    }
+
+    // appends token i as Token.toString() prints it, without a Token or a lexeme String
+    public StringBuilder format(int i, StringBuilder sb)
+    {
+        check(i);
+        sb.append('<').append(TYPES[types[i]]).append(", \"");
+        String s     = (texts == null) ? null : texts.get(i);
+        String fixed = TYPES[types[i]].text();
+        if      (s != null)     sb.append(s);
+        else if (fixed != null) sb.append(fixed);
+        else if (copy)          sb.append(pool, poolAt[i], lens[i]);
+        else                    sb.append(src, starts[i], starts[i] + lens[i]);
+        return sb.append("\", Line: ").append(line(i)).append(", Col: ").append(column(i)).append('>');
+    }
+
+    // index of the token covering offset, -1 if offset is in whitespace or a comment
+    public int tokenAt(int offset)
+    {
+        int i = lowerBound(offset + 1, size) - 1;
+        if (i < 0 || offset >= starts[i] + lens[i]) return -1;
+        return i;
+    }
+
+    // tokens starting on line n, EOF left out
+    public List<Token> tokensOnLine(int n)
+    {
+        int end = (size > 0 && TYPES[types[size - 1]] == TokenType.EOF) ? size - 1 : size;
+        int from, to;
+        if (index != null)
+        {
+            if (n < 1 || n > index.lines()) return asList().subList(0, 0);
+            from = lowerBound(index.lineStart(n), end);
+            to   = (n < index.lines()) ? lowerBound(index.lineStart(n + 1), end) : end;
+        }
+        else
+        {
+            from = lineBound(n, end);
+            to   = lineBound(n + 1, end);
+        }
+        return asList().subList(from, to);
+    }
+
+    // first token in [0, end) starting at or after offset
+    private int lowerBound(int offset, int end)
+    {
+        int lo = 0, hi = end;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset) lo = mid + 1;
+            else                      hi = mid;
+        }
+        return lo;
+    }
+
+    // first token in [0, end) on line n or later
+    private int lineBound(int n, int end)
+    {
+        int lo = 0, hi = end;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (lines[mid] < n) lo = mid + 1;
+            else                hi = mid;
+        }
+        return lo;
+    }
+
+    // counts tokens of one type without materializing anything
+    public int count(TokenType t)
+    {
+        int n = 0;
+        byte b = (byte) t.ordinal();
+        for (int i = 0; i < size; i++)
+        {
+            if (types[i] == b) n++;
+        }
+        return n;
+    }
+
+    @Override
+    public Iterator<Token> iterator()
+    {
+        return new Iterator<Token>()
+        {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return i < size;
+            }
+
+            @Override
+            public Token next()
+            {
+                if (i >= size) throw new NoSuchElementException();
+                return token(i++);
+            }
+        };
+    }
+
+    // read-only List view, Tokens are materialized per get()
+    public List<Token> asList()
+    {
+        return new View();
+    }
+
+    private class View extends AbstractList<Token> implements RandomAccess
+    {
+        @Override
+        public Token get(int i)
+        {
+            return token(i);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+
+    private int check(int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("token " + i + " of " + size);
+        return i;
+    }
+}
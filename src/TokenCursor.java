@@ -0,0 +1,22 @@
+/*
+ * Allocation-free view of a token stream.
+ * advance() moves to the next token and returns its type, the accessors
+ * describe that token until the next advance(). Offsets are char offsets
+ * into the scanned source. Only text() builds a String.
+ */
+public interface TokenCursor 
+{
+    TokenType advance();
+
+    TokenType type();
+    int       start();    // offset of first char
+    int       length();   // chars in the lexeme
+    int       line();
+    int       column();
+
+    // lexeme of the current token, allocates
+    String    text();
+
+    // true when text() is exactly the source chars [start, start+length)
+    default boolean sliced() { return type() != TokenType.EOF; }
+}
@@ -0,0 +1,434 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/*
+ * grep over tokens instead of text.
+ *
+ *   java TokenGrep [-j threads] [-c] "<pattern>" <file|dir|glob>...
+ *
+ * A pattern is tokens separated by blanks, matched against consecutive
+ * tokens, so text inside strings and comments never matches a keyword or
+ * a name:
+ *
+ *   condition ( IDENTIFIER:Count == INTEGER )
+ *
+ *   condition, (, ==, ...   that keyword or operator
+ *   IDENTIFIER, INTEGER     any token of that TokenType
+ *   TYPE:text               that type with exactly that text
+ *   Count, 42, 1.5, true    shorthand for IDENTIFIER:Count, INTEGER:42, ...
+ *   ?                       any one token
+ *   ...                     any run of tokens, also none
+ *
+ * The pattern becomes an NFA with one state per item, run bit-parallel in
+ * a long (so at most 64 items): per token the live states shift by one and
+ * are masked with the states that token can be in. Matches do not overlap
+ * and are reported at their first token.
+ *
+ * Before a file is lexed its raw text is searched for the rarest literal of
+ * the pattern, a name or number over a keyword over an operator; a file
+ * without it cannot match and is skipped unscanned. Files that are scanned
+ * go through ManualScanner as a TokenCursor, so no Token is ever built.
+ */
+public class TokenGrep 
+{
+    public static final int MAX_ITEMS = 64;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final String   pattern;
+    private final int      n;
+    private final long[]   accept;   // per TokenType ordinal: states a token of that type may enter
+    private final long     gaps;     // states that are "..."
+    private final long     texts;    // states that also need exact text
+    private final String[] text;     // per state, null if any text goes
+    private final long     last;     // the state that completes a match
+    private final String   literal;  // must be in a file's text for it to match, null if none
+
+    // one match, its line is cut out of the source only if asked for
+    public static final class Hit 
+    {
+        private final String path;
+        private final int    ln;
+        private final int    col;
+        private String lineText;
+        private String src;
+        private int    off;
+
+        Hit(String path, int ln, int col, String src, int off) 
+        {
+            this.path = path;
+            this.ln   = ln;
+            this.col  = col;
+            this.src  = src;
+            this.off  = off;
+        }
+
+        public String path() { return path; }
+        public int    ln()   { return ln;   }
+        public int    col()  { return col;  }
+
+        public String lineText() 
+        {
+            if (lineText == null)
+            {
+                lineText = lineAt(src, off);
+                src = null;
+            }
+            return lineText;
+        }
+
+        @Override
+        public String toString() 
+        {
+            return path + ":" + ln + ":" + col + ": " + lineText();
+        }
+    }
+
+    public TokenGrep(String pattern) 
+    {
+        String[] items = pattern.trim().split("\\s+");
+        if (items.length == 0 || items[0].isEmpty()) throw new IllegalArgumentException("empty pattern");
+        if (items.length > MAX_ITEMS)
+        {
+            throw new IllegalArgumentException("pattern has " + items.length + " tokens, at most " + MAX_ITEMS);
+        }
+        if (items[0].equals("...") || items[items.length - 1].equals("..."))
+        {
+            throw new IllegalArgumentException("a pattern cannot start or end with ...");
+        }
+
+        this.pattern = pattern;
+        this.n       = items.length;
+        this.accept  = new long[TYPES.length];
+        this.text    = new String[n];
+
+        long   g = 0, tx = 0;
+        String best = null;
+        int    rank = -1;
+        for (int i = 0; i < n; i++)
+        {
+            String it  = items[i];
+            long   bit = 1L << i;
+            if (it.equals("..."))
+            {
+                g |= bit;
+                continue;
+            }
+            if (it.equals("?"))
+            {
+                for (int t = 0; t < TYPES.length; t++) accept[t] |= bit;
+                continue;
+            }
+
+            TokenType type = null;
+            String    lit  = null;
+            int       colon = it.indexOf(':');
+            if (colon > 0 && typeNamed(it.substring(0, colon)) != null)
+            {
+                type = typeNamed(it.substring(0, colon));
+                lit  = it.substring(colon + 1);
+            }
+            else if ((type = typeNamed(it)) != null)
+            {
+                lit = null;
+            }
+            else if ((type = fixed(it)) != null)
+            {
+                lit = null;
+            }
+            else if (it.equals("true") || it.equals("false"))
+            {
+                type = TokenType.BOOLEAN;
+                lit  = it;
+            }
+            else if (CharClass.isUpperCase(it.charAt(0)))
+            {
+                type = TokenType.IDENTIFIER;
+                lit  = it;
+            }
+            else if (it.matches("[+-]?[0-9]+"))
+            {
+                type = TokenType.INTEGER;
+                lit  = it;
+            }
+            else if (it.matches("[+-]?[0-9]+\\.[0-9]+([eE][+-]?[0-9]+)?"))
+            {
+                type = TokenType.FLOAT;
+                lit  = it;
+            }
+            else
+            {
+                throw new IllegalArgumentException("not a token: " + it);
+            }
+
+            accept[type.ordinal()] |= bit;
+            if (lit != null)
+            {
+                tx     |= bit;
+                text[i] = lit;
+            }
+
+            // rarest literal: names and numbers, then keywords, then operators
+            String raw = (lit != null) ? lit : type.text();
+            if (raw == null || type == TokenType.STRING || type == TokenType.CHAR) continue;
+            int r = (lit != null) ? 3 : CharClass.isLetter(raw.charAt(0)) ? 2 : (raw.length() > 1) ? 1 : 0;
+            if (r > rank || (r == rank && raw.length() > best.length()))
+            {
+                rank = r;
+                best = raw;
+            }
+        }
+        this.gaps    = g;
+        this.texts   = tx;
+        this.last    = 1L << (n - 1);
+        this.literal = best;
+    }
+
+    private static TokenType typeNamed(String s) 
+    {
+        for (TokenType t : TYPES)
+        {
+            if (t.name().equals(s)) return t;
+        }
+        return null;
+    }
+
+    private static TokenType fixed(String s) 
+    {
+        for (TokenType t : TYPES)
+        {
+            if (s.equals(t.text()) && t != TokenType.EOF) return t;
+        }
+        return null;
+    }
+
+    public String pattern() { return pattern; }
+    public String literal() { return literal; }
+
+    // matches in one source, in order
+    public List<Hit> search(String path, String src) 
+    {
+        List<Hit> hits = new ArrayList<>();
+        if (literal != null && src.indexOf(literal) < 0) return hits;
+
+        ManualScanner c = new ManualScanner(src).track(false);
+        long   live = 0;
+        int[]  off  = new int[n];      // per live state: where its match started,
+        long[] pos  = new long[n];     // as an offset and as line << 32 | column
+        int[]  noff = new int[n];
+        long[] npos = new long[n];
+
+        TokenType t;
+        while ((t = c.advance()) != TokenType.EOF)
+        {
+            // states reached by this token: one step on from the live ones, or a new start
+            long step = ((live << 1) | 1) & accept[t.ordinal()];
+            long next = step | (live & gaps);
+            if ((next & texts) != 0) next = checkText(next, texts, c, src);
+            if (next == 0)
+            {
+                live = 0;
+                continue;
+            }
+
+            for (long m = next; m != 0; m &= m - 1)
+            {
+                int i = Long.numberOfTrailingZeros(m);
+                int j = ((gaps & (1L << i)) != 0) ? i : i - 1;   // a gap swallowed the token, keeps its start
+                if (j < 0)
+                {
+                    noff[i] = c.start();
+                    npos[i] = (long) c.line() << 32 | c.column();
+                }
+                else
+                {
+                    noff[i] = off[j];
+                    npos[i] = pos[j];
+                }
+            }
+            next = close(next, noff, npos);
+
+            int[]  so = off; off = noff; noff = so;
+            long[] sp = pos; pos = npos; npos = sp;
+            live = next;
+
+            if ((live & last) != 0)
+            {
+                long at = pos[n - 1];
+                hits.add(new Hit(path, (int) (at >>> 32), (int) at, src, off[n - 1]));
+                live = 0;
+            }
+        }
+        return hits;
+    }
+
+    // drops states whose token text is not the one asked for
+    private long checkText(long next, long texts, ManualScanner c, String src) 
+    {
+        for (long m = next & texts; m != 0; m &= m - 1)
+        {
+            int       i    = Long.numberOfTrailingZeros(m);
+            String    want = text[i];
+            TokenType t    = c.type();
+            boolean   ok   = (t == TokenType.STRING || t == TokenType.CHAR)
+                    ? c.text().equals(want)
+                    : c.length() == want.length() && src.regionMatches(c.start(), want, 0, want.length());
+            if (!ok) next &= ~(1L << i);
+        }
+        return next;
+    }
+
+    // a live state followed by "..." also makes the gap live, with nothing in it yet
+    private long close(long s, int[] off, long[] pos) 
+    {
+        long add = (s << 1) & gaps & ~s;
+        while (add != 0)
+        {
+            for (long m = add; m != 0; m &= m - 1)
+            {
+                int i = Long.numberOfTrailingZeros(m);
+                off[i] = off[i - 1];
+                pos[i] = pos[i - 1];
+            }
+            s  |= add;
+            add = (s << 1) & gaps & ~s;
+        }
+        return s;
+    }
+
+    private static String lineAt(String src, int offset) 
+    {
+        int from = src.lastIndexOf('\n', offset - 1) + 1;
+        int to   = src.indexOf('\n', offset);
+        if (to < 0) to = src.length();
+        if (to > from && src.charAt(to - 1) == '\r') to--;
+        return src.substring(from, to).trim();
+    }
+
+    // searches all files on the pool, writes hits to sink in input order and a
+    // summary to stderr; returns how many files could not be read
+    public int run(List<Path> files, ForkJoinPool pool, OutputStream sink, boolean countOnly) throws IOException 
+    {
+        long t0 = System.nanoTime();
+        ReportWriter w = new ReportWriter().to(sink);
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<>(files.size());
+        for (Path p : files)
+        {
+            ReportWriter.Part part = w.part();
+            tasks.add(pool.submit(() -> report(p, countOnly, part)));
+        }
+        long total  = 0;
+        int  failed = 0;
+        for (ForkJoinTask<Integer> t : tasks)
+        {
+            int lines = t.join();
+            if (lines < 0) failed++;
+            else           total += lines;
+        }
+        w.close();
+        System.err.printf("%d %s in %d files%s, %.3f s%n", total, countOnly ? "matching files" : "matches", files.size(),
+                (failed > 0) ? " (" + failed + " unreadable)" : "", (System.nanoTime() - t0) / 1e9);
+        return failed;
+    }
+
+    // writes one file's hits, or its count, to its part and closes it;
+    // returns the lines written, -1 if the file could not be read
+    private int report(Path p, boolean countOnly, ReportWriter.Part part) throws IOException 
+    {
+        PrintStream out = part.out();
+        int lines = 0;
+        try
+        {
+            List<Hit> hits = search(p.toString(), new String(Files.readAllBytes(p)));
+            if (countOnly)
+            {
+                if (!hits.isEmpty())
+                {
+                    out.println(p + ":" + hits.size());
+                    lines++;
+                }
+            }
+            else
+            {
+                for (Hit h : hits) out.println(h);
+                lines += hits.size();
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not read file: " + p);
+            lines = -1;
+        }
+        finally
+        {
+            part.close();
+        }
+        return lines;
+    }
+
+    public static void main(String[] args) 
+    {
+        int     threads   = Runtime.getRuntime().availableProcessors();
+        boolean countOnly = false;
+        String  pattern   = null;
+        List<String> inputs = new ArrayList<>();
+
+        boolean usage     = false;
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                switch (args[i])
+                {
+                    case "-j": threads   = Integer.parseInt(args[++i]); break;
+                    case "-c": countOnly = true;                         break;
+                    default:
+                        if (pattern == null) pattern = args[i];
+                        else                 inputs.add(args[i]);
+                        break;
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+        {
+            usage = true;
+        }
+        if (usage || pattern == null || inputs.isEmpty() || threads < 1)
+        {
+            System.err.println("Usage: java TokenGrep [-j threads] [-c] \"<pattern>\" <file|dir|glob>...");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool   = new ForkJoinPool(threads);
+        int          failed = 0;
+        try
+        {
+            TokenGrep  g     = new TokenGrep(pattern);
+            List<Path> files = BatchDriver.expand(inputs);
+            failed = g.run(files, pool, System.out, countOnly);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println("Error: bad pattern: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        if (failed > 0) System.exit(1);
+    }
+}
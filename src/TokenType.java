@@ -2,8 +2,10 @@
 public enum TokenType 
 {
 
-    START, FINISH, LOOP, CONDITION, DECLARE, OUTPUT, INPUT,
-    FUNCTION, RETURN, BREAK, CONTINUE, ELSE,
+    START("start"), FINISH("finish"), LOOP("loop"), CONDITION("condition"),
+    DECLARE("declare"), OUTPUT("output"), INPUT("input"),
+    FUNCTION("function"), RETURN("return"), BREAK("break"), CONTINUE("continue"),
+    ELSE("else"),
 
     INTEGER,       // [+-]?[0-9]+
     FLOAT,         // [+-]?[0-9]+\.[0-9]{1,6}([eE][+-]?[0-9]+)?
@@ -13,41 +15,59 @@ public enum TokenType
 
     IDENTIFIER,    // [A-Z][a-z0-9_]{0,30}
 
-    PLUS,          // +
-    MINUS,         // -
-    MULTIPLY,      // *
-    DIVIDE,        // /
-    MODULO,        // %
-    POWER,         // **
-    EQUAL,         // ==
-    NOT_EQUAL,     // !=
-    LESS_EQUAL,    // <=
-    GREATER_EQUAL, // >=
-    LESS_THAN,     // <
-    GREATER_THAN,  // >
-
-    LOGICAL_AND,   // &&
-    LOGICAL_OR,    // ||
-    LOGICAL_NOT,   // !
-    ASSIGN,        // =
-    PLUS_ASSIGN,   // +=
-    MINUS_ASSIGN,  // -=
-    MULT_ASSIGN,   // *=
-    DIV_ASSIGN,    // /=
-
-    INCREMENT,     // ++
-    DECREMENT,     // --
-
-    LPAREN,        // (
-    RPAREN,        // )
-    LBRACE,        // {
-    RBRACE,        // }
-    LBRACKET,      // [
-    RBRACKET,      // ]
-    COMMA,         // ,
-    SEMICOLON,     // ;
-    COLON,         // :
-
-    EOF,           // end of file
-    ERROR          // bad token
+    PLUS("+"),
+    MINUS("-"),
+    MULTIPLY("*"),
+    DIVIDE("/"),
+    MODULO("%"),
+    POWER("**"),
+    EQUAL("=="),
+    NOT_EQUAL("!="),
+    LESS_EQUAL("<="),
+    GREATER_EQUAL(">="),
+    LESS_THAN("<"),
+    GREATER_THAN(">"),
+
+    LOGICAL_AND("&&"),
+    LOGICAL_OR("||"),
+    LOGICAL_NOT("!"),
+    ASSIGN("="),
+    PLUS_ASSIGN("+="),
+    MINUS_ASSIGN("-="),
+    MULT_ASSIGN("*="),
+    DIV_ASSIGN("/="),
+
+    INCREMENT("++"),
+    DECREMENT("--"),
+
+    LPAREN("("),
+    RPAREN(")"),
+    LBRACE("{"),
+    RBRACE("}"),
+    LBRACKET("["),
+    RBRACKET("]"),
+    COMMA(","),
+    SEMICOLON(";"),
+    COLON(":"),
+
+    EOF("EOF"),    // end of file
+    ERROR;         // bad token
+
+    // lexeme shared by every token of this type, null if it varies
+    private final String text;
+
+    TokenType()
+    {
+        this(null);
+    }
+
+    TokenType(String text)
+    {
+        this.text = text;
+    }
+
+    public String text()
+    {
+        return text;
+    }
 }
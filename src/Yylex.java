@@ -15,7 +15,7 @@ import java.util.List;
 
 
 @SuppressWarnings("fallthrough")
-class Yylex {
+class Yylex implements TokenCursor {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -438,7 +438,6 @@ class Yylex {
   private int yycolumn;
 
   /** Number of characters up to the start of the matched text. */
-  @SuppressWarnings("unused")
   private long yychar;
 
   /** Whether the scanner is currently at the beginning of a line. */
@@ -452,11 +451,17 @@ class Yylex {
   /* user code: */
     /* ----- helpers accessible inside generated scanner ----- */
     private ErrorHandler  errors  = new ErrorHandler();
-    private SymbolTable   symbols = new SymbolTable();
+    private SymbolTable   symbols = new SymbolTable("Global");
 
     public  ErrorHandler  errs()  { return errors;  }
     public  SymbolTable   syms()  { return symbols;  }
 
+    /** false leaves out the symbol table (syms() is null), call before the first token */
+    public  Yylex         track(boolean on) {
+        symbols = on ? new SymbolTable("Global") : null;
+        return this;
+    }
+
     /** convenience: 1-based line */
     private int ln()  { return yyline + 1; }
     /** convenience: 1-based column */
@@ -464,23 +469,102 @@ class Yylex {
 
     /** build a token at current position */
     private Token tok(TokenType t) {
+        mark(t, (int) yychar, yylength(), ln(), col(), null, null);
+        if (cursorMode) return CURSOR;
+        if (t.text() != null) return new Token(t, t.text(), ln(), col());
         return new Token(t, yytext(), ln(), col());
     }
     private Token tok(TokenType t, String lex) {
+        mark(t, (int) yychar, yylength(), ln(), col(), lex, null);
+        if (cursorMode) return CURSOR;
         return new Token(t, lex, ln(), col());
     }
+    /** string/char literal collected in buf, starting at offset start */
+    private Token lit(TokenType t, CharSequence buf, int start, int line, int col) {
+        mark(t, start, buf.length(), line, col, null, buf);
+        if (cursorMode) return CURSOR;
+        return new Token(t, buf.toString(), line, col);
+    }
+
+    /* ----- TokenCursor: yylex() without building Tokens ----- */
+    private static final Token CURSOR = new Token(TokenType.EOF, "", 0, 0);
+
+    private boolean      cursorMode;
+    private TokenType    curType;
+    private int          curStart;
+    private int          curLen;
+    private int          curLine;
+    private int          curCol;
+    private String       curFixed;    /* lexeme not taken from the input */
+    private CharSequence curLit;      /* collected string/char literal */
+
+    private void mark(TokenType t, int start, int len, int line, int col,
+                      String fixed, CharSequence lit) {
+        curType  = t;
+        curStart = start;
+        curLen   = len;
+        curLine  = line;
+        curCol   = col;
+        curFixed = fixed;
+        curLit   = lit;
+        if (symbols != null) symbols.follow(t, line);
+    }
+
+    public TokenType advance() {
+        if (errors.stopped()) {
+            /* the error limit ends the stream right after the token that hit it */
+            mark(TokenType.EOF, curStart + curLen, 0, curLine, curCol + curLen, "EOF", null);
+            return curType;
+        }
+        cursorMode = true;
+        try {
+            yylex();
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        } finally {
+            cursorMode = false;
+        }
+        return curType;
+    }
+
+    public TokenType type()   { return curType;  }
+    public int       start()  { return curStart; }
+    public int       length() { return curLen;   }
+    public int       line()   { return curLine;  }
+    public int       column() { return curCol;   }
+
+    public String text() {
+        if (curFixed != null) return curFixed;
+        if (curLit != null)   return curLit.toString();
+        return yytext();
+    }
+
+    /** error on the current match */
+    private void error(ErrorHandler.Code c) {
+        error(c, (int) yychar, yylength(), ln(), col(), null);
+    }
+    /** error on [start, start + len), lex (null: the current match) is only copied if kept;
+        coalescing, an error repeating the one of the token before is folded into it */
+    private void error(ErrorHandler.Code c, int start, int len, int line, int col, CharSequence lex) {
+        if (errors.coalesces() && curType == TokenType.ERROR
+                && errors.repeat(c, (lex == null) ? yytext() : lex, 0, start, len, line, col)) return;
+        if (!errors.keeps()) errors.add(c, start, len, line, col);
+        else errors.add(c, start, len, line, col, (lex == null) ? yytext() : lex.toString());
+    }
 
     /** register identifier in symbol table */
-    private void addSym(String name) {
-        symbols.add(name, "N/A", "Global", ln());
+    private void addSym() {
+        if (symbols != null) symbols.ident(zzBuffer, zzStartRead, yylength(), "N/A", ln(), col());
     }
     /* ----- string / char accumulators ----- */
-    private StringBuilder strBuf;
+    private StringBuilder strBuf = new StringBuilder();
+    private int           strStart;
     private int           strLine;
     private int           strCol;
     private boolean       strHasError;
 
-    private StringBuilder chrBuf;
+    private StringBuilder chrBuf = new StringBuilder();
+    private int           chrStart;
     private int           chrLine;
     private int           chrCol;
     private int           chrCount;        /* characters inside the quotes */
@@ -488,6 +572,7 @@ class Yylex {
     private boolean       chrHasError;
 
     /* ----- multi-line comment tracking ----- */
+    private int cmtStart;
     private int cmtLine;
     private int cmtCol;
 
@@ -779,6 +864,8 @@ class Yylex {
     while (true) {
       zzMarkedPosL = zzMarkedPos;
 
+      yychar+= zzMarkedPosL-zzStartRead;
+
       boolean zzR = false;
       int zzCh;
       int zzCharCount;
@@ -900,19 +987,19 @@ class Yylex {
         zzAtEOF = true;
             switch (zzLexicalState) {
             case STRING_STATE: {
-              errors.noCloseStr(strLine, strCol, strBuf.toString());
+              error(ErrorHandler.Code.NO_CLOSE_STR, strStart, strBuf.length(), strLine, strCol, strBuf);
                 yybegin(YYINITIAL);
-                return new Token(TokenType.ERROR, strBuf.toString(), strLine, strCol);
+                return lit(TokenType.ERROR, strBuf, strStart, strLine, strCol);
             }  // fall though
             case 200: break;
             case CHAR_STATE: {
-              errors.noCloseChr(chrLine, chrCol, chrBuf.toString());
+              error(ErrorHandler.Code.NO_CLOSE_CHR, chrStart, chrBuf.length(), chrLine, chrCol, chrBuf);
                 yybegin(YYINITIAL);
-                return new Token(TokenType.ERROR, chrBuf.toString(), chrLine, chrCol);
+                return lit(TokenType.ERROR, chrBuf, chrStart, chrLine, chrCol);
             }  // fall though
             case 201: break;
             case MULTICOMMENT: {
-              errors.noCloseCmnt(cmtLine, cmtCol, "#|...");
+              errors.add(ErrorHandler.Code.NO_CLOSE_CMNT, cmtStart, 2, cmtLine, cmtCol);
                     yybegin(YYINITIAL);
                     return tok(TokenType.EOF, "EOF");
             }  // fall though
@@ -931,7 +1018,7 @@ class Yylex {
           // fall through
           case 82: break;
           case 2:
-            { errors.badChar(ln(), col(), yytext());
+            { error(ErrorHandler.Code.BAD_CHAR);
                 return tok(TokenType.ERROR);
             }
           // fall through
@@ -952,7 +1039,9 @@ class Yylex {
           // fall through
           case 86: break;
           case 6:
-            { strBuf = new StringBuilder("\"");
+            { strBuf.setLength(0);
+            strBuf.append('"');
+            strStart = (int) yychar;
             strLine = ln(); strCol = col();
             strHasError = false;
             yybegin(STRING_STATE);
@@ -965,13 +1054,15 @@ class Yylex {
           // fall through
           case 88: break;
           case 8:
-            { errors.badChar(ln(), col(), "&");
+            { error(ErrorHandler.Code.BAD_CHAR);
                 return tok(TokenType.ERROR, "&");
             }
           // fall through
           case 89: break;
           case 9:
-            { chrBuf = new StringBuilder("'");
+            { chrBuf.setLength(0);
+            chrBuf.append('\'');
+            chrStart = (int) yychar;
             chrLine = ln(); chrCol = col();
             chrCount = 0;
             chrHasEscape = false;
@@ -1046,8 +1137,7 @@ class Yylex {
           // fall through
           case 103: break;
           case 23:
-            { String id = yytext();
-                addSym(id);
+            { addSym();
                 return tok(TokenType.IDENTIFIER);
             }
           // fall through
@@ -1063,8 +1153,7 @@ class Yylex {
           // fall through
           case 106: break;
           case 26:
-            { errors.log("Invalid Identifier", ln(), col(), yytext(),
-                        "Identifiers must start with an uppercase letter [A-Z].");
+            { error(ErrorHandler.Code.BAD_ID_START);
                 return tok(TokenType.ERROR);
             }
           // fall through
@@ -1075,7 +1164,7 @@ class Yylex {
           // fall through
           case 108: break;
           case 28:
-            { errors.badChar(ln(), col(), "|");
+            { error(ErrorHandler.Code.BAD_CHAR);
                 return tok(TokenType.ERROR, "|");
             }
           // fall through
@@ -1086,14 +1175,14 @@ class Yylex {
           // fall through
           case 110: break;
           case 30:
-            { strBuf.append(yytext());
+            { strBuf.append(zzBuffer, zzStartRead, yylength());
             }
           // fall through
           case 111: break;
           case 31:
-            { errors.noCloseStr(strLine, strCol, strBuf.toString());
+            { error(ErrorHandler.Code.NO_CLOSE_STR, strStart, strBuf.length(), strLine, strCol, strBuf);
                 yybegin(YYINITIAL);
-                return new Token(TokenType.ERROR, strBuf.toString(), strLine, strCol);
+                return lit(TokenType.ERROR, strBuf, strStart, strLine, strCol);
             }
           // fall through
           case 112: break;
@@ -1101,20 +1190,20 @@ class Yylex {
             { strBuf.append("\"");
                 yybegin(YYINITIAL);
                 if (strHasError)
-                    return new Token(TokenType.ERROR, strBuf.toString(), strLine, strCol);
-                return new Token(TokenType.STRING, strBuf.toString(), strLine, strCol);
+                    return lit(TokenType.ERROR, strBuf, strStart, strLine, strCol);
+                return lit(TokenType.STRING, strBuf, strStart, strLine, strCol);
             }
           // fall through
           case 113: break;
           case 33:
-            { chrBuf.append(yytext()); chrCount++;
+            { chrBuf.append(zzBuffer, zzStartRead, yylength()); chrCount++;
             }
           // fall through
           case 114: break;
           case 34:
-            { errors.noCloseChr(chrLine, chrCol, chrBuf.toString());
+            { error(ErrorHandler.Code.NO_CLOSE_CHR, chrStart, chrBuf.length(), chrLine, chrCol, chrBuf);
                 yybegin(YYINITIAL);
-                return new Token(TokenType.ERROR, chrBuf.toString(), chrLine, chrCol);
+                return lit(TokenType.ERROR, chrBuf, chrStart, chrLine, chrCol);
             }
           // fall through
           case 115: break;
@@ -1122,19 +1211,18 @@ class Yylex {
             { yybegin(YYINITIAL);
                 if (chrCount == 0) {
                     /* empty char literal '' */
-                    errors.badLit(chrLine, chrCol, "''", "Empty character literal.");
-                    return new Token(TokenType.ERROR, "''", chrLine, chrCol);
+                    error(ErrorHandler.Code.EMPTY_CHAR, chrStart, 2, chrLine, chrCol, "''");
+                    return lit(TokenType.ERROR, "''", chrStart, chrLine, chrCol);
                 }
                 if (chrCount > 1) {
                     chrBuf.append("'");
-                    errors.badLit(chrLine, chrCol, chrBuf.toString(),
-                            "Character literal contains more than one character.");
-                    return new Token(TokenType.ERROR, chrBuf.toString(), chrLine, chrCol);
+                    error(ErrorHandler.Code.LONG_CHAR, chrStart, chrBuf.length(), chrLine, chrCol, chrBuf);
+                    return lit(TokenType.ERROR, chrBuf, chrStart, chrLine, chrCol);
                 }
                 chrBuf.append("'");
                 if (chrHasError)
-                    return new Token(TokenType.ERROR, chrBuf.toString(), chrLine, chrCol);
-                return new Token(TokenType.CHAR, chrBuf.toString(), chrLine, chrCol);
+                    return lit(TokenType.ERROR, chrBuf, chrStart, chrLine, chrCol);
+                return lit(TokenType.CHAR, chrBuf, chrStart, chrLine, chrCol);
             }
           // fall through
           case 116: break;
@@ -1149,7 +1237,7 @@ class Yylex {
           // fall through
           case 118: break;
           case 38:
-            { cmtLine = ln(); cmtCol = col();
+            { cmtStart = (int) yychar; cmtLine = ln(); cmtCol = col();
                 yybegin(MULTICOMMENT);
             }
           // fall through
@@ -1210,8 +1298,7 @@ class Yylex {
           // fall through
           case 130: break;
           case 50:
-            { errors.log("Invalid Identifier", ln(), col(), yytext(),
-                        "Identifiers may only contain lowercase letters, digits, and underscores after the first character.");
+            { error(ErrorHandler.Code.BAD_ID_CHAR);
                 return tok(TokenType.ERROR);
             }
           // fall through
@@ -1222,8 +1309,8 @@ class Yylex {
           // fall through
           case 132: break;
           case 52:
-            { errors.badEsc(strLine, strCol, yytext());
-                strBuf.append(yytext());
+            { error(ErrorHandler.Code.BAD_ESCAPE, (int) yychar, yylength(), strLine, strCol, null);
+                strBuf.append(zzBuffer, zzStartRead, yylength());
                 strHasError = true;
             }
           // fall through
@@ -1254,8 +1341,8 @@ class Yylex {
           // fall through
           case 138: break;
           case 58:
-            { errors.badEsc(chrLine, chrCol, yytext());
-                chrBuf.append(yytext());
+            { error(ErrorHandler.Code.BAD_ESCAPE, (int) yychar, yylength(), chrLine, chrCol, null);
+                chrBuf.append(zzBuffer, zzStartRead, yylength());
                 chrCount++;
                 chrHasError = true;
             }
@@ -1297,8 +1384,7 @@ class Yylex {
           // fall through
           case 146: break;
           case 66:
-            { errors.badLit(ln(), col(), yytext(),
-                        "Exponent part of float is incomplete.");
+            { error(ErrorHandler.Code.FLOAT_EXPONENT);
                 return tok(TokenType.ERROR);
             }
           // fall through
@@ -1364,8 +1450,7 @@ class Yylex {
           // fall through
           case 159: break;
           case 79:
-            { errors.badLit(ln(), col(), yytext(),
-                        "Float literal exceeds maximum of 6 decimal digits.");
+            { error(ErrorHandler.Code.FLOAT_DIGITS);
                 return tok(TokenType.ERROR);
             }
           // fall through
@@ -1376,7 +1461,7 @@ class Yylex {
           // fall through
           case 161: break;
           case 81:
-            { errors.longId(ln(), col(), yytext());
+            { error(ErrorHandler.Code.LONG_ID);
                 return tok(TokenType.ERROR);
             }
           // fall through
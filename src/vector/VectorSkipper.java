@@ -0,0 +1,97 @@
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/*
+ * SIMD version of Skipper on top of the incubating Vector API.
+ * Kept out of src/ so the plain build does not need the module:
+ *
+ *   javac -d out src/*.java
+ *   javac --add-modules jdk.incubator.vector -cp out -d out src/vector/*.java
+ *   java  --add-modules jdk.incubator.vector -cp out ManualScanner file.lang
+ *
+ * Each method compares a whole vector of chars at once and falls back to the
+ * scalar loop for the tail that does not fill a vector.
+ */
+public class VectorSkipper extends Skipper 
+{
+    private static final VectorSpecies<Short> S = ShortVector.SPECIES_PREFERRED;
+    private static final int L = S.length();
+
+    private static final short SP = ' ';
+    private static final short HT = '\t';
+    private static final short CR = '\r';
+    private static final short NL = '\n';
+    private static final short BAR  = '|';
+    private static final short HASH = '#';
+
+    @Override
+    public int blank(char[] a, int from, int to) 
+    {
+        int i = from;
+        for (; i + L <= to; i += L) 
+        {
+            ShortVector v = ShortVector.fromCharArray(S, a, i);
+            VectorMask<Short> other = v.eq(SP).or(v.eq(HT)).or(v.eq(CR)).or(v.eq(NL)).not();
+            if (other.anyTrue()) return i + other.firstTrue();
+        }
+        return super.blank(a, i, to);
+    }
+
+    @Override
+    public int lineEnd(char[] a, int from, int to) 
+    {
+        int i = from;
+        for (; i + L <= to; i += L) 
+        {
+            VectorMask<Short> nl = ShortVector.fromCharArray(S, a, i).eq(NL);
+            if (nl.anyTrue()) return i + nl.firstTrue();
+        }
+        return super.lineEnd(a, i, to);
+    }
+
+    @Override
+    public int blockEnd(char[] a, int from, int to) 
+    {
+        int i = from;
+        for (; i + L + 1 <= to; i += L) 
+        {
+            VectorMask<Short> bar = ShortVector.fromCharArray(S, a, i).eq(BAR);
+            if (!bar.anyTrue()) continue;
+            VectorMask<Short> pair = bar.and(ShortVector.fromCharArray(S, a, i + 1).eq(HASH));
+            if (pair.anyTrue()) return i + pair.firstTrue();
+        }
+        return super.blockEnd(a, i, to);
+    }
+
+    @Override
+    public int breaks(char[] a, int from, int to) 
+    {
+        int n = 0;
+        int i = from;
+        for (; i + L <= to; i += L) 
+        {
+            n += ShortVector.fromCharArray(S, a, i).eq(NL).trueCount();
+        }
+        return n + super.breaks(a, i, to);
+    }
+
+    @Override
+    public int lastBreak(char[] a, int from, int to) 
+    {
+        int i = to;
+        for (; i - L >= from; i -= L) 
+        {
+            VectorMask<Short> nl = ShortVector.fromCharArray(S, a, i - L).eq(NL);
+            if (nl.anyTrue()) return i - L + nl.lastTrue();
+        }
+        return super.lastBreak(a, from, i);
+    }
+
+    @Override
+    public String name() 
+    {
+        return "vector x" + L;
+    }
+}